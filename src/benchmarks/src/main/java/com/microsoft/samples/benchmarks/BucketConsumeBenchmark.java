@@ -0,0 +1,51 @@
+package com.microsoft.samples.benchmarks;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code tryConsume} against {@code tryConsumeAndReturnRemaining}, which the controller uses for
+ * the RateLimit headers, on a bucket that always accepts and one that always rejects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BucketConsumeBenchmark {
+
+    private final Bucket accepting = Limits.unlimited();
+    private final Bucket rejecting = Limits.exhausted();
+
+    @Benchmark
+    public boolean tryConsumeAccepted() {
+        return accepting.tryConsume(1);
+    }
+
+    @Benchmark
+    public ConsumptionProbe probeAccepted() {
+        return accepting.tryConsumeAndReturnRemaining(1);
+    }
+
+    @Benchmark
+    public boolean tryConsumeRejected() {
+        return rejecting.tryConsume(1);
+    }
+
+    @Benchmark
+    public ConsumptionProbe probeRejected() {
+        return rejecting.tryConsumeAndReturnRemaining(1);
+    }
+}
@@ -0,0 +1,54 @@
+package com.microsoft.samples.benchmarks;
+
+import io.github.bucket4j.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One bucket shared by every thread, the way a GLOBAL keyed policy is shared by all requests of a
+ * replica. Throughput that falls as threads are added is the cost of the bucket's CAS loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BucketContentionBenchmark {
+
+    private final Bucket bucket = Limits.unlimited();
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads01() {
+        return bucket.tryConsume(1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads04() {
+        return bucket.tryConsume(1);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean threads16() {
+        return bucket.tryConsume(1);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean threads64() {
+        return bucket.tryConsume(1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.microsoft.samples.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON the API reads and writes per request, with a mapper configured like the one Spring
+ * Boot gives the controllers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractSerializationBenchmark {
+
+    private ObjectReader requestReader;
+    private ObjectWriter resultWriter;
+    private byte[] requestJson;
+    private SendMessageResult accepted;
+    private SendMessageResult rejected;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        requestReader = objectMapper.readerFor(SendMessageRequest.class);
+        resultWriter = objectMapper.writerFor(SendMessageResult.class);
+
+        requestJson = "{\"message\":\"order 42 shipped to warehouse 7\",\"clientId\":\"tenant-a\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        accepted = SendMessageResult.builder()
+                .message("order 42 shipped to warehouse 7")
+                .success(true)
+                .remainingTokens(99)
+                .servedBy("rate-limiting-api-5f7d9c6b8-x2k4q")
+                .build();
+        rejected = SendMessageResult.builder()
+                .message("Rate limit exceeded.")
+                .success(false)
+                .retryAfterMillis(1000)
+                .servedBy("rate-limiting-api-5f7d9c6b8-x2k4q")
+                .build();
+    }
+
+    @Benchmark
+    public SendMessageRequest readRequest() throws Exception {
+        return requestReader.readValue(requestJson);
+    }
+
+    @Benchmark
+    public byte[] writeAccepted() throws Exception {
+        return resultWriter.writeValueAsBytes(accepted);
+    }
+
+    @Benchmark
+    public byte[] writeRejected() throws Exception {
+        return resultWriter.writeValueAsBytes(rejected);
+    }
+}
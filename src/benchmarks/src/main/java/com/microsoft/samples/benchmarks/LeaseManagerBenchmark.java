@@ -0,0 +1,57 @@
+package com.microsoft.samples.benchmarks;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.lock.LeaseManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquiring and releasing a lease against {@link LocalLeaseStore}. With more threads than
+ * partitions, waiters are woken by the release notifications, so the contended case measures the
+ * hand-off between session workers rather than Redis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeaseManagerBenchmark {
+
+    private LeaseManager leaseManager;
+
+    @Setup
+    public void setUp() {
+        leaseManager = new LeaseManager(new LocalLeaseStore(), new AppConfig(), new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        leaseManager.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void acquireRelease() throws InterruptedException {
+        leaseManager.acquire().close();
+    }
+
+    @Benchmark
+    @Threads(6)
+    public void acquireReleaseContended() throws InterruptedException {
+        leaseManager.acquire().close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.microsoft.samples.benchmarks;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import io.github.bucket4j.Bucket;
+
+import java.time.Duration;
+
+/**
+ * Buckets and policies built the way the API builds them, compiled by {@link RoutePolicyTable}.
+ */
+final class Limits {
+
+    private Limits() {
+    }
+
+    /**
+     * A bucket that refills far faster than it can be drained, so every consumption succeeds and
+     * only the cost of the bucket itself is measured.
+     */
+    static Bucket unlimited() {
+        return bucket(Long.MAX_VALUE / 2, Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * A bucket that starts empty and barely refills, so every consumption is rejected.
+     */
+    static Bucket exhausted() {
+        return bucket(1, 0);
+    }
+
+    /**
+     * A policy every engine accepts from at any rate a benchmark reaches: a token refills every
+     * nanosecond, so the GCRA engine can still express it.
+     */
+    static RoutePolicy unlimitedPolicy() {
+        return policy(1L << 40, 1L << 40, 1_000_000_000, Duration.ofSeconds(1));
+    }
+
+    static RoutePolicy exhaustedPolicy() {
+        return policy(1, 0, 1, Duration.ofDays(1));
+    }
+
+    private static Bucket bucket(long capacity, long initialTokens) {
+        var routePolicy = policy(capacity, initialTokens, 1, Duration.ofDays(1));
+        return new LocalBucketFactory().create("benchmark", routePolicy.getConfiguration(), routePolicy.getRevision());
+    }
+
+    private static RoutePolicy policy(long capacity, long initialTokens, long refillTokens, Duration refillPeriod) {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(capacity);
+        bandwidth.setRefillTokens(refillTokens);
+        bandwidth.setRefillPeriod(refillPeriod);
+        bandwidth.setInitialTokens(initialTokens);
+
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+
+        var config = new LimiterConfig();
+        config.getPolicies().put("benchmark", policy);
+        config.setDefaultPolicy("benchmark");
+
+        return RoutePolicyTable.compile(config).policies().iterator().next();
+    }
+}
@@ -0,0 +1,54 @@
+package com.microsoft.samples.benchmarks;
+
+import com.microsoft.samples.messagehandler.lock.LeaseStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for Redis with the same owner checks as the lease scripts, answering without a network
+ * round trip. The load harness shares one between its handler instances, like replicas share Redis.
+ */
+public class LocalLeaseStore implements LeaseStore {
+
+    private record Entry(String owner, long expiresAtNanos) {
+    }
+
+    private final Map<String, Entry> leases = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public long tryAcquire(String key, String owner, Duration duration) {
+        long now = System.nanoTime();
+        var taken = new Entry(owner, now + duration.toNanos());
+        var current = leases.compute(key,
+                (k, existing) -> existing != null && existing.expiresAtNanos() - now > 0 ? existing : taken);
+        return current == taken ? 0 : Math.max(1, Duration.ofNanos(current.expiresAtNanos() - now).toMillis());
+    }
+
+    @Override
+    public boolean renew(String key, String owner, Duration duration) {
+        var renewed = new Entry(owner, System.nanoTime() + duration.toNanos());
+        return leases.computeIfPresent(key, (k, existing) -> existing.owner().equals(owner) ? renewed : existing)
+                == renewed;
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        var current = leases.get(key);
+        if (current == null || !current.owner().equals(owner) || !leases.remove(key, current)) {
+            return false;
+        }
+        listeners.forEach(listener -> listener.accept(key));
+        return true;
+    }
+
+    @Override
+    public void onRelease(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
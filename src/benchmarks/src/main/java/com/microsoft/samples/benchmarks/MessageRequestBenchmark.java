@@ -0,0 +1,65 @@
+package com.microsoft.samples.benchmarks;
+
+import com.azure.core.util.BinaryData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.messagehandler.ApiClientBuilder;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the requests the handler sends for every message, or for every receive batch when
+ * batch dispatch is on. Nothing is sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageRequestBenchmark {
+
+    @Param({ "45" })
+    private int batchSize;
+
+    private ApiClientBuilder apiClientBuilder;
+    private BinaryData message;
+    private List<BinaryData> batch;
+
+    @Setup
+    public void setUp() {
+        var appConfig = new AppConfig();
+        appConfig.setRateLimitingServiceUrl("http://localhost:8080");
+        apiClientBuilder = new ApiClientBuilder(appConfig, new ObjectMapper());
+
+        message = BinaryData.fromString("{\"message\":\"order 42 shipped to warehouse 7\",\"clientId\":\"tenant-a\"}");
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(message);
+        }
+    }
+
+    @Benchmark
+    public HttpRequest messageRequest() {
+        return apiClientBuilder.buildMessageRequest(message);
+    }
+
+    @Benchmark
+    public HttpRequest batchRequest() {
+        return apiClientBuilder.buildBatchRequest(batch);
+    }
+}
@@ -0,0 +1,100 @@
+package com.microsoft.samples.benchmarks;
+
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.BucketRateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.GcraRateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.LimiterEngine;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.TimeMeter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two {@link RateLimiter} engines side by side, over one key and over a million keys that were
+ * all seen before, so the lookup of the key is part of what is measured. Run
+ * {@link RateLimiterFootprint} for what each key costs in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RateLimiterBenchmark {
+
+    @Param({ "BUCKET4J", "GCRA" })
+    private LimiterEngine engine;
+
+    @Param({ "1", "1000000" })
+    private int keys;
+
+    private String[] clients;
+    private RateLimiter accepting;
+    private RateLimiter rejecting;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        String client(String[] clients) {
+            String client = clients[next];
+            next = next + 1 == clients.length ? 0 : next + 1;
+            return client;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        clients = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            clients[i] = "client-" + i;
+        }
+
+        accepting = create(engine, Limits.unlimitedPolicy(), keys);
+        rejecting = create(engine, Limits.exhaustedPolicy(), keys);
+        for (String client : clients) {
+            accepting.tryConsume(client, 1);
+            rejecting.tryConsume(client, 1);
+        }
+    }
+
+    @Benchmark
+    public ConsumptionProbe accepted(Cursor cursor) {
+        return accepting.tryConsume(cursor.client(clients), 1);
+    }
+
+    @Benchmark
+    public ConsumptionProbe rejected(Cursor cursor) {
+        return rejecting.tryConsume(cursor.client(clients), 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ConsumptionProbe accepted08Threads(Cursor cursor) {
+        return accepting.tryConsume(cursor.client(clients), 1);
+    }
+
+    static RateLimiter create(LimiterEngine engine, RoutePolicy policy, int keys) {
+        var client = new ClientConfig();
+        client.setMaxClients(keys);
+        return switch (engine) {
+            case BUCKET4J -> new BucketRateLimiter(policy, new LocalBucketFactory(), client);
+            case GCRA -> new GcraRateLimiter(policy, keys, TimeMeter.SYSTEM_NANOTIME);
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.microsoft.samples.benchmarks;
+
+import com.microsoft.samples.ratelimitingapi.limiter.LimiterEngine;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+
+/**
+ * Heap retained per client key by each {@link RateLimiter} engine, after every key has been limited
+ * once. The argument is the number of keys, a million by default; give the JVM room for them, for
+ * example {@code -Xmx4g}. The numbers come from the heap in use after a full collection, so they
+ * are close rather than exact.
+ */
+public final class RateLimiterFootprint {
+
+    private RateLimiterFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        for (LimiterEngine engine : LimiterEngine.values()) {
+            long before = usedHeap();
+            RateLimiter limiter = RateLimiterBenchmark.create(engine, Limits.unlimitedPolicy(), keys);
+            for (int i = 0; i < keys; i++) {
+                limiter.tryConsume("client-" + i, 1);
+            }
+            long retained = usedHeap() - before;
+
+            System.out.printf("%-8s %,d keys: %,d bytes retained, %d bytes per key%n", engine, keys, retained,
+                    retained / keys);
+            // Keeps the limiter reachable until it has been measured
+            limiter.peek("client-0", 0);
+        }
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
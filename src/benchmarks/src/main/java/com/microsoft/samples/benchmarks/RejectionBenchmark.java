@@ -0,0 +1,139 @@
+package com.microsoft.samples.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.microsoft.samples.ratelimitingapi.MessagesController;
+import com.microsoft.samples.ratelimitingapi.RateLimitingApplication;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of turning away a request to {@code POST /messages} once its bucket is empty, in the
+ * API's own Spring context. The servlet container and socket are left out, everything from
+ * binding the body to writing the response is in.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectionBenchmark {
+
+    private ConfigurableApplicationContext api;
+    private MessagesController controller;
+    private RateLimitFilter filter;
+    private final FilterChain controllerChain = (request, response) -> {
+        throw new IllegalStateException("Rejected requests must not reach the controller");
+    };
+    private final MockHttpServletResponse httpResponse = new MockHttpServletResponse();
+    private final CountingOutputStream body = new CountingOutputStream();
+    private final HttpServletResponseWrapper response = new HttpServletResponseWrapper(httpResponse) {
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return body;
+        }
+    };
+    private ObjectReader requestReader;
+    private ObjectWriter resultWriter;
+    private MockHttpServletRequest httpRequest;
+
+    @Setup
+    public void setUp() {
+        api = new SpringApplicationBuilder(RateLimitingApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.config.location=classpath:/harness/rate-limiting-api.yaml",
+                        "--logging.config=classpath:logback-file.xml",
+                        "--ratelimit.policies.messages.bandwidths[0].capacity=1",
+                        "--ratelimit.policies.messages.bandwidths[0].refillTokens=1",
+                        "--ratelimit.policies.messages.bandwidths[0].refillPeriod=1d",
+                        "--ratelimit.policies.messages.bandwidths[0].initialTokens=0");
+
+        controller = api.getBean(MessagesController.class);
+        filter = api.getBean(RateLimitFilter.class);
+        ObjectMapper objectMapper = api.getBean(ObjectMapper.class);
+        requestReader = objectMapper.readerFor(SendMessageRequest.class);
+        resultWriter = objectMapper.writerFor(SendMessageResult.class);
+
+        httpRequest = new MockHttpServletRequest("POST", "/messages");
+        httpRequest.setContentType("application/json");
+        httpRequest.setContent("{\"message\":\"order 42 shipped to warehouse 7\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+
+    /**
+     * The path a rejection takes when the bucket key comes from the body: the body is bound, the
+     * controller consumes and builds the result, and the result is written as JSON. Every rejection
+     * took this path before the filter.
+     */
+    @Benchmark
+    public byte[] controller() throws Exception {
+        var request = requestReader.<SendMessageRequest>readValue(httpRequest.getContentAsByteArray());
+        var response = controller.sendMessage(request, httpRequest);
+        return resultWriter.writeValueAsBytes(response.getBody());
+    }
+
+    /**
+     * The filter's fast path: the token is taken before the body is read and the pre-encoded
+     * rejection is written. The response is reused, and its body only counted, so only the
+     * filter's own work is measured: the mock's output stream costs several times the filter.
+     */
+    @Benchmark
+    public long filter() throws Exception {
+        httpResponse.reset();
+        filter.doFilter(httpRequest, response, controllerChain);
+        return body.written;
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream {
+        private long written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            written += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.microsoft.samples.benchmarks.harness;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * When messages are published, as a list of phases of {@code count@duration}, each spreading its
+ * messages evenly over its duration. {@code 800@5s} is the burst of the cloud load tests,
+ * {@code 300@1m,0@30s,300@1m} two minutes at the limit with a pause in between.
+ */
+record ArrivalPattern(List<Phase> phases) {
+
+    record Phase(long count, Duration duration) {
+    }
+
+    static ArrivalPattern parse(String pattern) {
+        List<Phase> phases = new ArrayList<>();
+        for (String phase : pattern.split(",")) {
+            String[] parts = phase.trim().split("@");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected count@duration, got: " + phase);
+            }
+            phases.add(new Phase(Long.parseLong(parts[0].trim()), DurationStyle.detectAndParse(parts[1].trim())));
+        }
+        return new ArrivalPattern(List.copyOf(phases));
+    }
+
+    long total() {
+        return phases.stream().mapToLong(Phase::count).sum();
+    }
+
+    /**
+     * Calls {@code publish} with the sequence number of every message on its schedule. Each
+     * message is due at a fixed offset from the start of its phase, so a slow publish does not
+     * push the rest of the phase back.
+     */
+    void replay(LongConsumer publish) {
+        long sequence = 0;
+        for (var phase : phases) {
+            long start = System.nanoTime();
+            long durationNanos = phase.duration().toNanos();
+
+            for (long i = 0; i < phase.count(); i++) {
+                parkUntil(start + durationNanos * i / phase.count());
+                publish.accept(sequence++);
+            }
+            parkUntil(start + durationNanos);
+        }
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", phases.stream().map(phase -> phase.count() + "@" + phase.duration()).toList());
+    }
+}
@@ -0,0 +1,43 @@
+package com.microsoft.samples.benchmarks.harness;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.messagehandler.ApiClientBuilder;
+import com.microsoft.samples.messagehandler.MessageBusClientTopicProcessor;
+import com.microsoft.samples.messagehandler.bus.ReceiveController;
+import com.microsoft.samples.messagehandler.bus.SessionSource;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.dispatch.MessageDispatcher;
+import com.microsoft.samples.messagehandler.lock.LeaseManager;
+import com.microsoft.samples.messagehandler.lock.LeaseStore;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * One message-handler replica, wired the way its Spring context wires it but on the in-memory
+ * topic and lease store. Replicas share the meter registry, so its counters add up over all of them.
+ */
+class HandlerInstance implements AutoCloseable {
+
+    private final LeaseManager leaseManager;
+    private final MessageBusClientTopicProcessor processor;
+
+    HandlerInstance(AppConfig appConfig, SessionSource sessionSource, LeaseStore leaseStore,
+            MeterRegistry meterRegistry) {
+        var receiveController = new ReceiveController(appConfig, meterRegistry);
+        var dispatcher = new MessageDispatcher(new ApiClientBuilder(appConfig, new ObjectMapper()),
+                receiveController, appConfig, meterRegistry);
+
+        this.leaseManager = new LeaseManager(leaseStore, appConfig, meterRegistry);
+        this.processor = new MessageBusClientTopicProcessor(sessionSource, dispatcher, leaseManager,
+                receiveController, appConfig);
+    }
+
+    void start() {
+        processor.start();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        processor.close();
+        leaseManager.close();
+    }
+}
@@ -0,0 +1,231 @@
+package com.microsoft.samples.benchmarks.harness;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.bus.SessionReceiver;
+import com.microsoft.samples.messagehandler.bus.SessionSource;
+import org.HdrHistogram.Histogram;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for a session enabled subscription. Like Service Bus, a session is locked by the one
+ * receiver that accepted it until that receiver closes it, abandoned messages go back to the front
+ * of their session with their delivery count raised, and a message is dead-lettered once it was
+ * delivered {@code maxDeliveryCount} times.
+ *
+ * Every publish and settlement is counted, and the time from publish to completion is recorded,
+ * so the harness can report on the whole run.
+ */
+class InMemoryTopic {
+
+    private record Envelope(String messageId, String sessionId, byte[] body, long publishedAtNanos,
+            int deliveries) {
+    }
+
+    private final class Session {
+        private final String id;
+        private final Deque<Envelope> pending = new ArrayDeque<>();
+        private final Map<String, Envelope> received = new HashMap<>();
+        private boolean locked;
+
+        Session(String id) {
+            this.id = id;
+        }
+    }
+
+    private final Duration lockDuration;
+    private final Duration acceptTimeout;
+    private final int maxDeliveryCount;
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final Deque<Session> available = new ArrayDeque<>();
+    private final Histogram latencyMicros = new Histogram(3);
+    private long sequence;
+    private long published;
+    private long completed;
+    private long redelivered;
+    private long deadLettered;
+    private boolean closed;
+
+    InMemoryTopic(Duration lockDuration, Duration acceptTimeout, int maxDeliveryCount) {
+        this.lockDuration = lockDuration;
+        this.acceptTimeout = acceptTimeout;
+        this.maxDeliveryCount = maxDeliveryCount;
+    }
+
+    synchronized void publish(String sessionId, String body) {
+        var session = sessions.computeIfAbsent(sessionId, Session::new);
+        session.pending.addLast(new Envelope("message-" + ++sequence, sessionId,
+                body.getBytes(StandardCharsets.UTF_8), System.nanoTime(), 0));
+        published++;
+        makeAvailable(session);
+        notifyAll();
+    }
+
+    /**
+     * A view of the topic for one handler instance. Closing it leaves the topic to the others.
+     */
+    SessionSource source() {
+        return new SessionSource() {
+            @Override
+            public SessionReceiver acceptNextSession() {
+                return accept();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized boolean isSettled() {
+        return completed + deadLettered == published;
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(published, completed, redelivered, deadLettered, latencyMicros.copy());
+    }
+
+    record Snapshot(long published, long completed, long redelivered, long deadLettered, Histogram latencyMicros) {
+    }
+
+    private synchronized SessionReceiver accept() {
+        long deadline = System.nanoTime() + acceptTimeout.toNanos();
+        try {
+            while (available.isEmpty() && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("No session available within " + acceptTimeout);
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        if (closed) {
+            throw new IllegalStateException("Topic closed");
+        }
+
+        var session = available.poll();
+        session.locked = true;
+        return new Receiver(session);
+    }
+
+    private void makeAvailable(Session session) {
+        if (!session.locked && !session.pending.isEmpty() && !available.contains(session)) {
+            available.add(session);
+        }
+    }
+
+    /**
+     * Returns a received message to its session, or dead-letters it once it used up its deliveries.
+     */
+    private void redeliver(Session session, Envelope envelope) {
+        redelivered++;
+        if (envelope.deliveries() + 1 >= maxDeliveryCount) {
+            deadLettered++;
+            return;
+        }
+        session.pending.addFirst(new Envelope(envelope.messageId(), envelope.sessionId(), envelope.body(),
+                envelope.publishedAtNanos(), envelope.deliveries() + 1));
+    }
+
+    private final class Receiver implements SessionReceiver {
+        private final Session session;
+
+        Receiver(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public String getSessionId() {
+            return session.id;
+        }
+
+        @Override
+        public Iterable<ServiceBusReceivedMessage> receiveMessages(int maxMessages, Duration maxWaitTime) {
+            synchronized (InMemoryTopic.this) {
+                long deadline = System.nanoTime() + maxWaitTime.toNanos();
+                try {
+                    long remaining;
+                    while (session.pending.isEmpty() && !closed && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(InMemoryTopic.this, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+
+                var lockedUntil = OffsetDateTime.now().plus(lockDuration);
+                List<ServiceBusReceivedMessage> messages = new ArrayList<>();
+                while (messages.size() < maxMessages && !session.pending.isEmpty()) {
+                    var envelope = session.pending.poll();
+                    session.received.put(envelope.messageId(), envelope);
+                    messages.add(ReceivedMessages.create(envelope.messageId(), envelope.sessionId(), envelope.body(),
+                            envelope.deliveries(), lockedUntil));
+                }
+                return messages;
+            }
+        }
+
+        @Override
+        public void complete(ServiceBusReceivedMessage message) {
+            synchronized (InMemoryTopic.this) {
+                var envelope = settle(message);
+                completed++;
+                latencyMicros.recordValue(
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - envelope.publishedAtNanos()));
+            }
+        }
+
+        @Override
+        public void abandon(ServiceBusReceivedMessage message) {
+            synchronized (InMemoryTopic.this) {
+                redeliver(session, settle(message));
+            }
+        }
+
+        @Override
+        public OffsetDateTime renewSessionLock() {
+            return OffsetDateTime.now().plus(lockDuration);
+        }
+
+        /**
+         * Unlocks the session. Messages received but not settled go back to it, as they would once
+         * their locks expired.
+         */
+        @Override
+        public void close() {
+            synchronized (InMemoryTopic.this) {
+                new ArrayList<>(session.received.values()).forEach(envelope -> redeliver(session, envelope));
+                session.received.clear();
+                session.locked = false;
+                makeAvailable(session);
+                InMemoryTopic.this.notifyAll();
+            }
+        }
+
+        private Envelope settle(ServiceBusReceivedMessage message) {
+            var envelope = session.received.remove(message.getMessageId());
+            if (envelope == null) {
+                throw new IllegalStateException("Message " + message.getMessageId() + " is not locked by this receiver");
+            }
+            return envelope;
+        }
+    }
+}
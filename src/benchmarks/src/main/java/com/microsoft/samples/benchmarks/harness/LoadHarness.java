@@ -0,0 +1,170 @@
+package com.microsoft.samples.benchmarks.harness;
+
+import com.microsoft.samples.benchmarks.LocalLeaseStore;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.ratelimitingapi.RateLimitingApplication;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays an arrival pattern through the rate limiting API and a number of message-handler
+ * replicas, all in this process, with {@link InMemoryTopic} in place of Service Bus and
+ * {@link LocalLeaseStore} in place of Redis. Nothing leaves the machine.
+ *
+ * Options are {@code --name=value}:
+ * <ul>
+ * <li>{@code handlers} replicas of the message handler, 3 by default</li>
+ * <li>{@code sessions} sessions the messages are spread over round robin, 10 by default</li>
+ * <li>{@code pattern} the {@link ArrivalPattern}, {@code 800@5s} by default</li>
+ * <li>{@code lockDuration} the message and session lock, 1m by default</li>
+ * <li>{@code timeout} how long to wait for every message to be settled, 10m by default</li>
+ * <li>{@code api.*} any rate-limiting-api property, for example {@code --api.ratelimit.smoothing.enabled=true}</li>
+ * <li>{@code handler.*} any message-handler property, for example {@code --handler.processor.workers=2}</li>
+ * </ul>
+ */
+public final class LoadHarness {
+
+    private static final Duration ACCEPT_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(5);
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int handlers = Integer.parseInt(options.getOrDefault("handlers", "3"));
+        int sessions = Integer.parseInt(options.getOrDefault("sessions", "10"));
+        var pattern = ArrivalPattern.parse(options.getOrDefault("pattern", "800@5s"));
+        var lockDuration = DurationStyle.detectAndParse(options.getOrDefault("lockDuration", "1m"));
+        var timeout = DurationStyle.detectAndParse(options.getOrDefault("timeout", "10m"));
+
+        try (var api = startApi(options)) {
+            int port = ((WebServerApplicationContext) api).getWebServer().getPort();
+
+            var appConfig = handlerConfig(options);
+            appConfig.setRateLimitingServiceUrl("http://localhost:" + port);
+
+            var topic = new InMemoryTopic(lockDuration, ACCEPT_TIMEOUT,
+                    appConfig.getDispatch().getRetry().getMaxDeliveryCount());
+            var leaseStore = new LocalLeaseStore();
+            MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+            List<HandlerInstance> instances = new ArrayList<>();
+            for (int i = 0; i < handlers; i++) {
+                instances.add(new HandlerInstance(appConfig, topic.source(), leaseStore, meterRegistry));
+            }
+
+            System.out.printf("Replaying %s over %d sessions to %d handlers, API on port %d%n", pattern, sessions,
+                    handlers, port);
+
+            long start = System.nanoTime();
+            instances.forEach(HandlerInstance::start);
+            pattern.replay(sequence -> topic.publish("session-" + sequence % sessions,
+                    "{\"message\":\"load test message " + sequence + "\"}"));
+            boolean settled = awaitSettled(topic, start, timeout);
+            long elapsedNanos = System.nanoTime() - start;
+
+            topic.close();
+            for (var instance : instances) {
+                instance.close();
+            }
+
+            report(topic.snapshot(), meterRegistry, elapsedNanos, settled);
+        }
+    }
+
+    private static ConfigurableApplicationContext startApi(Map<String, String> options) {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.config.location=classpath:/harness/rate-limiting-api.yaml");
+        args.add("--server.port=0");
+        options.forEach((name, value) -> {
+            if (name.startsWith("api.")) {
+                args.add("--" + name.substring("api.".length()) + "=" + value);
+            }
+        });
+
+        return new SpringApplicationBuilder(RateLimitingApplication.class).run(args.toArray(String[]::new));
+    }
+
+    private static AppConfig handlerConfig(Map<String, String> options) {
+        Map<String, String> properties = new HashMap<>();
+        options.forEach((name, value) -> {
+            if (name.startsWith("handler.")) {
+                properties.put(name, value);
+            }
+        });
+
+        return new Binder(new MapConfigurationPropertySource(properties)).bindOrCreate("handler", AppConfig.class);
+    }
+
+    private static boolean awaitSettled(InMemoryTopic topic, long start, Duration timeout)
+            throws InterruptedException {
+        long deadline = start + timeout.toNanos();
+        long nextProgress = System.nanoTime() + PROGRESS_INTERVAL.toNanos();
+
+        while (!topic.isSettled()) {
+            long now = System.nanoTime();
+            if (now - deadline > 0) {
+                return false;
+            }
+            if (now - nextProgress > 0) {
+                var snapshot = topic.snapshot();
+                System.out.printf("%6.1f s: %d published, %d completed, %d dead-lettered%n",
+                        (now - start) / 1e9, snapshot.published(), snapshot.completed(), snapshot.deadLettered());
+                nextProgress += PROGRESS_INTERVAL.toNanos();
+            }
+            Thread.sleep(100);
+        }
+        return true;
+    }
+
+    private static void report(InMemoryTopic.Snapshot snapshot, MeterRegistry meterRegistry, long elapsedNanos,
+            boolean settled) {
+        double seconds = elapsedNanos / 1e9;
+        var latency = snapshot.latencyMicros();
+
+        System.out.println();
+        System.out.printf("Settled:        %s after %.1f s%n", settled ? "yes" : "no, timed out", seconds);
+        System.out.printf("Messages:       %d published, %d completed, %d dead-lettered%n", snapshot.published(),
+                snapshot.completed(), snapshot.deadLettered());
+        System.out.printf("Throughput:     %.1f messages/s completed%n", snapshot.completed() / seconds);
+        System.out.printf("Latency (ms):   p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+                latency.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(99.9) / 1e3,
+                latency.getMaxValue() / 1e3);
+        System.out.printf("429 responses:  %d%n", count(meterRegistry, "rate_limit_hits"));
+        System.out.printf("Local retries:  %d%n", count(meterRegistry, "messages_retried"));
+        System.out.printf("Redeliveries:   %d (%d abandoned by the handler)%n", snapshot.redelivered(),
+                count(meterRegistry, "messages_abandoned"));
+    }
+
+    private static long count(MeterRegistry meterRegistry, String name) {
+        Counter counter = meterRegistry.find(name).counter();
+        return counter == null ? 0 : (long) counter.count();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,57 @@
+package com.microsoft.samples.benchmarks.harness;
+
+import com.azure.core.util.BinaryData;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.time.OffsetDateTime;
+
+/**
+ * Creates received messages the way the Service Bus client does. The SDK keeps the constructor and
+ * setters package-private, so they are opened once through reflection.
+ */
+final class ReceivedMessages {
+
+    private static final Constructor<ServiceBusReceivedMessage> CONSTRUCTOR;
+    private static final Method SET_MESSAGE_ID;
+    private static final Method SET_SESSION_ID;
+    private static final Method SET_DELIVERY_COUNT;
+    private static final Method SET_LOCKED_UNTIL;
+
+    static {
+        try {
+            Class<ServiceBusReceivedMessage> type = ServiceBusReceivedMessage.class;
+            CONSTRUCTOR = type.getDeclaredConstructor(BinaryData.class);
+            SET_MESSAGE_ID = type.getDeclaredMethod("setMessageId", String.class);
+            SET_SESSION_ID = type.getDeclaredMethod("setSessionId", String.class);
+            SET_DELIVERY_COUNT = type.getDeclaredMethod("setDeliveryCount", long.class);
+            SET_LOCKED_UNTIL = type.getDeclaredMethod("setLockedUntil", OffsetDateTime.class);
+
+            CONSTRUCTOR.setAccessible(true);
+            SET_MESSAGE_ID.setAccessible(true);
+            SET_SESSION_ID.setAccessible(true);
+            SET_DELIVERY_COUNT.setAccessible(true);
+            SET_LOCKED_UNTIL.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ReceivedMessages() {
+    }
+
+    static ServiceBusReceivedMessage create(String messageId, String sessionId, byte[] body, long deliveryCount,
+            OffsetDateTime lockedUntil) {
+        try {
+            var message = CONSTRUCTOR.newInstance(BinaryData.fromBytes(body));
+            SET_MESSAGE_ID.invoke(message, messageId);
+            SET_SESSION_ID.invoke(message, sessionId);
+            SET_DELIVERY_COUNT.invoke(message, deliveryCount);
+            SET_LOCKED_UNTIL.invoke(message, lockedUntil);
+            return message;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create a received message", e);
+        }
+    }
+}
@@ -1,59 +1,166 @@
 package com.microsoft.samples.messagehandler;
 
+import com.azure.core.util.BinaryData;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.HttpClientConfig;
+import com.microsoft.samples.messagehandler.contract.SendMessageBatchResult;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
+/**
+ * The one client used for every call to the rate limiting API. It is built up front and shared
+ * by all workers, with HTTP/2 by default so concurrent requests share a connection.
+ *
+ * Requests are copied from templates built once, and message bodies are sent as the bytes the
+ * message already holds instead of being decoded to a String and encoded again.
+ *
+ * Each message carries an idempotency key, its Service Bus message ID, so the API answers a
+ * message it accepted before with the same result instead of charging it again, for example when
+ * the message is redelivered because it could not be completed.
+ */
 @Slf4j
 @Service
 public class ApiClientBuilder {
-    private final AppConfig appConfig;
-    private HttpClient httpClient;
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
 
-    public ApiClientBuilder(AppConfig appConfig) {
-        this.appConfig = appConfig;
-    }
+    private static final byte[] BATCH_PREFIX = "{\"mode\":\"PARTIAL\",\"messages\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_KEYS_PREFIX = "{\"mode\":\"PARTIAL\",\"idempotencyKeys\":"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_KEYS_SUFFIX = ",\"messages\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BATCH_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
 
-    public HttpClient buildApiClient() throws IOException, InterruptedException {
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final HttpRequest.Builder messageTemplate;
+    private final HttpRequest.Builder batchTemplate;
 
-        if (httpClient != null) {
-            return httpClient;
-        }
+    public ApiClientBuilder(AppConfig appConfig, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
 
+        HttpClientConfig http = appConfig.getDispatch().getHttp();
         String baseUrl = appConfig.getRateLimitingServiceUrl();
-        log.info("Building API Client with base URL: {}", baseUrl);
+        log.info("Building API Client with base URL: {}, version: {}", baseUrl, http.getVersion());
+
+        this.httpClient = HttpClient.newBuilder()
+                .version(http.getVersion())
+                .connectTimeout(http.getConnectTimeout())
+                .build();
 
-        httpClient = HttpClient.newHttpClient();
+        this.messageTemplate = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .timeout(http.getRequestTimeout());
+        this.batchTemplate = messageTemplate.copy()
+                .uri(URI.create(baseUrl + "/messages/batch"));
+
+        checkAvailability(baseUrl);
+    }
 
+    /**
+     * Logs whether the API answers, without holding up startup when it does not.
+     */
+    private void checkAvailability(String baseUrl) {
         log.info("Checking if API is available: {}", baseUrl);
         var request = HttpRequest.newBuilder()
                 .uri(URI.create(baseUrl))
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .GET()
                 .build();
 
-        var response = httpClient.send(request, java.net.http.HttpResponse.BodyHandlers.ofString());
-
-        log.info("API is available: {}", response);
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.error("API is not available: {}", error.getMessage());
+                    } else {
+                        log.info("API is available: {}, version: {}", response, response.version());
+                    }
+                });
+    }
 
+    public HttpClient buildApiClient() {
         return httpClient;
     }
 
-    public HttpRequest buildMessageRequest(String message) {
-        String baseUrl = appConfig.getRateLimitingServiceUrl();
+    public HttpRequest buildMessageRequest(BinaryData message) {
+        return buildMessageRequest(message, null);
+    }
 
-        return HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/messages"))
-                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .POST(HttpRequest.BodyPublishers.ofString(message))
+    public HttpRequest buildMessageRequest(BinaryData message, String idempotencyKey) {
+        var request = messageTemplate.copy()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(message.toBytes()));
+        if (idempotencyKey != null) {
+            request.header(IDEMPOTENCY_KEY, idempotencyKey);
+        }
+        return request.build();
+    }
+
+    /**
+     * Message bodies are already JSON documents, so their bytes are spliced into the batch as they
+     * are instead of being parsed and serialized again.
+     */
+    public HttpRequest buildBatchRequest(List<BinaryData> messages) {
+        return buildBatchRequest(messages, null);
+    }
+
+    /**
+     * {@code idempotencyKeys} go in the batch alongside the messages, one per message in the same
+     * order.
+     */
+    public HttpRequest buildBatchRequest(List<BinaryData> messages, List<String> idempotencyKeys) {
+        byte[] prefix = idempotencyKeys == null ? BATCH_PREFIX : keysPrefix(idempotencyKeys);
+        var bodies = new byte[messages.size()][];
+        int length = prefix.length + BATCH_SUFFIX.length + Math.max(0, messages.size() - 1);
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = messages.get(i).toBytes();
+            length += bodies[i].length;
+        }
+
+        var body = new byte[length];
+        System.arraycopy(prefix, 0, body, 0, prefix.length);
+        int position = prefix.length;
+        for (int i = 0; i < bodies.length; i++) {
+            if (i > 0) {
+                body[position++] = ',';
+            }
+            System.arraycopy(bodies[i], 0, body, position, bodies[i].length);
+            position += bodies[i].length;
+        }
+        System.arraycopy(BATCH_SUFFIX, 0, body, position, BATCH_SUFFIX.length);
+
+        return batchTemplate.copy()
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
                 .build();
     }
+
+    private byte[] keysPrefix(List<String> idempotencyKeys) {
+        byte[] keys;
+        try {
+            keys = objectMapper.writeValueAsBytes(idempotencyKeys);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode idempotency keys", e);
+        }
+
+        var prefix = new byte[BATCH_KEYS_PREFIX.length + keys.length + BATCH_KEYS_SUFFIX.length];
+        System.arraycopy(BATCH_KEYS_PREFIX, 0, prefix, 0, BATCH_KEYS_PREFIX.length);
+        System.arraycopy(keys, 0, prefix, BATCH_KEYS_PREFIX.length, keys.length);
+        System.arraycopy(BATCH_KEYS_SUFFIX, 0, prefix, BATCH_KEYS_PREFIX.length + keys.length,
+                BATCH_KEYS_SUFFIX.length);
+        return prefix;
+    }
+
+    public SendMessageBatchResult readBatchResult(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), SendMessageBatchResult.class);
+    }
 }
@@ -1,7 +1,7 @@
 package com.microsoft.samples.messagehandler;
 
 import com.azure.messaging.servicebus.ServiceBusClientBuilder;
-import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+import com.azure.messaging.servicebus.ServiceBusSessionReceiverAsyncClient;
 import com.azure.messaging.servicebus.ServiceBusSessionReceiverClient;
 import com.azure.messaging.servicebus.models.ServiceBusReceiveMode;
 import com.microsoft.samples.messagehandler.config.AppConfig;
@@ -18,20 +18,45 @@ public class MessageBusClientBuilder {
         this.appConfig = appConfig;
     }
 
-    public ServiceBusSessionReceiverClient buildTopicReceiverClient() {
+    public ServiceBusSessionReceiverClient buildTopicReceiverClient(int prefetchCount) {
         String subscription = appConfig.getServiceBus().getSubscriptionName();
         String topic = appConfig.getServiceBus().getTopicName();
 
         log.info("Topic: {}", topic);
         log.info("Subscription: {}", subscription);
+        log.info("Prefetch: {}", prefetchCount);
 
         return new ServiceBusClientBuilder()
                 .connectionString(appConfig.getServiceBus().getConnectionString())
                 .sessionReceiver()
                 .receiveMode(ServiceBusReceiveMode.PEEK_LOCK)
+                .prefetchCount(prefetchCount)
                 .topicName(topic)
                 .subscriptionName(subscription)
                 .disableAutoComplete() // Make sure to explicitly opt in to manual settlement (e.g. complete, abandon).
                 .buildClient();
     }
+
+    /**
+     * Prefetch stays off so credits are only issued as the pipeline asks for messages. Session
+     * locks are renewed by the client for up to {@code maxLockRenewal}.
+     */
+    public ServiceBusSessionReceiverAsyncClient buildTopicReceiverAsyncClient() {
+        String subscription = appConfig.getServiceBus().getSubscriptionName();
+        String topic = appConfig.getServiceBus().getTopicName();
+
+        log.info("Topic: {}", topic);
+        log.info("Subscription: {}", subscription);
+
+        return new ServiceBusClientBuilder()
+                .connectionString(appConfig.getServiceBus().getConnectionString())
+                .sessionReceiver()
+                .receiveMode(ServiceBusReceiveMode.PEEK_LOCK)
+                .prefetchCount(0)
+                .maxAutoLockRenewDuration(appConfig.getProcessor().getMaxLockRenewal())
+                .topicName(topic)
+                .subscriptionName(subscription)
+                .disableAutoComplete()
+                .buildAsyncClient();
+    }
 }
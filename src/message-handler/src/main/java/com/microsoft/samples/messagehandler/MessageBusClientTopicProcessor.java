@@ -1,99 +1,77 @@
 package com.microsoft.samples.messagehandler;
 
-import com.azure.core.util.IterableStream;
-import com.azure.messaging.servicebus.*;
-import com.microsoft.samples.messagehandler.lock.LockService;
-
-import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
-import io.micrometer.core.annotation.Timed;
-import io.micrometer.core.instrument.Counter;
-import io.netty.handler.codec.http.HttpResponseStatus;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.bus.ReceiveController;
+import com.microsoft.samples.messagehandler.bus.SessionReceiver;
+import com.microsoft.samples.messagehandler.bus.SessionSource;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.ProcessorConfig;
+import com.microsoft.samples.messagehandler.dispatch.MessageDispatcher;
+import com.microsoft.samples.messagehandler.lock.LeaseManager;
+
 import lombok.extern.slf4j.Slf4j;
 
-import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.availability.AvailabilityChangeEvent;
 import org.springframework.boot.availability.ReadinessState;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.EventListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-@Slf4j
-@Component
 /**
- * Implementing SmartLifecycle to start and stop the processor client.
- * https://github.com/Azure/azure-sdk-for-java/issues/29997
+ * Runs a pool of session workers once the application accepts traffic. Each worker accepts its
+ * own session, takes a lease, and drains the session until it has been idle for
+ * {@code idleTimeout}, then closes it so Service Bus can hand it to any replica. How many messages
+ * each receive asks for, and how long it waits for them, comes from the {@link ReceiveController}.
+ *
+ * A session receives its next batch while the last one is still being settled. Its settlements
+ * are waited for before the lease is released and the session is closed, whether it went idle,
+ * lost its lease or the processor is stopping.
  */
-public class MessageBusClientTopicProcessor implements ApplicationListener<ApplicationReadyEvent> {
-
-    private static final int MAX_MESSAGE_COUNT = 45;
-    private ServiceBusSessionReceiverClient serviceBusSessionReceiverClient;
-    private ServiceBusReceiverClient serviceBusReceiverClient;
-    private MessageBusClientBuilder messageBusClientBuilder;
-    private boolean sessionAccepted = false;
-    private final ApiClientBuilder apiClientBuilder;
-    private boolean running;
-    private Counter totalMessagesCounter;
-    private Counter rateLimitCounter;
-
-    private final String LOCK_PARTITION_1 = "topic-processor-lock-1";
-    private final String LOCK_PARTITION_2 = "topic-processor-lock-2";
-    private final String LOCK_PARTITION_3 = "topic-processor-lock-3";
-
-    private final int LOCK_DURATION_IN_SECONDS = 30;
-
-    private int rateLimitHits = 0;
-
-    @Autowired
-    private LockService lockService;
-
-    public MessageBusClientTopicProcessor(MessageBusClientBuilder messageBusClientBuilder,
-            ApiClientBuilder apiClientBuilder, RedisClientBuilder redisClientBuilder,
-            CompositeMeterRegistry meterRegistry) {
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "processor.mode", havingValue = "blocking", matchIfMissing = true)
+public class MessageBusClientTopicProcessor implements ApplicationListener<ApplicationReadyEvent>, AutoCloseable {
+
+    private static final Duration ACCEPT_RETRY_DELAY = Duration.ofSeconds(3);
+
+    private final SessionSource sessionSource;
+    private final MessageDispatcher messageDispatcher;
+    private final LeaseManager leaseManager;
+    private final int workers;
+    private final ReceiveController receiveController;
+    private final long idleTimeoutNanos;
+    private final ExecutorService executor;
+    private volatile boolean running;
+    private boolean started;
+
+    public MessageBusClientTopicProcessor(SessionSource sessionSource, MessageDispatcher messageDispatcher,
+            LeaseManager leaseManager, ReceiveController receiveController, AppConfig appConfig) {
         log.info("Creating MessageBusClientTopicProcessor");
 
-        this.apiClientBuilder = apiClientBuilder;
-        this.messageBusClientBuilder = messageBusClientBuilder;
-        this.serviceBusSessionReceiverClient = this.messageBusClientBuilder.buildTopicReceiverClient();
-
-        totalMessagesCounter = meterRegistry.counter("total_messages_processed");
-        rateLimitCounter = meterRegistry.counter("rate_limit_hits");
-    }
-
-    @Timed(value = "processMessages", description = "Process messages from Service Bus", longTask = true)
-    private void processMessages(IterableStream<ServiceBusReceivedMessage> messages) {
-        messages.forEach(message -> {
-            try {
-                var httpClient = this.apiClientBuilder.buildApiClient();
-                var request = this.apiClientBuilder.buildMessageRequest(message.getBody().toString());
-
-                var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                var responseStatusCode = response.statusCode();
-
-                if (responseStatusCode == HttpResponseStatus.TOO_MANY_REQUESTS.code()) {
-
-                    rateLimitHits++;
-                    rateLimitCounter.increment();
-                    serviceBusReceiverClient.abandon(message);
-
-                    return;
-                }
-
-                serviceBusReceiverClient.complete(message);
-                totalMessagesCounter.increment();
-
-            } catch (Exception e) {
-                log.error("[TOPIC PROCESSOR: EXCEPTION]: " + e.getMessage());
-
-                serviceBusReceiverClient.abandon(message);
-            }
+        ProcessorConfig processor = appConfig.getProcessor();
+        this.sessionSource = sessionSource;
+        this.messageDispatcher = messageDispatcher;
+        this.leaseManager = leaseManager;
+        this.workers = processor.getWorkers() > 0 ? processor.getWorkers()
+                : Runtime.getRuntime().availableProcessors();
+        this.receiveController = receiveController;
+        this.idleTimeoutNanos = processor.getIdleTimeout().toNanos();
+
+        var threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "session-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         });
-
-        log.info("[TOPIC PROCESSOR: COMPLETE] Completed processing messages");
-        log.info("[TOPIC PROCESSOR: RATE LIMIT] Hits: {}", rateLimitHits);
     }
 
     @Override
@@ -108,84 +86,103 @@ public class MessageBusClientTopicProcessor implements ApplicationListener<Appli
 
         if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC) {
             log.info("Topic Processor can start running");
-            runMessageProcessor();
+            start();
         }
     }
 
-    public void runMessageProcessor() {
-        log.info("Topic Processor started, application running: {}", running);
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        running = true;
+
+        log.info("Topic Processor starting {} session workers", workers);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::runWorker);
+        }
+    }
 
+    private void runWorker() {
         while (running) {
+            log.info("Topic Processor acquiring next session");
 
-            log.info("Topic Processor waiting for session");
-            var partitionAcquired = "";
-
+            SessionReceiver session;
             try {
-                if (sessionAccepted) {
-
-                    log.info("Topic Processor session accepted");
-                    log.info("Acquiring lock");
-
-                    var lockPartitions = new String[] { LOCK_PARTITION_1, LOCK_PARTITION_2, LOCK_PARTITION_3 };
+                session = sessionSource.acceptNextSession();
+            } catch (Exception e) {
+                // Usually the exception after the timeout is:
+                // The receiver client is terminated. The source re-creates the client to continue.
+                log.error("Topic Processor Session Accept Exception: " + e.getMessage());
+                if (!pause(ACCEPT_RETRY_DELAY)) {
+                    return;
+                }
+                continue;
+            }
 
-                    var lockAcquired = false;
+            try {
+                drain(session);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Topic Processor Session Exception: " + e.getMessage());
+            } finally {
+                closeQuietly(session);
+            }
+        }
+    }
 
-                    while (lockAcquired == false) {
-                        for (var lockPartition : lockPartitions) {
-                            lockAcquired = lockService.acquire(lockPartition, LOCK_DURATION_IN_SECONDS);
-                            if (lockAcquired) {
+    private void drain(SessionReceiver session) throws InterruptedException {
+        log.info("Topic Processor session {} accepted, acquiring lease", session.getSessionId());
 
-                                partitionAcquired = lockPartition;
-                                log.info("[TOPIC PROCESSOR: LOCKED] Lock acquired for partition: {} for {} seconds",
-                                        lockPartition, LOCK_DURATION_IN_SECONDS);
-                                break;
-                            }
+        try (var lease = leaseManager.acquire(); var settlement = messageDispatcher.openSettlement(session)) {
+            long lastMessageNanos = System.nanoTime();
 
-                            log.info("Topic Processor waiting for 3 seconds to try another partition");
+            while (running && !lease.isLost()) {
+                var messages = new ArrayList<ServiceBusReceivedMessage>();
+                session.receiveMessages(receiveController.batchSize(), receiveController.receiveWait())
+                        .forEach(messages::add);
+                receiveController.onReceived(messages.size());
+                log.info("Received {} messages", messages.size());
 
-                            try {
-                                Thread.sleep(Duration.ofSeconds(3).toMillis());
-                            } catch (InterruptedException e) {
-                                log.error("Topic Processor Sleep Exception: " + e.getMessage());
-                            }
-                        }
+                if (messages.isEmpty()) {
+                    if (System.nanoTime() - lastMessageNanos >= idleTimeoutNanos) {
+                        log.info("Topic Processor session {} idle, handing it back", session.getSessionId());
+                        return;
                     }
-
-                    log.info("Topic Processor waiting for messages");
-                    var messages = serviceBusReceiverClient.receiveMessages(MAX_MESSAGE_COUNT);
-                    var messageCount = messages.stream().count();
-                    log.info("Received {} messages", messageCount);
-
-                    processMessages(messages);
-
-                    serviceBusReceiverClient.close();
-                    sessionAccepted = false;
-
-                } else {
-
-                    log.info("Topic Processor acquiring next session");
-
-                    serviceBusReceiverClient = serviceBusSessionReceiverClient.acceptNextSession();
-                    sessionAccepted = true;
+                    continue;
                 }
 
-            } catch (Exception e) {
-                log.error("Topic Processor Session Accept Exception: " + e.getMessage());
+                lastMessageNanos = System.nanoTime();
+                messageDispatcher.dispatch(messages, settlement);
+            }
+        }
+    }
 
-                lockService.release(partitionAcquired);
+    private static void closeQuietly(SessionReceiver session) {
+        try {
+            session.close();
+        } catch (Exception e) {
+            log.error("Topic Processor Session Close Exception: " + e.getMessage());
+        }
+    }
 
-                // Usually the exception after the timeout is:
-                // The receiver client is terminated. Re-create the client to continue receive
-                // attempt.
-                serviceBusSessionReceiverClient = messageBusClientBuilder.buildTopicReceiverClient();
-
-                try {
-                    log.info("Topic Processor Session Accept Sleep for 3 seconds");
-                    Thread.sleep(Duration.ofSeconds(3).toMillis());
-                } catch (InterruptedException e1) {
-                    log.error("Topic Processor Session Accept Sleep Exception: " + e1.getMessage());
-                }
-            }
+    private static boolean pause(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        executor.shutdownNow();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        sessionSource.close();
+    }
 }
@@ -0,0 +1,110 @@
+package com.microsoft.samples.messagehandler;
+
+import com.azure.messaging.servicebus.ServiceBusSessionReceiverAsyncClient;
+import com.microsoft.samples.messagehandler.bus.ReactiveSessionReceiver;
+import com.microsoft.samples.messagehandler.bus.ServiceBusReactiveSessionReceiver;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.dispatch.ReactiveMessageDispatcher;
+import com.microsoft.samples.messagehandler.lock.LeaseManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Reactive counterpart of {@link MessageBusClientTopicProcessor}, selected with
+ * {@code processor.mode: reactive}. Runs {@code workers} session loops on one pipeline: accept a
+ * session, take a lease, dispatch until the session is idle, release both and start over.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "processor.mode", havingValue = "reactive")
+public class ReactiveTopicProcessor implements AutoCloseable {
+
+    private static final Duration ACCEPT_RETRY_DELAY = Duration.ofSeconds(3);
+
+    private final ServiceBusSessionReceiverAsyncClient sessionReceiverClient;
+    private final ReactiveMessageDispatcher messageDispatcher;
+    private final LeaseManager leaseManager;
+    private final int workers;
+    private volatile boolean running;
+    private Disposable pipeline;
+
+    public ReactiveTopicProcessor(MessageBusClientBuilder messageBusClientBuilder,
+            ReactiveMessageDispatcher messageDispatcher, LeaseManager leaseManager, AppConfig appConfig) {
+        log.info("Creating ReactiveTopicProcessor");
+
+        this.sessionReceiverClient = messageBusClientBuilder.buildTopicReceiverAsyncClient();
+        this.messageDispatcher = messageDispatcher;
+        this.leaseManager = leaseManager;
+        int configured = appConfig.getProcessor().getWorkers();
+        this.workers = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    @EventListener
+    public void onEvent(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC) {
+            log.info("Reactive Topic Processor can start running");
+            start();
+        }
+    }
+
+    public synchronized void start() {
+        if (pipeline != null) {
+            return;
+        }
+        running = true;
+
+        log.info("Reactive Topic Processor starting {} session loops", workers);
+        pipeline = Flux.range(0, workers)
+                .flatMap(worker -> sessionLoop(), workers)
+                .subscribe();
+    }
+
+    private Mono<Void> sessionLoop() {
+        return Mono.defer(this::processNextSession)
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, ACCEPT_RETRY_DELAY)
+                        .doBeforeRetry(signal -> log.error("Topic Processor Session Exception: "
+                                + signal.failure().getMessage())))
+                .repeat(() -> running)
+                .then();
+    }
+
+    private Mono<Void> processNextSession() {
+        return Mono.usingWhen(
+                sessionReceiverClient.acceptNextSession().map(ServiceBusReactiveSessionReceiver::new),
+                session -> Mono.usingWhen(
+                        Mono.fromCallable(leaseManager::acquire).subscribeOn(Schedulers.boundedElastic()),
+                        lease -> dispatch(session),
+                        lease -> Mono.fromRunnable(lease::close)),
+                session -> Mono.fromRunnable(session::close));
+    }
+
+    private Mono<Void> dispatch(ReactiveSessionReceiver session) {
+        log.info("Topic Processor session {} accepted", session.getSessionId());
+        return messageDispatcher.dispatch(session)
+                .doOnSuccess(ignored -> log.info("Topic Processor session {} idle, handing it back",
+                        session.getSessionId()));
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (pipeline != null) {
+            pipeline.dispose();
+        }
+        sessionReceiverClient.close();
+    }
+}
@@ -0,0 +1,23 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The async counterpart of {@link SessionReceiver}. Messages are only requested from Service Bus
+ * as fast as the subscriber asks for them.
+ */
+public interface ReactiveSessionReceiver {
+
+    String getSessionId();
+
+    Flux<ServiceBusReceivedMessage> receiveMessages();
+
+    Mono<Void> complete(ServiceBusReceivedMessage message);
+
+    Mono<Void> abandon(ServiceBusReceivedMessage message);
+
+    void close();
+}
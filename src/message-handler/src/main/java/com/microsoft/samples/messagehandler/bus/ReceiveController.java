@@ -0,0 +1,139 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.ReceiveConfig;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Sizes receive batches, the receive wait and the prefetch from the API's responses, so the
+ * handler does not pull more messages than the API will accept and does not wait long for
+ * batches that will not fill.
+ *
+ * The batch size grows by {@code batchIncrease} with every accepted response, is halved on every
+ * 429 and never exceeds the tokens the API last reported as remaining. The receive wait follows
+ * the smoothed round trip time to the API. Prefetch is switched off while the recent 429 rate is
+ * above {@code throttleThreshold}, since prefetched messages would only sit out their locks.
+ */
+@Component
+public class ReceiveController {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final boolean adaptive;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int batchIncrease;
+    private final long minWaitNanos;
+    private final long maxWaitNanos;
+    private final double latencyWaitFactor;
+    private final int prefetchBatches;
+    private final double throttleThreshold;
+    private final DistributionSummary receivedBatch;
+
+    private int batchSize;
+    private double latencyNanos;
+    private double throttleRate;
+
+    public ReceiveController(AppConfig appConfig, MeterRegistry meterRegistry) {
+        ReceiveConfig config = appConfig.getProcessor().getReceive();
+        this.adaptive = config.isAdaptive();
+        this.minBatchSize = Math.max(1, config.getMinBatchSize());
+        this.maxBatchSize = Math.max(minBatchSize, config.getMaxBatchSize());
+        this.batchIncrease = config.getBatchIncrease();
+        this.minWaitNanos = config.getMinWait().toNanos();
+        this.maxWaitNanos = config.getMaxWait().toNanos();
+        this.latencyWaitFactor = config.getLatencyWaitFactor();
+        this.prefetchBatches = config.getPrefetchBatches();
+        this.throttleThreshold = config.getThrottleThreshold();
+        this.batchSize = clamp(appConfig.getProcessor().getMaxMessageCount());
+
+        Gauge.builder("receive_batch_size", this, ReceiveController::batchSize)
+                .description("Messages requested per receive")
+                .register(meterRegistry);
+        Gauge.builder("receive_wait", this, controller -> controller.receiveWait().toMillis())
+                .description("Longest wait for a receive batch to fill")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("receive_prefetch", this, ReceiveController::prefetchCount)
+                .description("Prefetch count used for new receivers")
+                .register(meterRegistry);
+        Gauge.builder("api_latency", this, controller -> controller.latency() / 1e6)
+                .description("Smoothed round trip time of requests to the API")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("api_throttle_ratio", this, ReceiveController::throttleRate)
+                .description("Smoothed share of responses that were 429s")
+                .register(meterRegistry);
+        receivedBatch = DistributionSummary.builder("receive_batch")
+                .description("Messages actually returned per receive")
+                .baseUnit("messages")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) maxBatchSize)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param remainingTokens the API's RateLimit-Remaining, or -1 when it did not send one
+     */
+    public synchronized void onResponse(long latencyNanos, boolean throttled, long remainingTokens) {
+        this.latencyNanos = this.latencyNanos == 0 ? latencyNanos
+                : this.latencyNanos + SMOOTHING * (latencyNanos - this.latencyNanos);
+        this.throttleRate += SMOOTHING * ((throttled ? 1 : 0) - this.throttleRate);
+
+        if (!adaptive) {
+            return;
+        }
+
+        if (throttled) {
+            batchSize = clamp(batchSize / 2);
+            return;
+        }
+
+        int ceiling = remainingTokens >= 0 ? clamp((int) Math.min(remainingTokens, maxBatchSize)) : maxBatchSize;
+        int next = throttleRate > throttleThreshold ? batchSize : batchSize + batchIncrease;
+        batchSize = Math.min(clamp(next), ceiling);
+    }
+
+    public void onReceived(int messages) {
+        receivedBatch.record(messages);
+    }
+
+    public synchronized int batchSize() {
+        return batchSize;
+    }
+
+    public synchronized Duration receiveWait() {
+        if (!adaptive || latencyNanos == 0) {
+            return Duration.ofNanos(maxWaitNanos);
+        }
+
+        long wait = (long) (latencyNanos * latencyWaitFactor);
+        return Duration.ofNanos(Math.max(minWaitNanos, Math.min(maxWaitNanos, wait)));
+    }
+
+    public synchronized int prefetchCount() {
+        if (!adaptive || throttleRate > throttleThreshold) {
+            return 0;
+        }
+        return batchSize * prefetchBatches;
+    }
+
+    private synchronized double latency() {
+        return latencyNanos;
+    }
+
+    private synchronized double throttleRate() {
+        return throttleRate;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+}
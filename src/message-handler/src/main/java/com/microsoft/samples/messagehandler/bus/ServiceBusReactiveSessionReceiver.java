@@ -0,0 +1,41 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverAsyncClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class ServiceBusReactiveSessionReceiver implements ReactiveSessionReceiver {
+
+    private final ServiceBusReceiverAsyncClient receiverClient;
+
+    public ServiceBusReactiveSessionReceiver(ServiceBusReceiverAsyncClient receiverClient) {
+        this.receiverClient = receiverClient;
+    }
+
+    @Override
+    public String getSessionId() {
+        return receiverClient.getSessionId();
+    }
+
+    @Override
+    public Flux<ServiceBusReceivedMessage> receiveMessages() {
+        return receiverClient.receiveMessages();
+    }
+
+    @Override
+    public Mono<Void> complete(ServiceBusReceivedMessage message) {
+        return receiverClient.complete(message);
+    }
+
+    @Override
+    public Mono<Void> abandon(ServiceBusReceivedMessage message) {
+        return receiverClient.abandon(message);
+    }
+
+    @Override
+    public void close() {
+        receiverClient.close();
+    }
+}
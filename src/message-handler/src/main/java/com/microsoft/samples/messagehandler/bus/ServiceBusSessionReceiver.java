@@ -0,0 +1,55 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.azure.messaging.servicebus.ServiceBusReceiverClient;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+public class ServiceBusSessionReceiver implements SessionReceiver {
+
+    private final ServiceBusReceiverClient receiverClient;
+    private final Runnable onClose;
+
+    /**
+     * {@code onClose} runs once the session is closed, so the client it came from can be released.
+     */
+    public ServiceBusSessionReceiver(ServiceBusReceiverClient receiverClient, Runnable onClose) {
+        this.receiverClient = receiverClient;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public String getSessionId() {
+        return receiverClient.getSessionId();
+    }
+
+    @Override
+    public Iterable<ServiceBusReceivedMessage> receiveMessages(int maxMessages, Duration maxWaitTime) {
+        return receiverClient.receiveMessages(maxMessages, maxWaitTime);
+    }
+
+    @Override
+    public void complete(ServiceBusReceivedMessage message) {
+        receiverClient.complete(message);
+    }
+
+    @Override
+    public void abandon(ServiceBusReceivedMessage message) {
+        receiverClient.abandon(message);
+    }
+
+    @Override
+    public OffsetDateTime renewSessionLock() {
+        return receiverClient.renewSessionLock();
+    }
+
+    @Override
+    public void close() {
+        try {
+            receiverClient.close();
+        } finally {
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusSessionReceiverClient;
+import com.microsoft.samples.messagehandler.MessageBusClientBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Accepts sessions from the topic subscription. One session receiver client is shared by all
+ * workers and rebuilt when accepting fails, since the client is usually terminated by then.
+ * Prefetch is fixed per client, so a new client is built for the next sessions whenever the
+ * {@link ReceiveController}'s prefetch count no longer matches. A replaced client is closed once
+ * the last session accepted from it is closed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "processor.mode", havingValue = "blocking", matchIfMissing = true)
+public class ServiceBusSessionSource implements SessionSource {
+
+    private final MessageBusClientBuilder messageBusClientBuilder;
+    private final ReceiveController receiveController;
+    private Client client;
+
+    public ServiceBusSessionSource(MessageBusClientBuilder messageBusClientBuilder,
+            ReceiveController receiveController) {
+        this.messageBusClientBuilder = messageBusClientBuilder;
+        this.receiveController = receiveController;
+        this.client = build(receiveController.prefetchCount());
+    }
+
+    @Override
+    public SessionReceiver acceptNextSession() {
+        var leased = lease();
+        try {
+            return new ServiceBusSessionReceiver(leased.receiverClient.acceptNextSession(), () -> release(leased));
+        } catch (RuntimeException e) {
+            rebuild(leased);
+            release(leased);
+            throw e;
+        }
+    }
+
+    /**
+     * The client to accept the next session with, counted as in use until the session is closed.
+     */
+    private synchronized Client lease() {
+        int prefetchCount = receiveController.prefetchCount();
+        if (client.prefetchCount != prefetchCount) {
+            log.info("Prefetch changed from {} to {}, building a new session receiver client", client.prefetchCount,
+                    prefetchCount);
+            replace(build(prefetchCount));
+        }
+        client.sessions++;
+        return client;
+    }
+
+    private synchronized void release(Client released) {
+        released.sessions--;
+        if (released != client && released.sessions == 0) {
+            released.receiverClient.close();
+        }
+    }
+
+    private synchronized void rebuild(Client failed) {
+        if (client == failed) {
+            log.info("Rebuilding session receiver client");
+            replace(build(receiveController.prefetchCount()));
+        }
+    }
+
+    private void replace(Client next) {
+        var previous = client;
+        client = next;
+        if (previous.sessions == 0) {
+            previous.receiverClient.close();
+        }
+    }
+
+    private Client build(int prefetchCount) {
+        return new Client(messageBusClientBuilder.buildTopicReceiverClient(prefetchCount), prefetchCount);
+    }
+
+    @Override
+    public synchronized void close() {
+        client.receiverClient.close();
+    }
+
+    /**
+     * A session receiver client with the prefetch count it was built with and how many sessions
+     * accepted from it are still open.
+     */
+    private static final class Client {
+        private final ServiceBusSessionReceiverClient receiverClient;
+        private final int prefetchCount;
+        private int sessions;
+
+        Client(ServiceBusSessionReceiverClient receiverClient, int prefetchCount) {
+            this.receiverClient = receiverClient;
+            this.prefetchCount = prefetchCount;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * The operations the handler needs on an accepted session. Keeps the dispatch code independent of
+ * the Service Bus client so it can run against an in-memory stand-in.
+ */
+public interface SessionReceiver {
+
+    String getSessionId();
+
+    /**
+     * Returns up to {@code maxMessages}, or fewer once {@code maxWaitTime} has passed. An empty
+     * result means the session was idle for the whole wait.
+     */
+    Iterable<ServiceBusReceivedMessage> receiveMessages(int maxMessages, Duration maxWaitTime);
+
+    void complete(ServiceBusReceivedMessage message);
+
+    void abandon(ServiceBusReceivedMessage message);
+
+    /**
+     * Extends the lock on the session, and with it the lock on every message received from it.
+     */
+    OffsetDateTime renewSessionLock();
+
+    void close();
+}
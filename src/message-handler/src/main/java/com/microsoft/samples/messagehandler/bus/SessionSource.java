@@ -0,0 +1,16 @@
+package com.microsoft.samples.messagehandler.bus;
+
+/**
+ * Hands out sessions to process, one {@link SessionReceiver} per accepted session.
+ */
+public interface SessionSource extends AutoCloseable {
+
+    /**
+     * Blocks until a session is available and locks it for the caller. Throws when none became
+     * available within the source's own timeout.
+     */
+    SessionReceiver acceptNextSession();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,16 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class AdaptiveLimitConfig {
+    private boolean enabled = true;
+    private double initialRate = 5;
+    private double minRate = 0.5;
+    private double maxRate = 200;
+    private double burst = 10;
+    private double increase = 0.5;
+    private double decrease = 0.5;
+}
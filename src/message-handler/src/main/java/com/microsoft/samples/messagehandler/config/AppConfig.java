@@ -18,4 +18,10 @@ public class AppConfig {
     private String rateLimitingServiceUrl;
 
     private RedisConfig redis;
+
+    private LeaseConfig lease = new LeaseConfig();
+
+    private ProcessorConfig processor = new ProcessorConfig();
+
+    private DispatchConfig dispatch = new DispatchConfig();
 }
@@ -0,0 +1,17 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class DispatchConfig {
+    private boolean batch;
+    private int maxInFlight = 8;
+    private boolean ordered;
+    private AdaptiveLimitConfig adaptive = new AdaptiveLimitConfig();
+    private FairnessConfig fairness = new FairnessConfig();
+    private RetryConfig retry = new RetryConfig();
+    private SettlementConfig settlement = new SettlementConfig();
+    private HttpClientConfig http = new HttpClientConfig();
+}
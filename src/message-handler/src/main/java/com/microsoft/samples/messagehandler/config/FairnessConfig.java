@@ -0,0 +1,16 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+public class FairnessConfig {
+    // Application property that names the class of a message, such as its priority or tenant
+    private String property = "priority";
+    private String defaultClass = "default";
+    private Map<String, Double> weights = new LinkedHashMap<>();
+}
@@ -0,0 +1,15 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+@Getter
+@Setter
+public class HttpClientConfig {
+    private HttpClient.Version version = HttpClient.Version.HTTP_2;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration requestTimeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,17 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class LeaseConfig {
+    private int partitions = 3;
+    private String keyPrefix = "topic-processor-lock-";
+    private String releaseChannel = "topic-processor-lock-released";
+    private Duration duration = Duration.ofSeconds(30);
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+    private Duration maxWait = Duration.ofSeconds(5);
+}
@@ -1,15 +1,22 @@
 package com.microsoft.samples.messagehandler.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 
+/**
+ * Meters go to the registry Spring Boot configures, which is the Prometheus one scraped at
+ * {@code /actuator/prometheus}. Tags that tell replicas apart are added once here instead of on
+ * every recording.
+ */
 @Configuration
 public class MetricConfig {
     @Bean
-    public MeterRegistry getMeterRegistry() {
-        CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
-        return meterRegistry;
+    public MeterRegistryCustomizer<MeterRegistry> commonTags(
+            @Value("${spring.application.name:handler-service}") String application,
+            @Value("${HOSTNAME:local}") String replica) {
+        return registry -> registry.config().commonTags("application", application, "replica", replica);
     }
 }
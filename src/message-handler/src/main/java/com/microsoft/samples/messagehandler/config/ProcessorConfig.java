@@ -0,0 +1,17 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ProcessorConfig {
+    private ProcessorMode mode = ProcessorMode.BLOCKING;
+    private int workers;
+    private int maxMessageCount = 45;
+    private Duration idleTimeout = Duration.ofSeconds(10);
+    private ReceiveConfig receive = new ReceiveConfig();
+    private Duration maxLockRenewal = Duration.ofMinutes(5);
+}
@@ -0,0 +1,8 @@
+package com.microsoft.samples.messagehandler.config;
+
+public enum ProcessorMode {
+    /** Session workers on threads, each receiving and dispatching in a loop. */
+    BLOCKING,
+    /** One Reactor pipeline from the async receiver to WebClient, paced by downstream demand. */
+    REACTIVE
+}
@@ -0,0 +1,20 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ReceiveConfig {
+    private boolean adaptive = true;
+    private int minBatchSize = 1;
+    private int maxBatchSize = 100;
+    private int batchIncrease = 5;
+    private Duration minWait = Duration.ofMillis(250);
+    private Duration maxWait = Duration.ofSeconds(5);
+    private double latencyWaitFactor = 4;
+    private int prefetchBatches = 2;
+    private double throttleThreshold = 0.1;
+}
@@ -0,0 +1,18 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class RetryConfig {
+    private boolean enabled = true;
+    private int maxAttempts = 5;
+    private Duration initialBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+    private int maxDeliveryCount = 10;
+    private Duration lockRenewBefore = Duration.ofSeconds(10);
+    private Duration lockMargin = Duration.ofSeconds(2);
+}
@@ -0,0 +1,15 @@
+package com.microsoft.samples.messagehandler.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class SettlementConfig {
+    private int maxInFlight = 16;
+    private int maxPending = 1000;
+    private int maxAttempts = 3;
+    private Duration backoff = Duration.ofMillis(200);
+}
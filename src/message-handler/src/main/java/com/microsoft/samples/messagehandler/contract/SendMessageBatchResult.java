@@ -0,0 +1,18 @@
+package com.microsoft.samples.messagehandler.contract;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.List;
+
+@Value
+@Jacksonized
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SendMessageBatchResult {
+    List<SendMessageResult> results;
+    long accepted;
+    long retryAfterMillis;
+}
@@ -0,0 +1,15 @@
+package com.microsoft.samples.messagehandler.contract;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+@Value
+@Jacksonized
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SendMessageResult {
+    boolean success;
+    long retryAfterMillis;
+}
@@ -0,0 +1,102 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.microsoft.samples.messagehandler.config.AdaptiveLimitConfig;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side token bucket whose rate follows the API's feedback, so requests wait for a local
+ * permit instead of being sent into a 429.
+ *
+ * The rate grows additively with every accepted request and is halved on every 429, like TCP
+ * congestion control. When the API reports its limit, the rate is also capped at limit / reset:
+ * what is left in the bucket plus what refills before it is full again, spread over that time.
+ * A 429 additionally blocks all permits until its Retry-After has passed. When disabled, only
+ * Retry-After is honoured.
+ */
+public class AdaptiveRateLimiter {
+
+    private final boolean enabled;
+    private final double minRate;
+    private final double maxRate;
+    private final double burst;
+    private final double increase;
+    private final double decrease;
+
+    private double rate;
+    private double storedPermits;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+
+    public AdaptiveRateLimiter(AdaptiveLimitConfig config) {
+        this.enabled = config.isEnabled();
+        this.minRate = config.getMinRate();
+        this.maxRate = config.getMaxRate();
+        this.burst = config.getBurst();
+        this.increase = config.getIncrease();
+        this.decrease = config.getDecrease();
+        this.rate = clamp(config.getInitialRate());
+        this.storedPermits = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.blockedUntilNanos = lastRefillNanos;
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos = reserve(permits, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the permits right away, going into debt if there are not enough, and returns how long
+     * the caller has to wait before the debt it just took on is paid back.
+     */
+    synchronized long reserve(int permits, long nowNanos) {
+        long blockedNanos = Math.max(0, blockedUntilNanos - nowNanos);
+        if (!enabled) {
+            return blockedNanos;
+        }
+
+        refill(nowNanos);
+        double available = storedPermits;
+        storedPermits -= permits;
+
+        long debtNanos = available >= permits ? 0 : (long) ((permits - available) / rate * 1e9);
+        return Math.max(blockedNanos, debtNanos);
+    }
+
+    public synchronized void onAccepted(long limit, long remaining, long resetSeconds) {
+        rate = clamp(rate + increase);
+
+        if (limit > 0 && resetSeconds > 0) {
+            rate = Math.min(rate, clamp((double) limit / resetSeconds));
+        }
+    }
+
+    public synchronized void onThrottled(Duration retryAfter) {
+        long nowNanos = System.nanoTime();
+        refill(nowNanos);
+
+        rate = clamp(rate * decrease);
+        storedPermits = Math.min(storedPermits, 0);
+        blockedUntilNanos = Math.max(blockedUntilNanos, nowNanos + retryAfter.toNanos());
+    }
+
+    public synchronized double getRate() {
+        return enabled ? rate : Double.POSITIVE_INFINITY;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            storedPermits = Math.min(burst, storedPermits + elapsed / 1e9 * rate);
+            lastRefillNanos = nowNanos;
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(minRate, Math.min(maxRate, value));
+    }
+}
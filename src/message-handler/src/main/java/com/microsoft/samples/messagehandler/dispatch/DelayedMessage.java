@@ -0,0 +1,60 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A message waiting in the retry queue until {@code dueNanos}, with its class for the
+ * {@link WeightedFairScheduler} and the attempts made so far. Messages due at the same time leave
+ * the queue in the order they were queued.
+ */
+class DelayedMessage implements Delayed {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final ServiceBusReceivedMessage message;
+    private final String trafficClass;
+    private final int attempt;
+    private final long dueNanos;
+    private final long sequence = SEQUENCE.getAndIncrement();
+
+    DelayedMessage(ServiceBusReceivedMessage message, String trafficClass, int attempt, long dueNanos) {
+        this.message = message;
+        this.trafficClass = trafficClass;
+        this.attempt = attempt;
+        this.dueNanos = dueNanos;
+    }
+
+    ServiceBusReceivedMessage getMessage() {
+        return message;
+    }
+
+    String getTrafficClass() {
+        return trafficClass;
+    }
+
+    int getAttempt() {
+        return attempt;
+    }
+
+    long getDueNanos() {
+        return dueNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other instanceof DelayedMessage message) {
+            int byDue = Long.signum(dueNanos - message.dueNanos);
+            return byDue != 0 ? byDue : Long.compare(sequence, message.sequence);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,59 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms shared by both dispatchers. Every tag combination is registered up front,
+ * so recording on the send and settle paths is a field read and a histogram update.
+ */
+class DispatchMetrics {
+
+    private final Timer apiAccepted;
+    private final Timer apiThrottled;
+    private final Timer apiFailed;
+    private final Timer completed;
+    private final Timer abandoned;
+
+    DispatchMetrics(MeterRegistry meterRegistry) {
+        apiAccepted = apiTimer("accepted", meterRegistry);
+        apiThrottled = apiTimer("throttled", meterRegistry);
+        apiFailed = apiTimer("failed", meterRegistry);
+        completed = settlementTimer("complete", meterRegistry);
+        abandoned = settlementTimer("abandon", meterRegistry);
+    }
+
+    private static Timer apiTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder("api_request")
+                .description("Round trip time of requests to the rate limited API")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer settlementTimer(String settlement, MeterRegistry meterRegistry) {
+        return Timer.builder("settlement")
+                .description("Time taken to settle a message with Service Bus")
+                .tag("settlement", settlement)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    void apiResponse(long elapsedNanos, boolean throttled) {
+        (throttled ? apiThrottled : apiAccepted).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void apiFailure(long elapsedNanos) {
+        apiFailed.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void completed(long elapsedNanos) {
+        completed.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void abandoned(long elapsedNanos) {
+        abandoned.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,519 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.ApiClientBuilder;
+import com.microsoft.samples.messagehandler.bus.ReceiveController;
+import com.microsoft.samples.messagehandler.bus.SessionReceiver;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.DispatchConfig;
+import com.microsoft.samples.messagehandler.config.RetryConfig;
+import com.microsoft.samples.messagehandler.contract.SendMessageResult;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends received messages to the rate limited API and settles each one with the outcome.
+ *
+ * Requests go out with {@code sendAsync}, at most {@code maxInFlight} at a time, so one slow
+ * response no longer holds up the rest of the batch. With {@code ordered} set, messages go out
+ * one at a time in the order they were received, and the messages behind one kept for a retry
+ * wait for it.
+ *
+ * Every request first waits for a permit from the {@link AdaptiveRateLimiter}, which is fed the
+ * outcome of every response. Permits are shared between classes of messages by the
+ * {@link WeightedFairScheduler}, and unless {@code ordered} is set the due messages of a session
+ * go out heaviest class first.
+ *
+ * A throttled or failed message is not abandoned straight away, since Service Bus would redeliver
+ * it immediately. It waits in a local delay queue for the Retry-After or a backoff and is sent
+ * again, while the session lock is renewed. It is only abandoned when the {@link RetryPolicy}
+ * gives up on it or the session lock can no longer be held until its retry is due.
+ *
+ * Completing and abandoning is left to the {@link SettlementStage}, so a broker round trip no
+ * longer sits between two requests to the API. {@link #dispatch(Iterable, SessionSettlement)}
+ * returns once every message of the batch is handed to it, and the caller receives the next
+ * batch while they settle; closing the {@link SessionSettlement} waits for them, so the caller
+ * closes it before the session.
+ */
+@Slf4j
+@Component
+public class MessageDispatcher implements AutoCloseable {
+
+    private static final long POLL_INTERVAL_MILLIS = 500;
+    private static final String RATE_LIMIT_LIMIT = "RateLimit-Limit";
+    private static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+    private static final String RATE_LIMIT_RESET = "RateLimit-Reset";
+
+    private final ApiClientBuilder apiClientBuilder;
+    private final boolean batchDispatch;
+    private final int maxInFlight;
+    private final RetryPolicy retryPolicy;
+    private final long lockRenewBeforeNanos;
+    private final long lockMarginNanos;
+    private final Counter rateLimitCounter;
+    private final Counter retryCounter;
+    private final DispatchMetrics metrics;
+    private final SettlementStage settlementStage;
+    private final AtomicInteger rateLimitHits = new AtomicInteger();
+    private final AdaptiveRateLimiter rateLimiter;
+    private final WeightedFairScheduler scheduler;
+    private final boolean ordered;
+    private final ReceiveController receiveController;
+
+    public MessageDispatcher(ApiClientBuilder apiClientBuilder, ReceiveController receiveController,
+            AppConfig appConfig, MeterRegistry meterRegistry) {
+        DispatchConfig dispatch = appConfig.getDispatch();
+        RetryConfig retry = dispatch.getRetry();
+        this.apiClientBuilder = apiClientBuilder;
+        this.receiveController = receiveController;
+        this.batchDispatch = dispatch.isBatch();
+        this.maxInFlight = dispatch.isOrdered() ? 1 : Math.max(1, dispatch.getMaxInFlight());
+        this.ordered = dispatch.isOrdered();
+        this.retryPolicy = new RetryPolicy(retry);
+        this.lockRenewBeforeNanos = retry.getLockRenewBefore().toNanos();
+        this.lockMarginNanos = retry.getLockMargin().toNanos();
+
+        rateLimitCounter = meterRegistry.counter("rate_limit_hits");
+        retryCounter = meterRegistry.counter("messages_retried");
+        metrics = new DispatchMetrics(meterRegistry);
+        settlementStage = new SettlementStage(dispatch.getSettlement(), metrics, meterRegistry);
+
+        rateLimiter = new AdaptiveRateLimiter(dispatch.getAdaptive());
+        Gauge.builder("client_rate_limit", rateLimiter, AdaptiveRateLimiter::getRate)
+                .description("Requests per second the client side limiter currently allows")
+                .register(meterRegistry);
+        scheduler = new WeightedFairScheduler(rateLimiter, dispatch.getFairness(), meterRegistry);
+
+        log.info("Message dispatcher, batch: {}, max in flight: {}, ordered: {}, retry: {}", batchDispatch,
+                maxInFlight, dispatch.isOrdered(), retry.isEnabled());
+    }
+
+    /**
+     * Tracks the settlements of an accepted session. Close it before closing the session.
+     */
+    public SessionSettlement openSettlement(SessionReceiver receiver) {
+        return settlementStage.open(receiver, ordered);
+    }
+
+    /**
+     * Dispatches the messages and returns once every one of them is settled.
+     */
+    public void dispatch(Iterable<ServiceBusReceivedMessage> messages, SessionReceiver receiver) {
+        try (var settlement = openSettlement(receiver)) {
+            dispatch(messages, settlement);
+        }
+    }
+
+    /**
+     * Dispatches the messages and returns once every one of them is handed to the settlement.
+     */
+    public void dispatch(Iterable<ServiceBusReceivedMessage> messages, SessionSettlement settlement) {
+        var session = new Session(settlement);
+        long now = System.nanoTime();
+        for (var message : messages) {
+            session.add(new DelayedMessage(message, scheduler.classify(message), 0, now));
+        }
+
+        if (session.outstanding.get() == 0) {
+            return;
+        }
+
+        session.run(apiClientBuilder.buildApiClient());
+
+        log.info("[TOPIC PROCESSOR: COMPLETE] Completed processing messages");
+        log.info("[TOPIC PROCESSOR: RATE LIMIT] Hits: {}", rateLimitHits.get());
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+        settlementStage.close();
+    }
+
+    /**
+     * The state of one {@link #dispatch} call: the messages waiting for their next attempt, how
+     * many are not handed to settlement yet and how long the session lock is known to be held. When no message
+     * carries its lock expiry, the lock is renewed before the first retry is scheduled.
+     */
+    private class Session {
+        /** Queued when the last message is handed to settlement so the dispatch loop stops waiting right away. */
+        private final DelayedMessage settledAll = new DelayedMessage(null, null, 0, System.nanoTime());
+
+        private final SessionSettlement settlement;
+        private final SessionReceiver receiver;
+        private final DelayQueue<DelayedMessage> waiting = new DelayQueue<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private long lockedUntilNanos = System.nanoTime();
+        private boolean lockObserved;
+        private boolean renewalFailed;
+        private volatile boolean stopping;
+        /** The last message of an ordered session kept for a retry, until the messages behind it are queued. */
+        private volatile DelayedMessage retried;
+
+        Session(SessionSettlement settlement) {
+            this.settlement = settlement;
+            this.receiver = settlement.getReceiver();
+        }
+
+        void add(DelayedMessage attempt) {
+            outstanding.incrementAndGet();
+            observeLock(attempt.getMessage().getLockedUntil());
+            waiting.add(attempt);
+        }
+
+        void run(HttpClient httpClient) {
+            while (outstanding.get() > 0) {
+                if (stopping) {
+                    abandonWaiting();
+                    awaitInFlight();
+                    continue;
+                }
+
+                if (!waiting.isEmpty()) {
+                    renewLockIfDue();
+                }
+
+                var due = new ArrayList<DelayedMessage>();
+                int handedOff = 0;
+                try {
+                    var next = waiting.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        continue;
+                    }
+                    due.add(next);
+                    waiting.drainTo(due);
+                    due.remove(settledAll);
+                    if (due.isEmpty()) {
+                        continue;
+                    }
+                    if (!ordered) {
+                        // Stable, so messages of the same class keep their order
+                        due.sort(Comparator.comparingDouble(
+                                attempt -> -scheduler.weight(attempt.getTrafficClass())));
+                    }
+
+                    if (batchDispatch) {
+                        sendBatch(httpClient, due);
+                        handedOff = due.size();
+                    } else {
+                        for (; handedOff < due.size(); handedOff++) {
+                            inFlight.acquire();
+                            if (ordered && holdBehindRetry(due.subList(handedOff, due.size()))) {
+                                inFlight.release();
+                                handedOff = due.size();
+                                break;
+                            }
+                            acquirePermit(due.get(handedOff));
+                            sendAsync(httpClient, due.get(handedOff));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stopping = true;
+                    due.subList(handedOff, due.size()).forEach(this::abandon);
+                }
+            }
+        }
+
+        /**
+         * Takes a permit from the scheduler for a message already holding its in flight slot.
+         */
+        private void acquirePermit(DelayedMessage attempt) throws InterruptedException {
+            try {
+                scheduler.acquire(attempt.getTrafficClass(), 1);
+            } catch (InterruptedException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Queues {@code rest} behind the message last kept for a retry, if there is one, so an
+         * ordered session does not send them ahead of it. Only called once the response to the
+         * previous message was handled.
+         *
+         * @return whether the messages were queued instead of being sent now
+         */
+        private boolean holdBehindRetry(List<DelayedMessage> rest) {
+            var retry = retried;
+            if (retry == null) {
+                return false;
+            }
+
+            retried = null;
+            for (var attempt : rest) {
+                waiting.add(new DelayedMessage(attempt.getMessage(), attempt.getTrafficClass(), attempt.getAttempt(),
+                        retry.getDueNanos()));
+            }
+            return true;
+        }
+
+        private void sendAsync(HttpClient httpClient, DelayedMessage attempt) {
+            var message = attempt.getMessage();
+            var request = apiClientBuilder.buildMessageRequest(message.getBody(), message.getMessageId());
+            long sentAtNanos = System.nanoTime();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .handle((response, error) -> {
+                        try {
+                            settle(attempt, response, error, sentAtNanos);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    });
+        }
+
+        private void settle(DelayedMessage attempt, HttpResponse<String> response, Throwable error,
+                long sentAtNanos) {
+            if (error != null) {
+                metrics.apiFailure(System.nanoTime() - sentAtNanos);
+                log.error("[TOPIC PROCESSOR: EXCEPTION]: " + error.getMessage());
+                retryOrAbandon(attempt, null);
+                return;
+            }
+
+            var retryAfter = recordFeedback(response, sentAtNanos);
+
+            // A 429, or a 503 from an API shedding load, comes with a Retry-After
+            if (retryAfter != null) {
+                rateLimitHits.incrementAndGet();
+                rateLimitCounter.increment();
+                retryOrAbandon(attempt, retryAfter);
+                return;
+            }
+
+            if (RetryPolicy.isRefused(response.statusCode())) {
+                // Sending it again gets the same answer, Service Bus dead-letters it in the end
+                log.error("[TOPIC PROCESSOR: REFUSED] API answered {} for a message", response.statusCode());
+                abandon(attempt);
+                return;
+            }
+
+            if (!RetryPolicy.isSuccess(response.statusCode())) {
+                log.error("[TOPIC PROCESSOR: EXCEPTION]: API answered " + response.statusCode());
+                retryOrAbandon(attempt, null);
+                return;
+            }
+
+            complete(attempt);
+        }
+
+        /**
+         * Sends every due message in one request. The API accepts as many messages as it has
+         * tokens for, in order, and reports a result per message so each one is settled on its own.
+         */
+        private void sendBatch(HttpClient httpClient, List<DelayedMessage> due) throws InterruptedException {
+            var permits = new LinkedHashMap<String, Integer>();
+            due.forEach(attempt -> permits.merge(attempt.getTrafficClass(), 1, Integer::sum));
+            for (var entry : permits.entrySet()) {
+                scheduler.acquire(entry.getKey(), entry.getValue());
+            }
+
+            long sentAtNanos = System.nanoTime();
+            try {
+                var bodies = due.stream().map(attempt -> attempt.getMessage().getBody()).toList();
+                var idempotencyKeys = due.stream().map(attempt -> attempt.getMessage().getMessageId()).toList();
+                var request = apiClientBuilder.buildBatchRequest(bodies, idempotencyKeys);
+
+                sentAtNanos = System.nanoTime();
+                var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                var retryAfter = recordFeedback(response, sentAtNanos);
+                var results = readResults(response);
+                boolean refused = RetryPolicy.isRefused(response.statusCode());
+
+                for (int i = 0; i < due.size(); i++) {
+                    var result = results != null && i < results.size() ? results.get(i) : null;
+                    if (result != null && result.isSuccess()) {
+                        complete(due.get(i));
+                    } else if (refused && (result == null || result.getRetryAfterMillis() <= 0)) {
+                        // Sending it again gets the same answer, Service Bus dead-letters it in the end
+                        log.error("[TOPIC PROCESSOR: REFUSED] API answered {} for a message of the batch",
+                                response.statusCode());
+                        abandon(due.get(i));
+                    } else {
+                        rateLimitHits.incrementAndGet();
+                        rateLimitCounter.increment();
+                        retryOrAbandon(due.get(i), retryAfter);
+                    }
+                }
+
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                metrics.apiFailure(System.nanoTime() - sentAtNanos);
+                log.error("[TOPIC PROCESSOR: EXCEPTION]: " + e.getMessage());
+                due.forEach(attempt -> retryOrAbandon(attempt, null));
+            }
+
+            log.info("[TOPIC PROCESSOR: COMPLETE] Sent batch of {} messages", due.size());
+        }
+
+        /**
+         * The result of each message, none for a batch shed with a 503 or refused without results.
+         * The messages of a batch without results are retried unless the batch was refused.
+         */
+        private List<SendMessageResult> readResults(HttpResponse<String> response) throws IOException {
+            if (response.statusCode() == HttpResponseStatus.SERVICE_UNAVAILABLE.code()) {
+                return null;
+            }
+
+            try {
+                return apiClientBuilder.readBatchResult(response).getResults();
+            } catch (IOException e) {
+                if (RetryPolicy.isRefused(response.statusCode())) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+
+        private void retryOrAbandon(DelayedMessage attempt, Duration retryAfter) {
+            var message = attempt.getMessage();
+            long dueNanos = System.nanoTime() + retryPolicy.delayNanos(attempt.getAttempt(), retryAfter);
+
+            if (!stopping && retryPolicy.shouldRetry(attempt.getAttempt(), message.getDeliveryCount())
+                    && holdsLockUntil(dueNanos)) {
+                retryCounter.increment();
+                var retry = new DelayedMessage(message, attempt.getTrafficClass(), attempt.getAttempt() + 1, dueNanos);
+                waiting.add(retry);
+                if (ordered) {
+                    retried = retry;
+                }
+                return;
+            }
+
+            abandon(attempt);
+        }
+
+        private void complete(DelayedMessage attempt) {
+            settlement.complete(attempt.getMessage());
+            settled();
+        }
+
+        private void abandon(DelayedMessage attempt) {
+            settlement.abandon(attempt.getMessage());
+            settled();
+        }
+
+        private void settled() {
+            if (outstanding.decrementAndGet() == 0) {
+                waiting.add(settledAll);
+            }
+        }
+
+        void abandonWaiting() {
+            for (var attempt : waiting) {
+                if (attempt != settledAll && waiting.remove(attempt)) {
+                    abandon(attempt);
+                }
+            }
+        }
+
+        private void awaitInFlight() {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        /**
+         * Whether the session lock covers {@code dueNanos} plus the safety margin, renewing it
+         * once if it does not yet.
+         */
+        private synchronized boolean holdsLockUntil(long dueNanos) {
+            if (lockedUntilNanos - (dueNanos + lockMarginNanos) > 0) {
+                return true;
+            }
+
+            return !renewalFailed && renewLock() && lockedUntilNanos - (dueNanos + lockMarginNanos) > 0;
+        }
+
+        private synchronized void renewLockIfDue() {
+            if (!renewalFailed && lockedUntilNanos - System.nanoTime() < lockRenewBeforeNanos) {
+                renewLock();
+            }
+        }
+
+        private synchronized boolean renewLock() {
+            try {
+                lockedUntilNanos = toNanoTime(receiver.renewSessionLock());
+                log.info("[TOPIC PROCESSOR: LOCK] Renewed session {} lock", receiver.getSessionId());
+                return true;
+            } catch (Exception e) {
+                log.error("[TOPIC PROCESSOR: LOCK] Session lock renewal failed: " + e.getMessage());
+                renewalFailed = true;
+                return false;
+            }
+        }
+
+        private synchronized void observeLock(OffsetDateTime lockedUntil) {
+            if (lockedUntil == null) {
+                return;
+            }
+
+            long nanos = toNanoTime(lockedUntil);
+            lockedUntilNanos = lockObserved ? Math.min(lockedUntilNanos, nanos) : nanos;
+            lockObserved = true;
+        }
+    }
+
+    private static long toNanoTime(OffsetDateTime instant) {
+        return System.nanoTime() + Duration.between(OffsetDateTime.now(), instant).toNanos();
+    }
+
+    /**
+     * A Retry-After means the API ran out of tokens for at least part of the request or shed it
+     * under load, a 2xx is an acceptance that may carry the API's view of the limit in RateLimit
+     * headers. Both limiters, the one pacing requests and the one sizing receives, are told about
+     * them; any other answer says nothing about the limit and leaves the pacing alone.
+     *
+     * @return the Retry-After the API asked for, or null when it did not throttle
+     */
+    private Duration recordFeedback(HttpResponse<?> response, long sentAtNanos) {
+        var headers = response.headers();
+        var retryAfter = headers.firstValue(HttpHeaders.RETRY_AFTER);
+        boolean throttled = retryAfter.isPresent()
+                || response.statusCode() == HttpResponseStatus.TOO_MANY_REQUESTS.code();
+
+        long latencyNanos = System.nanoTime() - sentAtNanos;
+        metrics.apiResponse(latencyNanos, throttled);
+        receiveController.onResponse(latencyNanos, throttled,
+                headers.firstValueAsLong(RATE_LIMIT_REMAINING).orElse(-1));
+
+        if (throttled) {
+            long seconds = RetryPolicy.retryAfterSeconds(retryAfter.orElse(null));
+            log.info("[TOPIC PROCESSOR: RATE LIMIT] Throttled for {} seconds", seconds);
+            rateLimiter.onThrottled(Duration.ofSeconds(seconds));
+            return Duration.ofSeconds(seconds);
+        }
+
+        if (!RetryPolicy.isSuccess(response.statusCode())) {
+            return null;
+        }
+
+        rateLimiter.onAccepted(headers.firstValueAsLong(RATE_LIMIT_LIMIT).orElse(0),
+                headers.firstValueAsLong(RATE_LIMIT_REMAINING).orElse(0),
+                headers.firstValueAsLong(RATE_LIMIT_RESET).orElse(0));
+        return null;
+    }
+}
@@ -0,0 +1,253 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.ApiClientBuilder;
+import com.microsoft.samples.messagehandler.bus.ReactiveSessionReceiver;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.DispatchConfig;
+import com.microsoft.samples.messagehandler.config.HttpClientConfig;
+import com.microsoft.samples.messagehandler.config.SettlementConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.util.retry.Retry;
+
+/**
+ * Reactive counterpart of {@link MessageDispatcher}: sends a session's messages to the API with
+ * {@link WebClient} and settles each one with the outcome.
+ *
+ * At most {@code maxInFlight} messages are between receive and settlement, and each of them
+ * first waits for a permit from the {@link AdaptiveRateLimiter}, shared between classes of
+ * messages by the {@link WeightedFairScheduler}. Messages are only requested from
+ * the receiver when a slot frees up, so throttling by the API slows down receiving instead of
+ * piling up locked messages. A throttled message is retried after its Retry-After or a backoff
+ * until the {@link RetryPolicy} gives up on it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "processor.mode", havingValue = "reactive")
+public class ReactiveMessageDispatcher implements AutoCloseable {
+
+    private static final String RATE_LIMIT_LIMIT = "RateLimit-Limit";
+    private static final String RATE_LIMIT_REMAINING = "RateLimit-Remaining";
+    private static final String RATE_LIMIT_RESET = "RateLimit-Reset";
+
+    private final WebClient webClient;
+    private final int maxInFlight;
+    private final Duration idleTimeout;
+    private final RetryPolicy retryPolicy;
+    private final Retry settlementRetry;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final WeightedFairScheduler scheduler;
+    private final Counter totalMessagesCounter;
+    private final Counter rateLimitCounter;
+    private final Counter retryCounter;
+    private final Counter abandonCounter;
+    private final DispatchMetrics metrics;
+
+    public ReactiveMessageDispatcher(WebClient.Builder webClientBuilder, AppConfig appConfig,
+            MeterRegistry meterRegistry) {
+        DispatchConfig dispatch = appConfig.getDispatch();
+        HttpClientConfig http = dispatch.getHttp();
+        this.maxInFlight = dispatch.isOrdered() ? 1 : Math.max(1, dispatch.getMaxInFlight());
+        this.idleTimeout = appConfig.getProcessor().getIdleTimeout();
+        this.retryPolicy = new RetryPolicy(dispatch.getRetry());
+
+        // Settlements are already async here, they only need the same retries as the blocking stage
+        SettlementConfig settlement = dispatch.getSettlement();
+        this.settlementRetry = Retry.backoff(Math.max(0, settlement.getMaxAttempts() - 1), settlement.getBackoff())
+                .filter(SettlementStage::isTransient);
+
+        var protocols = http.getVersion() == HttpClient.Version.HTTP_2
+                ? new HttpProtocol[] { HttpProtocol.H2C, HttpProtocol.HTTP11 }
+                : new HttpProtocol[] { HttpProtocol.HTTP11 };
+        this.webClient = webClientBuilder
+                .baseUrl(appConfig.getRateLimitingServiceUrl())
+                .clientConnector(new ReactorClientHttpConnector(reactor.netty.http.client.HttpClient.create()
+                        .protocol(protocols)
+                        .responseTimeout(http.getRequestTimeout())))
+                .build();
+
+        totalMessagesCounter = meterRegistry.counter("total_messages_processed");
+        rateLimitCounter = meterRegistry.counter("rate_limit_hits");
+        retryCounter = meterRegistry.counter("messages_retried");
+        abandonCounter = meterRegistry.counter("messages_abandoned");
+        metrics = new DispatchMetrics(meterRegistry);
+
+        rateLimiter = new AdaptiveRateLimiter(dispatch.getAdaptive());
+        Gauge.builder("client_rate_limit", rateLimiter, AdaptiveRateLimiter::getRate)
+                .description("Requests per second the client side limiter currently allows")
+                .register(meterRegistry);
+        scheduler = new WeightedFairScheduler(rateLimiter, dispatch.getFairness(), meterRegistry);
+
+        log.info("Reactive message dispatcher, max in flight: {}, protocols: {}", maxInFlight, protocols);
+    }
+
+    /**
+     * Processes the session until no message arrived for {@code idleTimeout} while none was in
+     * flight. Waiting on the limiter or a retry does not count as idle, since no more messages are
+     * requested in the meantime.
+     */
+    public Mono<Void> dispatch(ReactiveSessionReceiver session) {
+        var inFlight = new AtomicInteger();
+        var idle = Flux.interval(idleTimeout).filter(tick -> inFlight.get() == 0).next();
+
+        return session.receiveMessages()
+                .timeout(idle, message -> idle, Flux.empty())
+                .flatMap(message -> {
+                    inFlight.incrementAndGet();
+                    return send(session, message, scheduler.classify(message), 0).doFinally(signal -> inFlight.decrementAndGet());
+                }, maxInFlight, 1)
+                .then();
+    }
+
+    @Override
+    public void close() {
+        scheduler.close();
+    }
+
+    private Mono<Void> send(ReactiveSessionReceiver session, ServiceBusReceivedMessage message, String trafficClass,
+            int attempt) {
+        var sentAtNanos = new long[1];
+        return Mono.fromFuture(() -> scheduler.schedule(trafficClass, 1))
+                .then(Mono.defer(() -> {
+                    sentAtNanos[0] = System.nanoTime();
+                    return webClient.post()
+                            .uri("/messages")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .headers(headers -> {
+                                if (message.getMessageId() != null) {
+                                    headers.set(ApiClientBuilder.IDEMPOTENCY_KEY, message.getMessageId());
+                                }
+                            })
+                            .bodyValue(message.getBody().toBytes())
+                            .exchangeToMono(response -> response.releaseBody()
+                                    .then(Mono.fromSupplier(() -> {
+                                        int status = response.statusCode().value();
+                                        return new Outcome(status, recordFeedback(status,
+                                                response.headers().asHttpHeaders(), sentAtNanos[0]));
+                                    })));
+                }))
+                .onErrorResume(error -> {
+                    metrics.apiFailure(System.nanoTime() - sentAtNanos[0]);
+                    log.error("[TOPIC PROCESSOR: EXCEPTION]: " + error.getMessage());
+                    return Mono.just(new Outcome(0, Optional.empty()));
+                })
+                .flatMap(outcome -> {
+                    if (outcome.retryAfter().isPresent()) {
+                        rateLimitCounter.increment();
+                        return retryOrAbandon(session, message, trafficClass, attempt, outcome.retryAfter().get());
+                    }
+                    if (RetryPolicy.isRefused(outcome.status())) {
+                        log.error("[TOPIC PROCESSOR: REFUSED] API answered {} for a message", outcome.status());
+                        return abandon(session, message);
+                    }
+                    if (!RetryPolicy.isSuccess(outcome.status())) {
+                        if (outcome.status() != 0) {
+                            log.error("[TOPIC PROCESSOR: EXCEPTION]: API answered " + outcome.status());
+                        }
+                        return retryOrAbandon(session, message, trafficClass, attempt, null);
+                    }
+                    return complete(session, message);
+                });
+    }
+
+    /**
+     * The status the API answered with, 0 when the request failed without an answer.
+     */
+    private record Outcome(int status, Optional<Duration> retryAfter) {
+    }
+
+    private Mono<Void> retryOrAbandon(ReactiveSessionReceiver session, ServiceBusReceivedMessage message,
+            String trafficClass, int attempt, Duration retryAfter) {
+        if (retryPolicy.shouldRetry(attempt, message.getDeliveryCount())) {
+            retryCounter.increment();
+            return Mono.delay(Duration.ofNanos(retryPolicy.delayNanos(attempt, retryAfter)))
+                    .then(send(session, message, trafficClass, attempt + 1));
+        }
+
+        return abandon(session, message);
+    }
+
+    private Mono<Void> abandon(ReactiveSessionReceiver session, ServiceBusReceivedMessage message) {
+        return Mono.defer(() -> {
+                    long startNanos = System.nanoTime();
+                    return session.abandon(message)
+                            .doOnSuccess(ignored -> metrics.abandoned(System.nanoTime() - startNanos));
+                })
+                .retryWhen(settlementRetry)
+                .doOnSuccess(ignored -> abandonCounter.increment())
+                .onErrorResume(error -> settlementFailed(error));
+    }
+
+    private Mono<Void> complete(ReactiveSessionReceiver session, ServiceBusReceivedMessage message) {
+        return Mono.defer(() -> {
+                    long startNanos = System.nanoTime();
+                    return session.complete(message)
+                            .doOnSuccess(ignored -> metrics.completed(System.nanoTime() - startNanos));
+                })
+                .retryWhen(settlementRetry)
+                .doOnSuccess(ignored -> totalMessagesCounter.increment())
+                .onErrorResume(error -> settlementFailed(error));
+    }
+
+    private static Mono<Void> settlementFailed(Throwable error) {
+        log.error("[TOPIC PROCESSOR: SETTLEMENT EXCEPTION]: " + error.getMessage());
+        return Mono.empty();
+    }
+
+    /**
+     * Same reading of the response as the blocking dispatcher, only a 2xx tells the limiter the
+     * request was accepted.
+     *
+     * @return the Retry-After when the API throttled the request, empty when it accepted it
+     */
+    private Optional<Duration> recordFeedback(int status, HttpHeaders headers, long sentAtNanos) {
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        boolean throttled = retryAfter != null || status == HttpStatus.TOO_MANY_REQUESTS.value();
+        metrics.apiResponse(System.nanoTime() - sentAtNanos, throttled);
+
+        if (throttled) {
+            long seconds = RetryPolicy.retryAfterSeconds(retryAfter);
+            log.info("[TOPIC PROCESSOR: RATE LIMIT] Throttled for {} seconds", seconds);
+            rateLimiter.onThrottled(Duration.ofSeconds(seconds));
+            return Optional.of(Duration.ofSeconds(seconds));
+        }
+
+        if (!RetryPolicy.isSuccess(status)) {
+            return Optional.empty();
+        }
+
+        rateLimiter.onAccepted(parse(headers.getFirst(RATE_LIMIT_LIMIT), 0),
+                parse(headers.getFirst(RATE_LIMIT_REMAINING), 0),
+                parse(headers.getFirst(RATE_LIMIT_RESET), 0));
+        return Optional.empty();
+    }
+
+    private static long parse(String value, long fallback) {
+        try {
+            return value == null ? fallback : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
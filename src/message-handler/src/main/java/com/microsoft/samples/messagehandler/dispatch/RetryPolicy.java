@@ -0,0 +1,73 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.microsoft.samples.messagehandler.config.RetryConfig;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a rejected message is kept for another local attempt, and after how long.
+ *
+ * The wait is the API's Retry-After when it sent a positive one, otherwise exponential backoff
+ * with jitter.
+ * A message is only given back to Service Bus once it is out of local attempts or close to the
+ * delivery count at which Service Bus dead-letters it.
+ */
+class RetryPolicy {
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 30;
+
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxDeliveryCount;
+
+    RetryPolicy(RetryConfig config) {
+        this.enabled = config.isEnabled();
+        this.maxAttempts = config.getMaxAttempts();
+        this.initialBackoffNanos = config.getInitialBackoff().toNanos();
+        this.maxBackoffNanos = config.getMaxBackoff().toNanos();
+        this.maxDeliveryCount = config.getMaxDeliveryCount();
+    }
+
+    /**
+     * The seconds to wait for a Retry-After header, between 1 and 30. A missing value, one that is
+     * not a number of seconds, or one that is not positive counts as 1 second, so a throttled
+     * message is never sent again straight away and a broken header cannot park it for long.
+     */
+    /**
+     * A 4xx other than 429 means the request itself is at fault, such as a message that costs more
+     * than the limit, and sending it again would not change the answer.
+     */
+    static boolean isRefused(int status) {
+        return status >= 400 && status < 500 && status != 429;
+    }
+
+    static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    static long retryAfterSeconds(String value) {
+        long seconds;
+        try {
+            seconds = value == null ? 1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            seconds = 1;
+        }
+        return Math.max(1, Math.min(seconds, MAX_RETRY_AFTER_SECONDS));
+    }
+
+    long delayNanos(int attempt, Duration retryAfter) {
+        if (retryAfter != null && !retryAfter.isZero() && !retryAfter.isNegative()) {
+            return Math.max(0, Math.min(retryAfter.toNanos(), maxBackoffNanos));
+        }
+
+        long backoff = Math.min(initialBackoffNanos << Math.min(attempt, 20), maxBackoffNanos);
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    boolean shouldRetry(int attempt, long deliveryCount) {
+        return enabled && attempt + 1 < maxAttempts && deliveryCount + 1 < maxDeliveryCount;
+    }
+}
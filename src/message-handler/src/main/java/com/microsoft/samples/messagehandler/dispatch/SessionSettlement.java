@@ -0,0 +1,98 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.bus.SessionReceiver;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * The settlements of one accepted session that were handed to the {@link SettlementStage}.
+ * Closing it waits until every one of them reached Service Bus or failed for good, so it is
+ * closed before the lease is released and before the session itself is closed.
+ *
+ * The settlements of an ordered session run one after the other in the order they were handed
+ * over, so its messages are completed in the order they were sent.
+ */
+public class SessionSettlement implements AutoCloseable {
+
+    private final SettlementStage stage;
+    private final SessionReceiver receiver;
+    private final boolean ordered;
+    private final Queue<Runnable> backlog = new ArrayDeque<>();
+    private int pending;
+    private boolean running;
+
+    SessionSettlement(SettlementStage stage, SessionReceiver receiver, boolean ordered) {
+        this.stage = stage;
+        this.receiver = receiver;
+        this.ordered = ordered;
+    }
+
+    SessionReceiver getReceiver() {
+        return receiver;
+    }
+
+    void complete(ServiceBusReceivedMessage message) {
+        stage.submit(this, message, true);
+    }
+
+    void abandon(ServiceBusReceivedMessage message) {
+        stage.submit(this, message, false);
+    }
+
+    /**
+     * Counts a settlement handed over.
+     *
+     * @return whether it can run now, false when it waits behind an earlier one of an ordered session
+     */
+    synchronized boolean started(Runnable settlement) {
+        pending++;
+        if (!ordered) {
+            return true;
+        }
+        if (running) {
+            backlog.add(settlement);
+            return false;
+        }
+        running = true;
+        return true;
+    }
+
+    /**
+     * Counts a settlement finished.
+     *
+     * @return the settlement of an ordered session that was waiting for it, if any
+     */
+    synchronized Runnable settled() {
+        if (--pending == 0) {
+            notifyAll();
+        }
+        if (!ordered) {
+            return null;
+        }
+        var next = backlog.poll();
+        running = next != null;
+        return next;
+    }
+
+    /**
+     * Waits for the pending settlements of the session. Not interruptible: a worker that is being
+     * stopped still has to settle what it received, or every message would wait out its lock.
+     */
+    @Override
+    public synchronized void close() {
+        boolean interrupted = false;
+        while (pending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
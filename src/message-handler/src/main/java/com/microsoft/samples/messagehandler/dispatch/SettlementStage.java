@@ -0,0 +1,169 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusException;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.bus.SessionReceiver;
+import com.microsoft.samples.messagehandler.config.SettlementConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completes and abandons messages off the send path, so settling one message overlaps with
+ * sending the next ones and with the next receive instead of adding a broker round trip to each.
+ *
+ * At most {@code maxInFlight} settlements talk to Service Bus at once, one per thread of the
+ * stage, and at most {@code maxPending} are handed over and not finished; a caller handing over
+ * more waits for room. A settlement that fails with a transient error is tried again after a
+ * backoff that doubles, up to {@code maxAttempts} times. One that fails otherwise, for instance
+ * because the session lock was lost, is logged and counted: Service Bus redelivers the message
+ * once its lock expires, and its Idempotency-Key keeps the API from charging it again.
+ *
+ * Settlements are tracked per session by a {@link SessionSettlement}, which also holds back the
+ * settlements of an ordered session until the earlier ones finished. Once the stage is closed,
+ * settlements still handed to it run on the caller's thread, so none is dropped on shutdown.
+ */
+@Slf4j
+class SettlementStage implements AutoCloseable {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore room;
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final DispatchMetrics metrics;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Counter completedCounter;
+    private final Counter abandonCounter;
+    private final Counter retryCounter;
+    private final Counter failedCounter;
+
+    SettlementStage(SettlementConfig config, DispatchMetrics metrics, MeterRegistry meterRegistry) {
+        var threads = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, config.getMaxInFlight()), runnable -> {
+            var thread = new Thread(runnable, "settlement-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.room = new Semaphore(Math.max(1, config.getMaxPending()));
+        this.maxAttempts = Math.max(1, config.getMaxAttempts());
+        this.backoffNanos = config.getBackoff().toNanos();
+        this.metrics = metrics;
+
+        completedCounter = meterRegistry.counter("total_messages_processed");
+        abandonCounter = meterRegistry.counter("messages_abandoned");
+        retryCounter = meterRegistry.counter("settlements_retried");
+        failedCounter = meterRegistry.counter("settlements_failed");
+        Gauge.builder("settlements_pending", pending, AtomicInteger::get)
+                .description("Settlements handed to the settlement stage and not finished yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether a failed settlement may succeed when tried again, such as after a timeout or while
+     * the broker is busy.
+     */
+    static boolean isTransient(Throwable error) {
+        return error instanceof ServiceBusException serviceBusException && serviceBusException.isTransient();
+    }
+
+    SessionSettlement open(SessionReceiver receiver) {
+        return open(receiver, false);
+    }
+
+    SessionSettlement open(SessionReceiver receiver, boolean ordered) {
+        return new SessionSettlement(this, receiver, ordered);
+    }
+
+    void submit(SessionSettlement session, ServiceBusReceivedMessage message, boolean complete) {
+        room.acquireUninterruptibly();
+        pending.incrementAndGet();
+        var settlement = new Settlement(session, message, complete);
+        if (session.started(settlement)) {
+            schedule(settlement, 0);
+        }
+    }
+
+    private void schedule(Runnable settlement, long delayNanos) {
+        try {
+            executor.schedule(settlement, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            settlement.run();
+        }
+    }
+
+    /**
+     * Stops taking new settlements and waits for the ones handed over, including their retries.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.error("[TOPIC PROCESSOR: SETTLEMENT] {} settlements still pending on shutdown", pending.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Settlement implements Runnable {
+        private final SessionSettlement session;
+        private final ServiceBusReceivedMessage message;
+        private final boolean complete;
+        private int attempt;
+
+        Settlement(SessionSettlement session, ServiceBusReceivedMessage message, boolean complete) {
+            this.session = session;
+            this.message = message;
+            this.complete = complete;
+        }
+
+        @Override
+        public void run() {
+            try {
+                settle();
+            } catch (Exception e) {
+                if (isTransient(e) && attempt + 1 < maxAttempts) {
+                    retryCounter.increment();
+                    log.warn("[TOPIC PROCESSOR: SETTLEMENT RETRY]: " + e.getMessage());
+                    schedule(this, backoffNanos << attempt++);
+                    return;
+                }
+
+                failedCounter.increment();
+                log.error("[TOPIC PROCESSOR: SETTLEMENT EXCEPTION]: " + e.getMessage());
+            }
+
+            pending.decrementAndGet();
+            room.release();
+            var next = session.settled();
+            if (next != null) {
+                schedule(next, 0);
+            }
+        }
+
+        private void settle() {
+            var receiver = session.getReceiver();
+            long startNanos = System.nanoTime();
+            if (complete) {
+                receiver.complete(message);
+                metrics.completed(System.nanoTime() - startNanos);
+                completedCounter.increment();
+            } else {
+                receiver.abandon(message);
+                metrics.abandoned(System.nanoTime() - startNanos);
+                abandonCounter.increment();
+            }
+        }
+    }
+}
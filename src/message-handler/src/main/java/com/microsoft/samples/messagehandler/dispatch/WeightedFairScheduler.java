@@ -0,0 +1,184 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.config.FairnessConfig;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the permits of the {@link AdaptiveRateLimiter} between classes of messages by weighted
+ * fair queuing, so a backlog of one class does not hold up the others.
+ *
+ * A message's class comes from one of its application properties, a priority or a tenant for
+ * example. Requests for permits from every session worker queue here and one thread hands out the
+ * limiter's permits in order of their self-clocked finish tags: a class gets permits in proportion
+ * to its weight while it has requests waiting, which guarantees it weight / sum of all weights of
+ * the budget however busy the others are, and the share of idle classes goes to the busy ones.
+ * Within a class requests are granted in the order they were made.
+ */
+@Slf4j
+public class WeightedFairScheduler implements AutoCloseable {
+
+    private static final double DEFAULT_WEIGHT = 1;
+
+    private static final class TrafficClass {
+        private final String name;
+        private final double weight;
+        private final Timer waitTimer;
+        private double lastFinish;
+
+        TrafficClass(String name, double weight, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.weight = weight;
+            this.waitTimer = Timer.builder("dispatch_wait")
+                    .description("Time a message waited for a permit to be sent to the API")
+                    .tag("class", name)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+
+    private record Ticket(TrafficClass trafficClass, int permits, double finish, long sequence, long queuedAtNanos,
+            CompletableFuture<Void> grant) {
+    }
+
+    private final AdaptiveRateLimiter rateLimiter;
+    private final String property;
+    private final TrafficClass defaultClass;
+    private final Map<String, TrafficClass> classes;
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.comparingDouble(Ticket::finish).thenComparingLong(Ticket::sequence));
+    private final Thread pacer;
+    private double virtualTime;
+    private long sequence;
+    private boolean closed;
+
+    public WeightedFairScheduler(AdaptiveRateLimiter rateLimiter, FairnessConfig config,
+            MeterRegistry meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.property = config.getProperty();
+
+        Map<String, TrafficClass> trafficClasses = new HashMap<>();
+        var weights = new LinkedHashMap<>(config.getWeights());
+        weights.putIfAbsent(config.getDefaultClass(), DEFAULT_WEIGHT);
+        weights.forEach((name, weight) -> {
+            if (weight == null || weight <= 0) {
+                throw new IllegalStateException("Dispatch class " + name + " needs a positive weight");
+            }
+            trafficClasses.put(name, new TrafficClass(name, weight, meterRegistry));
+        });
+        this.classes = Map.copyOf(trafficClasses);
+        this.defaultClass = classes.get(config.getDefaultClass());
+
+        pacer = new Thread(this::pace, "dispatch-scheduler");
+        pacer.setDaemon(true);
+        pacer.start();
+
+        log.info("Dispatch classes by {} with weights {}", property, weights);
+    }
+
+    /**
+     * The class named by the message's property, the default class when it has none or one that
+     * is not configured.
+     */
+    public String classify(ServiceBusReceivedMessage message) {
+        Object value = message.getApplicationProperties().get(property);
+        TrafficClass trafficClass = value == null ? null : classes.get(value.toString());
+        return trafficClass == null ? defaultClass.name : trafficClass.name;
+    }
+
+    public double weight(String trafficClass) {
+        return resolve(trafficClass).weight;
+    }
+
+    public void acquire(String trafficClass, int permits) throws InterruptedException {
+        var grant = schedule(trafficClass, permits);
+        try {
+            grant.get();
+        } catch (InterruptedException e) {
+            grant.cancel(false);
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new InterruptedException("Dispatch scheduler stopped");
+        }
+    }
+
+    /**
+     * Completes once the permits are granted. Cancelling the future gives up the place in the queue.
+     */
+    public CompletableFuture<Void> schedule(String trafficClass, int permits) {
+        var resolved = resolve(trafficClass);
+        var grant = new CompletableFuture<Void>();
+        synchronized (this) {
+            if (closed) {
+                grant.cancel(false);
+                return grant;
+            }
+
+            double finish = Math.max(virtualTime, resolved.lastFinish) + permits / resolved.weight;
+            resolved.lastFinish = finish;
+            queue.add(new Ticket(resolved, permits, finish, sequence++, System.nanoTime(), grant));
+            notifyAll();
+        }
+        return grant;
+    }
+
+    @Override
+    public void close() {
+        pacer.interrupt();
+        synchronized (this) {
+            closed = true;
+            queue.forEach(ticket -> ticket.grant().cancel(false));
+            queue.clear();
+        }
+    }
+
+    private TrafficClass resolve(String trafficClass) {
+        return classes.getOrDefault(trafficClass, defaultClass);
+    }
+
+    private void pace() {
+        Ticket ticket = null;
+        try {
+            while (true) {
+                ticket = next();
+                if (ticket.grant().isDone()) {
+                    continue;
+                }
+
+                long waitNanos = rateLimiter.reserve(ticket.permits(), System.nanoTime());
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+
+                ticket.trafficClass().waitTimer.record(System.nanoTime() - ticket.queuedAtNanos(), TimeUnit.NANOSECONDS);
+                ticket.grant().complete(null);
+            }
+        } catch (InterruptedException e) {
+            if (ticket != null) {
+                ticket.grant().cancel(false);
+            }
+        }
+    }
+
+    private synchronized Ticket next() throws InterruptedException {
+        while (queue.isEmpty()) {
+            wait();
+        }
+        var ticket = queue.poll();
+        virtualTime = ticket.finish();
+        return ticket;
+    }
+}
@@ -0,0 +1,59 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A held lease. Closing it stops the heartbeat and releases the lease if it is still owned.
+ */
+public class Lease implements AutoCloseable {
+
+    private final LeaseManager manager;
+    private final String key;
+    private final String owner;
+    private final long acquiredAtNanos;
+    private volatile ScheduledFuture<?> heartbeat;
+    private volatile boolean lost;
+
+    Lease(LeaseManager manager, String key, String owner) {
+        this.manager = manager;
+        this.key = key;
+        this.owner = owner;
+        this.acquiredAtNanos = System.nanoTime();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    String getOwner() {
+        return owner;
+    }
+
+    long getAcquiredAtNanos() {
+        return acquiredAtNanos;
+    }
+
+    ScheduledFuture<?> getHeartbeat() {
+        return heartbeat;
+    }
+
+    void setHeartbeat(ScheduledFuture<?> heartbeat) {
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Whether a heartbeat found the lease expired or taken by another replica.
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    void markLost() {
+        lost = true;
+    }
+
+    @Override
+    public void close() {
+        manager.release(this);
+    }
+}
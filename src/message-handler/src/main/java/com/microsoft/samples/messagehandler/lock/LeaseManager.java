@@ -0,0 +1,171 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Service;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.config.LeaseConfig;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out one of {@code partitions} leases, which caps how many sessions are processed at once
+ * across all replicas.
+ *
+ * A replica that finds every lease taken waits until another replica publishes a release, or
+ * until the first lease is due to expire when its owner went away without releasing it. Held
+ * leases are renewed by a heartbeat so they outlive long batches, and only the owner's token can
+ * renew or release them.
+ */
+@Service
+@Slf4j
+public class LeaseManager implements AutoCloseable {
+
+    private final LeaseStore store;
+    private final int partitions;
+    private final String keyPrefix;
+    private final Duration duration;
+    private final long heartbeatMillis;
+    private final long maxWaitMillis;
+    private final String replicaName = System.getenv("HOSTNAME");
+    private final Object released = new Object();
+    private long releases;
+    private final ScheduledExecutorService heartbeats;
+    private final Timer waitTimer;
+    private final Timer holdTimer;
+    private final Counter lostCounter;
+
+    public LeaseManager(LeaseStore store, AppConfig appConfig, MeterRegistry meterRegistry) {
+        LeaseConfig config = appConfig.getLease();
+        this.store = store;
+        this.partitions = Math.max(1, config.getPartitions());
+        this.keyPrefix = config.getKeyPrefix();
+        this.duration = config.getDuration();
+        this.heartbeatMillis = config.getHeartbeatInterval().toMillis();
+        this.maxWaitMillis = config.getMaxWait().toMillis();
+
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        waitTimer = Timer.builder("lock_wait")
+                .description("Time spent waiting for a lease")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        holdTimer = Timer.builder("lock_hold")
+                .description("Time a lease was held")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        lostCounter = meterRegistry.counter("lock_lost");
+
+        store.onRelease(key -> {
+            synchronized (released) {
+                releases++;
+                released.notifyAll();
+            }
+        });
+
+        log.info("Lease manager, partitions: {}, duration: {}, heartbeat: {}", partitions, duration,
+                config.getHeartbeatInterval());
+    }
+
+    /**
+     * Blocks until one of the leases is free and takes it.
+     */
+    public Lease acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        String owner = replicaName + ":" + UUID.randomUUID();
+
+        while (true) {
+            long seen;
+            synchronized (released) {
+                seen = releases;
+            }
+
+            long waitMillis = maxWaitMillis;
+            int first = ThreadLocalRandom.current().nextInt(partitions);
+
+            for (int i = 0; i < partitions; i++) {
+                String key = keyPrefix + ((first + i) % partitions + 1);
+                try {
+                    long expiresIn = store.tryAcquire(key, owner, duration);
+                    if (expiresIn == 0) {
+                        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        log.info("[TOPIC PROCESSOR: LOCKED] Lease acquired for partition: {} for {}", key, duration);
+                        return start(new Lease(this, key, owner));
+                    }
+                    waitMillis = Math.min(waitMillis, expiresIn);
+                } catch (Exception e) {
+                    log.error("Failed to acquire lease {}: {}", key, e.getMessage());
+                }
+            }
+
+            log.info("All {} leases are taken, waiting up to {} ms for a release", partitions, waitMillis);
+
+            long deadline = System.currentTimeMillis() + waitMillis;
+            synchronized (released) {
+                long remaining = waitMillis;
+                while (releases == seen && remaining > 0) {
+                    released.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    private Lease start(Lease lease) {
+        lease.setHeartbeat(heartbeats.scheduleWithFixedDelay(() -> renew(lease), heartbeatMillis, heartbeatMillis,
+                TimeUnit.MILLISECONDS));
+        return lease;
+    }
+
+    private void renew(Lease lease) {
+        try {
+            if (store.renew(lease.getKey(), lease.getOwner(), duration)) {
+                return;
+            }
+            log.error("Lease {} was lost before it could be renewed", lease.getKey());
+        } catch (Exception e) {
+            log.error("Failed to renew lease {}: {}", lease.getKey(), e.getMessage());
+            return;
+        }
+
+        lease.markLost();
+        lostCounter.increment();
+        lease.getHeartbeat().cancel(false);
+    }
+
+    void release(Lease lease) {
+        var heartbeat = lease.getHeartbeat();
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        holdTimer.record(System.nanoTime() - lease.getAcquiredAtNanos(), TimeUnit.NANOSECONDS);
+
+        try {
+            if (store.release(lease.getKey(), lease.getOwner())) {
+                log.info("Lease {} released.", lease.getKey());
+            } else {
+                log.info("Lease {} had already expired.", lease.getKey());
+            }
+        } catch (Exception e) {
+            log.error("Failed to release lease {}.", lease.getKey(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        heartbeats.shutdownNow();
+    }
+}
@@ -0,0 +1,24 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Storage for leases that are owned by a token, so only the owner can renew or release them.
+ */
+public interface LeaseStore {
+
+    /**
+     * @return 0 when the lease was taken, otherwise the milliseconds until the current lease expires
+     */
+    long tryAcquire(String key, String owner, Duration duration);
+
+    boolean renew(String key, String owner, Duration duration);
+
+    boolean release(String key, String owner);
+
+    /**
+     * Registers a listener that is called with the key of every lease released by any replica.
+     */
+    void onRelease(Consumer<String> listener);
+}
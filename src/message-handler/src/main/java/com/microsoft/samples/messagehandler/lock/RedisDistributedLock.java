@@ -1,24 +1,103 @@
 package com.microsoft.samples.messagehandler.lock;
 
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import com.microsoft.samples.messagehandler.config.AppConfig;
+
+/**
+ * Leases as Redis keys holding the owner's token. Renew and release compare the token in a script
+ * so a replica can never extend or delete a lease that expired and was taken by someone else.
+ * Releases are published so waiting replicas wake up right away.
+ */
 @Component
-public class RedisDistributedLock {
+public class RedisDistributedLock implements LeaseStore {
+
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>("""
+            if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+                return 0
+            end
+            local ttl = redis.call('pttl', KEYS[1])
+            if ttl == -2 then
+                return 1
+            elseif ttl == -1 then
+                return tonumber(ARGV[2])
+            end
+            return ttl
+            """, Long.class);
+
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                redis.call('del', KEYS[1])
+                redis.call('publish', ARGV[2], KEYS[1])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisSerializer<Long> RESULT = new GenericToStringSerializer<>(Long.class);
 
     private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String releaseChannel;
 
-    public RedisDistributedLock(RedisTemplate<String, Object> redisTemplate) {
+    public RedisDistributedLock(RedisTemplate<String, Object> redisTemplate,
+            RedisMessageListenerContainer listenerContainer, AppConfig appConfig) {
         this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.releaseChannel = appConfig.getLease().getReleaseChannel();
+    }
+
+    @Override
+    public long tryAcquire(String key, String owner, Duration duration) {
+        return execute(ACQUIRE, key, owner, Long.toString(duration.toMillis()));
+    }
+
+    @Override
+    public boolean renew(String key, String owner, Duration duration) {
+        return execute(RENEW, key, owner, Long.toString(duration.toMillis())) == 1;
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        return execute(RELEASE, key, owner, releaseChannel) == 1;
     }
 
-    public boolean acquireLock(String lockKey, long timeout, TimeUnit unit) {
-        return redisTemplate.opsForValue().setIfAbsent(lockKey, "locked", timeout, unit);
+    @Override
+    public void onRelease(Consumer<String> listener) {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(releaseChannel));
     }
 
-    public void releaseLock(String lockKey) {
-        redisTemplate.delete(lockKey);
+    /**
+     * Every script returns a number, so no result means the call did not get through, in a
+     * pipeline or transaction for example. It fails rather than reading as a lease taken.
+     */
+    private long execute(RedisScript<Long> script, String key, String... args) {
+        Long result = redisTemplate.execute(script, RedisSerializer.string(), RESULT, List.of(key),
+                (Object[]) args);
+        if (result == null) {
+            throw new IllegalStateException("No result from the lease script for " + key);
+        }
+        return result;
     }
 }
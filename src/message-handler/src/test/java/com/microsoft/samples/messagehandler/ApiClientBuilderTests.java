@@ -0,0 +1,93 @@
+package com.microsoft.samples.messagehandler;
+
+import com.azure.core.util.BinaryData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiClientBuilderTests {
+
+    private final ApiClientBuilder apiClientBuilder;
+
+    ApiClientBuilderTests() {
+        var config = new AppConfig();
+        config.setRateLimitingServiceUrl("http://localhost:1");
+        apiClientBuilder = new ApiClientBuilder(config, new ObjectMapper());
+    }
+
+    @Test
+    void batchBodySplicesMessageBytes() throws Exception {
+        var request = apiClientBuilder.buildBatchRequest(List.of(
+                BinaryData.fromString("{\"message\":\"a\"}"), BinaryData.fromString("{\"message\":\"b\"}")));
+
+        assertThat(request.uri().getPath()).isEqualTo("/messages/batch");
+        assertThat(body(request))
+                .isEqualTo("{\"mode\":\"PARTIAL\",\"messages\":[{\"message\":\"a\"},{\"message\":\"b\"}]}");
+    }
+
+    @Test
+    void batchCarriesTheIdempotencyKeyOfEachMessage() throws Exception {
+        var request = apiClientBuilder.buildBatchRequest(List.of(
+                BinaryData.fromString("{\"message\":\"a\"}"), BinaryData.fromString("{\"message\":\"b\"}")),
+                Arrays.asList("id-a", null));
+
+        assertThat(body(request)).isEqualTo("{\"mode\":\"PARTIAL\",\"idempotencyKeys\":[\"id-a\",null],"
+                + "\"messages\":[{\"message\":\"a\"},{\"message\":\"b\"}]}");
+    }
+
+    @Test
+    void messageRequestsCarryTheirIdempotencyKey() {
+        var request = apiClientBuilder.buildMessageRequest(BinaryData.fromString("{\"message\":\"a\"}"), "id-a");
+
+        assertThat(request.headers().firstValue(ApiClientBuilder.IDEMPOTENCY_KEY)).hasValue("id-a");
+    }
+
+    @Test
+    void messageRequestsAreCopiedFromTheTemplate() throws Exception {
+        var first = apiClientBuilder.buildMessageRequest(BinaryData.fromString("{\"message\":\"a\"}"));
+        var second = apiClientBuilder.buildMessageRequest(BinaryData.fromString("{\"message\":\"bb\"}"));
+
+        assertThat(first.uri().getPath()).isEqualTo("/messages");
+        assertThat(first.headers().firstValue("Content-Type")).hasValue("application/json");
+        assertThat(first.bodyPublisher().orElseThrow().contentLength()).isEqualTo(15);
+        assertThat(body(second)).isEqualTo("{\"message\":\"bb\"}");
+    }
+
+    private static String body(HttpRequest request) throws Exception {
+        var result = new CompletableFuture<String>();
+        request.bodyPublisher().orElseThrow().subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private final StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                body.append(StandardCharsets.UTF_8.decode(item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(body.toString());
+            }
+        });
+        return result.get();
+    }
+}
@@ -0,0 +1,71 @@
+package com.microsoft.samples.messagehandler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.messagehandler.bus.InMemorySessionReceiver;
+import com.microsoft.samples.messagehandler.bus.InMemorySessionSource;
+import com.microsoft.samples.messagehandler.bus.ReceiveController;
+import com.microsoft.samples.messagehandler.bus.TestMessages;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import com.microsoft.samples.messagehandler.dispatch.MessageDispatcher;
+import com.microsoft.samples.messagehandler.lock.InMemoryLeaseStore;
+import com.microsoft.samples.messagehandler.lock.LeaseManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageBusClientTopicProcessorTests {
+
+    @Test
+    void workersDrainEverySessionAndHandItBackWhenIdle() throws Exception {
+        try (var api = new StubRateLimitingApi()) {
+            var config = new AppConfig();
+            config.setRateLimitingServiceUrl(api.getUrl());
+            config.getDispatch().setBatch(false);
+            config.getDispatch().getAdaptive().setEnabled(false);
+            config.getProcessor().setWorkers(3);
+            config.getProcessor().setMaxMessageCount(2);
+            config.getProcessor().getReceive().setAdaptive(false);
+            config.getProcessor().setIdleTimeout(Duration.ZERO);
+            config.getLease().setPartitions(3);
+
+            var source = new InMemorySessionSource(Duration.ofMillis(100));
+            var sessions = new ArrayList<InMemorySessionReceiver>();
+            for (int s = 0; s < 5; s++) {
+                var session = new InMemorySessionReceiver("session-" + s, Duration.ofSeconds(60));
+                for (int m = 0; m < 5; m++) {
+                    session.add(TestMessages.received(s + "-" + m, session.getSessionId(), "{\"message\":\"hello\"}",
+                            1, OffsetDateTime.now().plusSeconds(60)));
+                }
+                sessions.add(session);
+                source.add(session);
+            }
+
+            var meterRegistry = new SimpleMeterRegistry();
+            var receiveController = new ReceiveController(config, meterRegistry);
+            var dispatcher = new MessageDispatcher(new ApiClientBuilder(config, new ObjectMapper()),
+                    receiveController, config, meterRegistry);
+            var leaseManager = new LeaseManager(new InMemoryLeaseStore(), config, meterRegistry);
+            var processor = new MessageBusClientTopicProcessor(source, dispatcher, leaseManager, receiveController,
+                    config);
+
+            processor.start();
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (!sessions.stream().allMatch(InMemorySessionReceiver::isClosed) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            processor.close();
+
+            assertThat(sessions).allSatisfy(session -> {
+                assertThat(session.isClosed()).isTrue();
+                assertThat(session.getCompleted()).hasSize(5);
+            });
+            assertThat(api.getRequests()).isEqualTo(25);
+        }
+    }
+}
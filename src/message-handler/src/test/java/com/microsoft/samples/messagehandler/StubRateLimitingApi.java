@@ -0,0 +1,84 @@
+package com.microsoft.samples.messagehandler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the rate limiting API on a local port. The first {@code throttled} requests to
+ * /messages get a 429 with a one second Retry-After, or the status set with {@link #failFirst},
+ * every later one is accepted. The
+ * Idempotency-Key of every request to /messages is kept in the order the requests arrived.
+ */
+public class StubRateLimitingApi implements AutoCloseable {
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Queue<String> idempotencyKeys = new ConcurrentLinkedQueue<>();
+    private volatile int throttled;
+    private volatile int failureStatus = 429;
+
+    public StubRateLimitingApi() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> respond(exchange, 200, "{}"));
+        server.createContext("/messages", exchange -> {
+            var idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            if (idempotencyKey != null) {
+                idempotencyKeys.add(idempotencyKey);
+            }
+            if (requests.incrementAndGet() <= throttled) {
+                if (failureStatus == 429) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                }
+                respond(exchange, failureStatus, "{\"success\":false}");
+            } else {
+                respond(exchange, 200, "{\"success\":true}");
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public void throttleFirst(int requests) {
+        failFirst(requests, 429);
+    }
+
+    /**
+     * Answers the first {@code requests} with {@code status}, without a Retry-After unless it is a 429.
+     */
+    public void failFirst(int requests, int status) {
+        this.failureStatus = status;
+        this.throttled = requests;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public List<String> getIdempotencyKeys() {
+        return List.copyOf(idempotencyKeys);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
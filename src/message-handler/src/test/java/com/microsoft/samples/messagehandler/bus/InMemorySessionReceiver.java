@@ -0,0 +1,113 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for an accepted session that records how every message was settled.
+ */
+public class InMemorySessionReceiver implements SessionReceiver {
+
+    private final String sessionId;
+    private final Duration lockDuration;
+    private final Queue<ServiceBusReceivedMessage> messages = new ConcurrentLinkedQueue<>();
+    private final Queue<ServiceBusReceivedMessage> completed = new ConcurrentLinkedQueue<>();
+    private final Queue<ServiceBusReceivedMessage> abandoned = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger lockRenewals = new AtomicInteger();
+    private final AtomicInteger settlementFailures = new AtomicInteger();
+    private volatile RuntimeException settlementError;
+    private volatile boolean failRenewals;
+    private volatile boolean closed;
+
+    public InMemorySessionReceiver(String sessionId, Duration lockDuration) {
+        this.sessionId = sessionId;
+        this.lockDuration = lockDuration;
+    }
+
+    public InMemorySessionReceiver add(ServiceBusReceivedMessage message) {
+        messages.add(message);
+        return this;
+    }
+
+    public void failRenewals() {
+        failRenewals = true;
+    }
+
+    /**
+     * Makes the next {@code times} completions and abandons throw {@code error}.
+     */
+    public void failSettlements(int times, RuntimeException error) {
+        settlementError = error;
+        settlementFailures.set(times);
+    }
+
+    @Override
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    @Override
+    public Iterable<ServiceBusReceivedMessage> receiveMessages(int maxMessages, Duration maxWaitTime) {
+        var received = new ArrayList<ServiceBusReceivedMessage>();
+        ServiceBusReceivedMessage message;
+        while (received.size() < maxMessages && (message = messages.poll()) != null) {
+            received.add(message);
+        }
+        return received;
+    }
+
+    @Override
+    public void complete(ServiceBusReceivedMessage message) {
+        failSettlementIfAsked();
+        completed.add(message);
+    }
+
+    @Override
+    public void abandon(ServiceBusReceivedMessage message) {
+        failSettlementIfAsked();
+        abandoned.add(message);
+    }
+
+    private void failSettlementIfAsked() {
+        if (settlementFailures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            throw settlementError;
+        }
+    }
+
+    @Override
+    public OffsetDateTime renewSessionLock() {
+        if (failRenewals) {
+            throw new IllegalStateException("Session lock lost");
+        }
+        lockRenewals.incrementAndGet();
+        return OffsetDateTime.now().plus(lockDuration);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    public List<ServiceBusReceivedMessage> getCompleted() {
+        return List.copyOf(completed);
+    }
+
+    public List<ServiceBusReceivedMessage> getAbandoned() {
+        return List.copyOf(abandoned);
+    }
+
+    public int getLockRenewals() {
+        return lockRenewals.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
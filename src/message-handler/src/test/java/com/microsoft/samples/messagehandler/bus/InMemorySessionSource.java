@@ -0,0 +1,44 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the subscription that hands out queued in-memory sessions. Like Service Bus, it
+ * throws when no session becomes available within the accept timeout.
+ */
+public class InMemorySessionSource implements SessionSource {
+
+    private final BlockingQueue<SessionReceiver> sessions = new LinkedBlockingQueue<>();
+    private final Duration acceptTimeout;
+
+    public InMemorySessionSource(Duration acceptTimeout) {
+        this.acceptTimeout = acceptTimeout;
+    }
+
+    public InMemorySessionSource add(SessionReceiver session) {
+        sessions.add(session);
+        return this;
+    }
+
+    @Override
+    public SessionReceiver acceptNextSession() {
+        try {
+            var session = sessions.poll(acceptTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (session == null) {
+                throw new IllegalStateException("No session available");
+            }
+            return session;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+    }
+}
@@ -0,0 +1,52 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReceiveControllerTests {
+
+    private ReceiveController controller() {
+        var config = new AppConfig();
+        config.getProcessor().setMaxMessageCount(20);
+        config.getProcessor().getReceive().setMaxBatchSize(50);
+        config.getProcessor().getReceive().setBatchIncrease(5);
+        return new ReceiveController(config, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void batchGrowsWhileAcceptedButNotPastRemainingTokens() {
+        var controller = controller();
+
+        controller.onResponse(Duration.ofMillis(10).toNanos(), false, -1);
+        assertThat(controller.batchSize()).isEqualTo(25);
+
+        controller.onResponse(Duration.ofMillis(10).toNanos(), false, 12);
+        assertThat(controller.batchSize()).isEqualTo(12);
+    }
+
+    @Test
+    void throttlingHalvesBatchAndStopsPrefetch() {
+        var controller = controller();
+        assertThat(controller.prefetchCount()).isEqualTo(40);
+
+        controller.onResponse(Duration.ofMillis(10).toNanos(), true, 0);
+
+        assertThat(controller.batchSize()).isEqualTo(10);
+        assertThat(controller.prefetchCount()).isZero();
+    }
+
+    @Test
+    void receiveWaitFollowsApiLatency() {
+        var controller = controller();
+        assertThat(controller.receiveWait()).isEqualTo(Duration.ofSeconds(5));
+
+        controller.onResponse(Duration.ofMillis(100).toNanos(), false, -1);
+
+        assertThat(controller.receiveWait()).isEqualTo(Duration.ofMillis(400));
+    }
+}
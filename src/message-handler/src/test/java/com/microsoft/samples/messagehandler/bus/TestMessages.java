@@ -0,0 +1,30 @@
+package com.microsoft.samples.messagehandler.bus;
+
+import com.azure.core.util.BinaryData;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+
+import java.time.OffsetDateTime;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Builds received messages for tests. The SDK does not expose a way to create them, so they are
+ * mocked.
+ */
+public final class TestMessages {
+
+    private TestMessages() {
+    }
+
+    public static ServiceBusReceivedMessage received(String messageId, String sessionId, String body,
+            long deliveryCount, OffsetDateTime lockedUntil) {
+        var message = mock(ServiceBusReceivedMessage.class);
+        when(message.getMessageId()).thenReturn(messageId);
+        when(message.getSessionId()).thenReturn(sessionId);
+        when(message.getBody()).thenReturn(BinaryData.fromString(body));
+        when(message.getDeliveryCount()).thenReturn(deliveryCount);
+        when(message.getLockedUntil()).thenReturn(lockedUntil);
+        return message;
+    }
+}
@@ -0,0 +1,69 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.microsoft.samples.messagehandler.config.AdaptiveLimitConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveRateLimiterTests {
+
+    private AdaptiveLimitConfig config() {
+        var config = new AdaptiveLimitConfig();
+        config.setInitialRate(10);
+        config.setMinRate(1);
+        config.setMaxRate(100);
+        config.setBurst(2);
+        config.setIncrease(1);
+        config.setDecrease(0.5);
+        return config;
+    }
+
+    @Test
+    void burstIsFreeThenRequestsArePaced() {
+        var limiter = new AdaptiveRateLimiter(config());
+        long now = System.nanoTime();
+
+        assertThat(limiter.reserve(1, now)).isZero();
+        assertThat(limiter.reserve(1, now)).isZero();
+        assertThat(limiter.reserve(1, now)).isEqualTo(Duration.ofMillis(100).toNanos());
+        assertThat(limiter.reserve(1, now)).isEqualTo(Duration.ofMillis(200).toNanos());
+    }
+
+    @Test
+    void throttlingHalvesTheRateAndBlocksForRetryAfter() {
+        var limiter = new AdaptiveRateLimiter(config());
+
+        limiter.onThrottled(Duration.ofSeconds(2));
+
+        assertThat(limiter.getRate()).isEqualTo(5);
+        assertThat(limiter.reserve(1, System.nanoTime())).isGreaterThan(Duration.ofMillis(1900).toNanos());
+    }
+
+    @Test
+    void acceptanceGrowsTheRateUpToTheServerLimit() {
+        var limiter = new AdaptiveRateLimiter(config());
+
+        limiter.onAccepted(0, 0, 0);
+        assertThat(limiter.getRate()).isEqualTo(11);
+
+        limiter.onAccepted(25, 0, 5);
+        assertThat(limiter.getRate()).isEqualTo(5);
+    }
+
+    @Test
+    void disabledLimiterOnlyHonoursRetryAfter() {
+        var config = config();
+        config.setEnabled(false);
+        var limiter = new AdaptiveRateLimiter(config);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.reserve(1, now)).isZero();
+        }
+
+        limiter.onThrottled(Duration.ofSeconds(1));
+        assertThat(limiter.reserve(1, System.nanoTime())).isPositive();
+    }
+}
@@ -0,0 +1,187 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.messagehandler.ApiClientBuilder;
+import com.microsoft.samples.messagehandler.StubRateLimitingApi;
+import com.microsoft.samples.messagehandler.bus.InMemorySessionReceiver;
+import com.microsoft.samples.messagehandler.bus.ReceiveController;
+import com.microsoft.samples.messagehandler.bus.TestMessages;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageDispatcherTests {
+
+    private StubRateLimitingApi api;
+
+    @BeforeEach
+    void startApi() throws IOException {
+        api = new StubRateLimitingApi();
+    }
+
+    @AfterEach
+    void stopApi() {
+        api.close();
+    }
+
+    private MessageDispatcher dispatcher() {
+        return dispatcher(new AppConfig());
+    }
+
+    private MessageDispatcher dispatcher(AppConfig config) {
+        config.setRateLimitingServiceUrl(api.getUrl());
+        config.getDispatch().setBatch(false);
+        config.getDispatch().getAdaptive().setEnabled(false);
+        config.getDispatch().getRetry().setLockMargin(Duration.ofMillis(200));
+
+        var meterRegistry = new SimpleMeterRegistry();
+        return new MessageDispatcher(new ApiClientBuilder(config, new ObjectMapper()),
+                new ReceiveController(config, meterRegistry), config, meterRegistry);
+    }
+
+    private static ServiceBusReceivedMessage message(long deliveryCount, Duration lockedFor) {
+        return message("1", deliveryCount, lockedFor);
+    }
+
+    private static ServiceBusReceivedMessage message(String id, long deliveryCount, Duration lockedFor) {
+        return TestMessages.received(id, "session-1", "{\"message\":\"hello\"}", deliveryCount,
+                OffsetDateTime.now().plus(lockedFor));
+    }
+
+    private static List<ServiceBusReceivedMessage> messages(List<String> ids) {
+        return ids.stream().map(id -> message(id, 1, Duration.ofSeconds(60))).toList();
+    }
+
+    private static List<String> ids(int count) {
+        return IntStream.range(0, count).mapToObj(String::valueOf).toList();
+    }
+
+    @Test
+    void throttledMessageIsRetriedLocallyInsteadOfAbandoned() {
+        api.throttleFirst(1);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+
+        dispatcher().dispatch(List.of(message(1, Duration.ofSeconds(60))), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(2);
+        assertThat(receiver.getCompleted()).hasSize(1);
+        assertThat(receiver.getAbandoned()).isEmpty();
+    }
+
+    @Test
+    void sessionLockIsRenewedWhileMessageWaits() {
+        api.throttleFirst(1);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+
+        dispatcher().dispatch(List.of(message(1, Duration.ofMillis(500))), receiver);
+
+        assertThat(receiver.getLockRenewals()).isPositive();
+        assertThat(receiver.getCompleted()).hasSize(1);
+    }
+
+    @Test
+    void messageNearMaxDeliveryCountIsAbandoned() {
+        api.throttleFirst(1);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+
+        dispatcher().dispatch(List.of(message(9, Duration.ofSeconds(60))), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(1);
+        assertThat(receiver.getAbandoned()).hasSize(1);
+    }
+
+    @Test
+    void messageIsAbandonedWhenLockCannotBeHeldUntilRetry() {
+        api.throttleFirst(1);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        receiver.failRenewals();
+
+        dispatcher().dispatch(List.of(message(1, Duration.ofMillis(500))), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(1);
+        assertThat(receiver.getAbandoned()).hasSize(1);
+        assertThat(receiver.getCompleted()).isEmpty();
+    }
+
+    @Test
+    void everyMessageIsSettledOnceWithManyInFlight() {
+        api.throttleFirst(3);
+        var config = new AppConfig();
+        config.getDispatch().setMaxInFlight(8);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        var ids = ids(50);
+
+        dispatcher(config).dispatch(messages(ids), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(53);
+        assertThat(receiver.getCompleted()).extracting(ServiceBusReceivedMessage::getMessageId)
+                .containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(receiver.getAbandoned()).isEmpty();
+    }
+
+    @Test
+    void orderedMessagesAreSentAndSettledInTheOrderReceived() {
+        var config = new AppConfig();
+        config.getDispatch().setOrdered(true);
+        config.getDispatch().setMaxInFlight(8);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        var ids = ids(20);
+
+        dispatcher(config).dispatch(messages(ids), receiver);
+
+        assertThat(api.getIdempotencyKeys()).containsExactlyElementsOf(ids);
+        assertThat(receiver.getCompleted()).extracting(ServiceBusReceivedMessage::getMessageId)
+                .containsExactlyElementsOf(ids);
+        assertThat(receiver.getAbandoned()).isEmpty();
+    }
+
+    @Test
+    void orderedMessagesWaitBehindAThrottledOne() {
+        api.throttleFirst(1);
+        var config = new AppConfig();
+        config.getDispatch().setOrdered(true);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        var ids = ids(5);
+
+        dispatcher(config).dispatch(messages(ids), receiver);
+
+        assertThat(api.getIdempotencyKeys()).containsExactly("0", "0", "1", "2", "3", "4");
+        assertThat(receiver.getCompleted()).extracting(ServiceBusReceivedMessage::getMessageId)
+                .containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void refusedMessageIsAbandonedWithoutRetry() {
+        api.failFirst(1, 413);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+
+        dispatcher().dispatch(List.of(message(1, Duration.ofSeconds(60))), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(1);
+        assertThat(receiver.getAbandoned()).hasSize(1);
+        assertThat(receiver.getCompleted()).isEmpty();
+    }
+
+    @Test
+    void serverErrorIsRetriedInsteadOfCompleted() {
+        api.failFirst(1, 500);
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+
+        dispatcher().dispatch(List.of(message(1, Duration.ofSeconds(60))), receiver);
+
+        assertThat(api.getRequests()).isEqualTo(2);
+        assertThat(receiver.getCompleted()).hasSize(1);
+        assertThat(receiver.getAbandoned()).isEmpty();
+    }
+}
@@ -0,0 +1,90 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.StubRateLimitingApi;
+import com.microsoft.samples.messagehandler.bus.ReactiveSessionReceiver;
+import com.microsoft.samples.messagehandler.bus.TestMessages;
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveMessageDispatcherTests {
+
+    @Test
+    void throttledMessagesAreRetriedAndReceivingFollowsDemand() throws Exception {
+        try (var api = new StubRateLimitingApi()) {
+            api.throttleFirst(1);
+
+            var config = new AppConfig();
+            config.setRateLimitingServiceUrl(api.getUrl());
+            config.getDispatch().setMaxInFlight(2);
+            config.getDispatch().getAdaptive().setEnabled(false);
+            config.getProcessor().setIdleTimeout(Duration.ofMillis(500));
+            var dispatcher = new ReactiveMessageDispatcher(WebClient.builder(), config, new SimpleMeterRegistry());
+
+            var messages = IntStream.range(0, 6)
+                    .mapToObj(i -> TestMessages.received(Integer.toString(i), "session-1", "{\"message\":\"hello\"}",
+                            1, OffsetDateTime.now().plusSeconds(60)))
+                    .toList();
+            var session = new Session(messages);
+
+            dispatcher.dispatch(session).block(Duration.ofSeconds(10));
+
+            assertThat(session.completed).hasSize(6);
+            assertThat(session.abandoned).isEmpty();
+            assertThat(api.getRequests()).isEqualTo(7);
+            assertThat(session.maxOutstandingDemand.get()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    private static class Session implements ReactiveSessionReceiver {
+        private final List<ServiceBusReceivedMessage> messages;
+        private final Queue<ServiceBusReceivedMessage> completed = new ConcurrentLinkedQueue<>();
+        private final Queue<ServiceBusReceivedMessage> abandoned = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger maxOutstandingDemand = new AtomicInteger();
+
+        Session(List<ServiceBusReceivedMessage> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public String getSessionId() {
+            return "session-1";
+        }
+
+        @Override
+        public Flux<ServiceBusReceivedMessage> receiveMessages() {
+            return Flux.fromIterable(messages)
+                    .doOnRequest(n -> maxOutstandingDemand.accumulateAndGet((int) Math.min(n, Integer.MAX_VALUE),
+                            Math::max))
+                    .concatWith(Flux.never());
+        }
+
+        @Override
+        public Mono<Void> complete(ServiceBusReceivedMessage message) {
+            return Mono.fromRunnable(() -> completed.add(message));
+        }
+
+        @Override
+        public Mono<Void> abandon(ServiceBusReceivedMessage message) {
+            return Mono.fromRunnable(() -> abandoned.add(message));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.microsoft.samples.messagehandler.config.RetryConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryPolicyTests {
+
+    private final RetryPolicy policy = new RetryPolicy(new RetryConfig());
+
+    @Test
+    void retryAfterIsUsedUpToTheMaxBackoff() {
+        assertThat(policy.delayNanos(0, Duration.ofSeconds(2))).isEqualTo(Duration.ofSeconds(2).toNanos());
+        assertThat(policy.delayNanos(0, Duration.ofMinutes(5))).isEqualTo(Duration.ofSeconds(30).toNanos());
+    }
+
+    @Test
+    void missingOrNonPositiveRetryAfterFallsBackToBackoff() {
+        long initial = Duration.ofMillis(500).toNanos();
+        for (var retryAfter : new Duration[] {null, Duration.ZERO, Duration.ofSeconds(-5)}) {
+            assertThat(policy.delayNanos(0, retryAfter)).isBetween(initial / 2, initial);
+            assertThat(policy.delayNanos(2, retryAfter)).isBetween(2 * initial, 4 * initial);
+        }
+    }
+
+    @Test
+    void retryAfterHeaderIsBoundedToOneToThirtySeconds() {
+        assertThat(RetryPolicy.retryAfterSeconds("5")).isEqualTo(5);
+        assertThat(RetryPolicy.retryAfterSeconds(" 3600 ")).isEqualTo(30);
+        assertThat(RetryPolicy.retryAfterSeconds("0")).isEqualTo(1);
+        assertThat(RetryPolicy.retryAfterSeconds("-7")).isEqualTo(1);
+        assertThat(RetryPolicy.retryAfterSeconds("Wed, 21 Oct 2015 07:28:00 GMT")).isEqualTo(1);
+        assertThat(RetryPolicy.retryAfterSeconds(null)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,111 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.core.amqp.exception.AmqpException;
+import com.azure.messaging.servicebus.ServiceBusErrorSource;
+import com.azure.messaging.servicebus.ServiceBusException;
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.bus.InMemorySessionReceiver;
+import com.microsoft.samples.messagehandler.bus.TestMessages;
+import com.microsoft.samples.messagehandler.config.SettlementConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SettlementStageTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SettlementStage stage;
+
+    SettlementStageTests() {
+        var config = new SettlementConfig();
+        config.setMaxInFlight(2);
+        config.setMaxAttempts(3);
+        config.setBackoff(Duration.ofMillis(10));
+        stage = new SettlementStage(config, new DispatchMetrics(meterRegistry), meterRegistry);
+    }
+
+    @AfterEach
+    void closeStage() {
+        stage.close();
+    }
+
+    private static ServiceBusReceivedMessage message(String id) {
+        return TestMessages.received(id, "session-1", "{\"message\":\"hello\"}", 1, OffsetDateTime.now().plusSeconds(60));
+    }
+
+    private static ServiceBusException serviceBusException(boolean isTransient) {
+        return new ServiceBusException(new AmqpException(isTransient, "settlement failed", null),
+                ServiceBusErrorSource.COMPLETE);
+    }
+
+    @Test
+    void transientFailuresAreRetriedUntilTheSettlementGoesThrough() {
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        receiver.failSettlements(2, serviceBusException(true));
+
+        try (var settlement = stage.open(receiver)) {
+            settlement.complete(message("1"));
+        }
+
+        assertThat(receiver.getCompleted()).hasSize(1);
+        assertThat(meterRegistry.counter("settlements_retried").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("settlements_failed").count()).isZero();
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() {
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        receiver.failSettlements(1, serviceBusException(false));
+
+        try (var settlement = stage.open(receiver)) {
+            settlement.abandon(message("1"));
+        }
+
+        assertThat(receiver.getAbandoned()).isEmpty();
+        assertThat(meterRegistry.counter("settlements_retried").count()).isZero();
+        assertThat(meterRegistry.counter("settlements_failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void closingTheSessionSettlementWaitsForEverySettlement() {
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60)) {
+            @Override
+            public void complete(ServiceBusReceivedMessage message) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.complete(message);
+            }
+        };
+
+        try (var settlement = stage.open(receiver)) {
+            for (int i = 0; i < 5; i++) {
+                settlement.complete(message(String.valueOf(i)));
+            }
+        }
+
+        assertThat(receiver.getCompleted()).hasSize(5);
+    }
+
+    @Test
+    void orderedSessionsAreSettledInTheOrderHandedOver() {
+        var receiver = new InMemorySessionReceiver("session-1", Duration.ofSeconds(60));
+        receiver.failSettlements(1, serviceBusException(true));
+        var ids = IntStream.range(0, 20).mapToObj(String::valueOf).toList();
+
+        try (var settlement = stage.open(receiver, true)) {
+            ids.forEach(id -> settlement.complete(message(id)));
+        }
+
+        assertThat(receiver.getCompleted()).extracting(ServiceBusReceivedMessage::getMessageId)
+                .containsExactlyElementsOf(ids);
+    }
+}
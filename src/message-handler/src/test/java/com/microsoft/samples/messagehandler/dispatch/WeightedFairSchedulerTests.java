@@ -0,0 +1,85 @@
+package com.microsoft.samples.messagehandler.dispatch;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessage;
+import com.microsoft.samples.messagehandler.config.AdaptiveLimitConfig;
+import com.microsoft.samples.messagehandler.config.FairnessConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WeightedFairSchedulerTests {
+
+    private static WeightedFairScheduler scheduler(double rate) {
+        var limit = new AdaptiveLimitConfig();
+        limit.setInitialRate(rate);
+        limit.setMinRate(rate);
+        limit.setMaxRate(rate);
+        limit.setBurst(1);
+
+        var fairness = new FairnessConfig();
+        fairness.setDefaultClass("bulk");
+        fairness.getWeights().put("interactive", 3.0);
+
+        return new WeightedFairScheduler(new AdaptiveRateLimiter(limit), fairness, new SimpleMeterRegistry());
+    }
+
+    private static ServiceBusReceivedMessage message(Map<String, Object> properties) {
+        var message = mock(ServiceBusReceivedMessage.class);
+        when(message.getApplicationProperties()).thenReturn(properties);
+        return message;
+    }
+
+    @Test
+    void messagesAreClassifiedByTheirProperty() {
+        try (var scheduler = scheduler(100)) {
+            assertThat(scheduler.classify(message(Map.of("priority", "interactive")))).isEqualTo("interactive");
+            assertThat(scheduler.classify(message(Map.of("priority", "unknown")))).isEqualTo("bulk");
+            assertThat(scheduler.classify(message(Map.of()))).isEqualTo("bulk");
+        }
+    }
+
+    @Test
+    void backlogOfOneClassDoesNotHoldUpAnotherYetKeepsItsShare() throws Exception {
+        List<String> granted = Collections.synchronizedList(new ArrayList<>());
+        var grants = new ArrayList<CompletableFuture<Void>>();
+
+        try (var scheduler = scheduler(500)) {
+            for (int i = 0; i < 30; i++) {
+                grants.add(scheduler.schedule("bulk", 1).thenRun(() -> granted.add("bulk")));
+            }
+            for (int i = 0; i < 10; i++) {
+                grants.add(scheduler.schedule("interactive", 1).thenRun(() -> granted.add("interactive")));
+            }
+
+            CompletableFuture.allOf(grants.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        }
+
+        var first15 = granted.subList(0, 15);
+        assertThat(first15).filteredOn("interactive"::equals).hasSize(10);
+        assertThat(first15).filteredOn("bulk"::equals).hasSizeGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    void closingCancelsWaitingRequests() {
+        var scheduler = scheduler(0.5);
+        scheduler.schedule("bulk", 1).join();
+        var waiting = scheduler.schedule("bulk", 1);
+
+        scheduler.close();
+
+        assertThatThrownBy(() -> waiting.get(1, TimeUnit.SECONDS)).isInstanceOf(CancellationException.class);
+        assertThat(scheduler.schedule("interactive", 1)).isCancelled();
+    }
+}
@@ -0,0 +1,74 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for Redis that keeps leases in a map with the same owner checks as the scripts.
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+
+    private record Entry(String owner, long expiresAtNanos) {
+    }
+
+    private final Map<String, Entry> leases = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public synchronized long tryAcquire(String key, String owner, Duration duration) {
+        long now = System.nanoTime();
+        var current = leases.get(key);
+        if (current != null && current.expiresAtNanos() - now > 0) {
+            return Math.max(1, Duration.ofNanos(current.expiresAtNanos() - now).toMillis());
+        }
+        leases.put(key, new Entry(owner, now + duration.toNanos()));
+        return 0;
+    }
+
+    @Override
+    public synchronized boolean renew(String key, String owner, Duration duration) {
+        if (!isOwner(key, owner)) {
+            return false;
+        }
+        leases.put(key, new Entry(owner, System.nanoTime() + duration.toNanos()));
+        return true;
+    }
+
+    @Override
+    public boolean release(String key, String owner) {
+        synchronized (this) {
+            if (!isOwner(key, owner)) {
+                return false;
+            }
+            leases.remove(key);
+        }
+        listeners.forEach(listener -> listener.accept(key));
+        return true;
+    }
+
+    @Override
+    public void onRelease(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Hands the lease to another owner, as if it expired and another replica took it.
+     */
+    public synchronized void steal(String key, Duration duration) {
+        leases.put(key, new Entry("thief", System.nanoTime() + duration.toNanos()));
+    }
+
+    public String ownerOf(String key) {
+        var current = leases.get(key);
+        return current == null ? null : current.owner();
+    }
+
+    private boolean isOwner(String key, String owner) {
+        var current = leases.get(key);
+        return current != null && current.owner().equals(owner) && current.expiresAtNanos() - System.nanoTime() > 0;
+    }
+}
@@ -0,0 +1,78 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaseManagerTests {
+
+    private final InMemoryLeaseStore store = new InMemoryLeaseStore();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LeaseManager leaseManager(int partitions) {
+        var config = new AppConfig();
+        config.getLease().setPartitions(partitions);
+        config.getLease().setDuration(Duration.ofSeconds(30));
+        config.getLease().setHeartbeatInterval(Duration.ofMillis(50));
+        config.getLease().setMaxWait(Duration.ofSeconds(20));
+        return new LeaseManager(store, config, meterRegistry);
+    }
+
+    @Test
+    void eachPartitionIsHandedOutOnce() throws Exception {
+        var leaseManager = leaseManager(2);
+
+        try (var first = leaseManager.acquire(); var second = leaseManager.acquire()) {
+            assertThat(first.getKey()).isNotEqualTo(second.getKey());
+        }
+    }
+
+    @Test
+    void releaseWakesWaiterWithoutPolling() throws Exception {
+        var leaseManager = leaseManager(1);
+        var held = leaseManager.acquire();
+
+        var waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return leaseManager.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertThat(waiter).isNotDone();
+
+        long released = System.nanoTime();
+        held.close();
+
+        try (var next = waiter.get(5, TimeUnit.SECONDS)) {
+            assertThat(next.getKey()).isEqualTo(held.getKey());
+            assertThat(System.nanoTime() - released).isLessThan(Duration.ofSeconds(1).toNanos());
+        }
+        assertThat(meterRegistry.get("lock_wait").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void heartbeatNoticesLostLeaseAndCloseLeavesNewOwnerAlone() throws Exception {
+        var leaseManager = leaseManager(1);
+        var lease = leaseManager.acquire();
+
+        store.steal(lease.getKey(), Duration.ofSeconds(30));
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (!lease.isLost() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(lease.isLost()).isTrue();
+        lease.close();
+        assertThat(store.ownerOf(lease.getKey())).isEqualTo("thief");
+    }
+}
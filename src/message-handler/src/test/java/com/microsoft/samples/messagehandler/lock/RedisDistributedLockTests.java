@@ -0,0 +1,30 @@
+package com.microsoft.samples.messagehandler.lock;
+
+import com.microsoft.samples.messagehandler.config.AppConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class RedisDistributedLockTests {
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+    private final RedisDistributedLock lock = new RedisDistributedLock(redisTemplate,
+            mock(RedisMessageListenerContainer.class), new AppConfig());
+
+    @Test
+    void scriptsWithoutResultFailInsteadOfReadingAsTaken() {
+        // An unstubbed execute returns null, as it does inside a pipeline or transaction
+        assertThatThrownBy(() -> lock.tryAcquire("lease-1", "owner", Duration.ofSeconds(30)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> lock.renew("lease-1", "owner", Duration.ofSeconds(30)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> lock.release("lease-1", "owner"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
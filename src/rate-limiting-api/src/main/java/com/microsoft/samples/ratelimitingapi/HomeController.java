@@ -12,7 +12,7 @@ public class HomeController {
 
     @GetMapping("/")
     public ResponseEntity<HomeResponse> home() {
-        String replicaName = System.getenv("HOSTNAME");
+        String replicaName = Replica.NAME;
         log.info("Home endpoint called by replica: " + replicaName);
         var response = HomeResponse.builder()
                 .message("Welcome to the Rate Limiting API. Served by replica: " + replicaName)
@@ -0,0 +1,107 @@
+package com.microsoft.samples.ratelimitingapi;
+
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.config.ReconfigurationConfig;
+import com.microsoft.samples.ratelimitingapi.contract.PolicyLimits;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LimitReconfigurer;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LimitUpdate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Operator endpoints to read and change the limits of a running service. Meant for inside the
+ * cluster, not to be routed through the public gateway.
+ *
+ * Changing limits is off unless {@code ratelimit.reconfiguration.enabled} is set, and then takes
+ * the operator token of {@code ratelimit.reconfiguration.token} in the {@code tokenHeader} header.
+ * The service port is reachable from outside, so neither is left to the network.
+ */
+@RestController
+@Slf4j
+public class LimitsController {
+
+    private final RoutePolicyTable routePolicyTable;
+    private final LimitReconfigurer limitReconfigurer;
+    private final ReconfigurationConfig reconfiguration;
+    private final byte[] token;
+
+    public LimitsController(RoutePolicyTable routePolicyTable, LimitReconfigurer limitReconfigurer,
+            RateLimitConfig rateLimitConfig) {
+        this.routePolicyTable = routePolicyTable;
+        this.limitReconfigurer = limitReconfigurer;
+        this.reconfiguration = rateLimitConfig.getRatelimit().getReconfiguration();
+
+        String configured = reconfiguration.getToken();
+        if (reconfiguration.isEnabled() && (configured == null || configured.isBlank())) {
+            throw new IllegalStateException(
+                    "ratelimit.reconfiguration.token must be set when reconfiguration is enabled");
+        }
+        this.token = configured == null ? new byte[0] : configured.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @GetMapping("/limits")
+    public ResponseEntity<List<PolicyLimits>> limits() {
+        var limits = routePolicyTable.policies().stream()
+                .sorted(Comparator.comparing(RoutePolicy::getName))
+                .map(policy -> PolicyLimits.builder()
+                        .policy(policy.getName())
+                        .revision(policy.getRevision())
+                        .limit(policy.getLimit())
+                        .servedBy(Replica.NAME)
+                        .build())
+                .toList();
+
+        return ResponseEntity.ok(limits);
+    }
+
+    /**
+     * Accepted once broadcast. Replicas, this one included, apply the change as it reaches them.
+     * Not found while reconfiguration is off, unauthorized without the operator token.
+     */
+    @PutMapping("/limits/{policy}")
+    public ResponseEntity<LimitUpdate> changeLimits(@PathVariable String policy, @RequestBody PolicyConfig limits,
+            @RequestHeader HttpHeaders headers) {
+        if (!reconfiguration.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isOperator(headers.getFirst(reconfiguration.getTokenHeader()))) {
+            log.warn("Rejected limits for policy {} without a valid operator token", policy);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        LimitUpdate update;
+        try {
+            update = limitReconfigurer.change(policy, limits);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            log.error("Rejected limits for policy {}: {}", policy, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        log.info("Limits of policy {} changed, revision: {}, Served by replica: {}", policy, update.getRevision(),
+                Replica.NAME);
+        return ResponseEntity.accepted().body(update);
+    }
+
+    /**
+     * Compares in constant time, so the time taken gives away nothing about the token.
+     */
+    private boolean isOperator(String presented) {
+        return presented != null && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
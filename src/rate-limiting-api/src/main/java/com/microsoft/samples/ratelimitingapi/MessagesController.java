@@ -1,55 +1,399 @@
 package com.microsoft.samples.ratelimitingapi;
 
+import com.microsoft.samples.ratelimitingapi.contract.BatchMode;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageBatchRequest;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageBatchResult;
 import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
 import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
-import io.github.bucket4j.Bucket;
+import com.microsoft.samples.ratelimitingapi.idempotency.IdempotencyFilter;
+import com.microsoft.samples.ratelimitingapi.idempotency.IdempotencyStore;
+import com.microsoft.samples.ratelimitingapi.idempotency.IdempotentResponse;
+import com.microsoft.samples.ratelimitingapi.limiter.ClientKeyResolver;
+import com.microsoft.samples.ratelimitingapi.limiter.PayloadSizeFilter;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitFilter;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitHeaders;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitMetrics;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiterRegistry;
+import com.microsoft.samples.ratelimitingapi.limiter.RequestCost;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import com.microsoft.samples.ratelimitingapi.limiter.SampledLog;
+import com.microsoft.samples.ratelimitingapi.smoothing.SmoothingQueue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 @RestController
 @Slf4j
 public class MessagesController {
-    private final Bucket rateLimiter;
+    private static final Duration REJECTION_LOG_INTERVAL = Duration.ofSeconds(10);
+
+    private final ClientKeyResolver clientKeyResolver;
+    private final RoutePolicy messagesPolicy;
+    private final RoutePolicy batchPolicy;
+    private final RateLimiter messagesLimiter;
+    private final RateLimiter batchLimiter;
+    private final RequestCost messagesCost;
+    private final RequestCost batchCost;
+    private final RateLimitMetrics.PolicyMeters messagesMeters;
+    private final RateLimitMetrics.PolicyMeters batchMeters;
+    private final SmoothingQueue smoothingQueue;
+    private final IdempotencyStore idempotencyStore;
+    private final ObjectMapper objectMapper;
+    private final SampledLog rejections = new SampledLog(log, "Rate limit exceeded", REJECTION_LOG_INTERVAL);
+    private final SampledLog queueFullRejections = new SampledLog(log, "Smoothing queue full", REJECTION_LOG_INTERVAL);
 
-    public MessagesController(Bucket rateLimiter) {
-        this.rateLimiter = rateLimiter;
+    public MessagesController(RateLimiterRegistry rateLimiterRegistry, ClientKeyResolver clientKeyResolver,
+            RoutePolicyTable routePolicyTable, RateLimitMetrics rateLimitMetrics,
+            ObjectProvider<SmoothingQueue> smoothingQueue, ObjectProvider<IdempotencyStore> idempotencyStore,
+            ObjectMapper objectMapper) {
+        this.clientKeyResolver = clientKeyResolver;
+        this.smoothingQueue = smoothingQueue.getIfAvailable();
+        this.idempotencyStore = idempotencyStore.getIfAvailable();
+        this.objectMapper = objectMapper;
+        this.messagesPolicy = routePolicyTable.resolve(HttpMethod.POST, "/messages");
+        this.batchPolicy = routePolicyTable.resolve(HttpMethod.POST, "/messages/batch");
+        this.messagesLimiter = rateLimiterRegistry.forPolicy(messagesPolicy);
+        this.batchLimiter = rateLimiterRegistry.forPolicy(batchPolicy);
+        this.messagesCost = routePolicyTable.cost(HttpMethod.POST, "/messages");
+        this.batchCost = routePolicyTable.cost(HttpMethod.POST, "/messages/batch");
+        this.messagesMeters = rateLimitMetrics.forPolicy(messagesPolicy);
+        this.batchMeters = rateLimitMetrics.forPolicy(batchPolicy);
     }
 
     @PostMapping("/messages")
-    public ResponseEntity<SendMessageResult> sendMessage(@RequestBody SendMessageRequest request) {
+    public ResponseEntity<SendMessageResult> sendMessage(@RequestBody SendMessageRequest request,
+            HttpServletRequest httpRequest) {
 
-        String replicaName = System.getenv("HOSTNAME");
+        String replicaName = Replica.NAME;
         log.info("Received message: {} ", request.getMessage());
 
-        try {
-            if (rateLimiter.tryConsume(1)) {
-                log.info("Message Processed, rate limit consumed: 1, Served by replica: " + replicaName);
-            } else {
-                var limitExceeded = SendMessageResult.builder().message("Rate limit exceeded.").success(false).build();
-                log.error("Rate limit exceeded.");
+        // Read after the body, so a request sent without a Content-Length is charged what it held
+        long tokens = messagesCost.tokens(PayloadSizeFilter.payloadBytes(httpRequest));
+
+        // Taken by the RateLimitFilter unless the client key comes from the body, the size was not
+        // known up front or smoothing is on
+        var probe = (ConsumptionProbe) httpRequest.getAttribute(RateLimitFilter.PROBE_ATTRIBUTE);
+        if (probe == null) {
+            if (tokens > messagesPolicy.getLimit()) {
+                log.error("Message costing {} tokens can never fit the limit of {}", tokens,
+                        messagesPolicy.getLimit());
+                var tooLarge = SendMessageResult.builder()
+                        .message("Message too large for the rate limit.")
+                        .success(false)
+                        .servedBy(replicaName)
+                        .build();
 
-                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(limitExceeded);
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(tooLarge);
             }
-        } catch (Exception e) {
-            log.error("Error processing message: {}", e.getMessage());
-            var error = SendMessageResult.builder()
-                    .message(e.getMessage())
+
+            String key = clientKeyResolver.resolve(httpRequest, request.getClientId());
+
+            if (smoothingQueue != null) {
+                return enqueueMessage(key, tokens, request, httpRequest, replicaName);
+            }
+
+            try {
+                long startNanos = System.nanoTime();
+                probe = messagesLimiter.tryConsume(key, tokens);
+                messagesMeters.record(probe, System.nanoTime() - startNanos);
+            } catch (Exception e) {
+                log.error("Error processing message: {}", e.getMessage());
+                var error = SendMessageResult.builder()
+                        .message(e.getMessage())
+                        .success(false)
+                        .servedBy(replicaName)
+                        .build();
+
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            }
+        }
+
+        var headers = RateLimitHeaders.from(messagesPolicy, probe);
+
+        if (!probe.isConsumed()) {
+            var limitExceeded = SendMessageResult.builder()
+                    .message("Rate limit exceeded.")
                     .success(false)
+                    .retryAfterMillis(RateLimitHeaders.retryAfterMillis(probe))
+                    .servedBy(replicaName)
                     .build();
+            rejections.record();
 
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).headers(headers).body(limitExceeded);
         }
 
+        log.info("Message Processed, rate limit consumed: {}, Served by replica: {}", tokens, replicaName);
+
         var result = SendMessageResult.builder()
                 .message(request.getMessage())
-                .bucketCapacity(
-                        rateLimiter.getAvailableTokens() + " tokens remaining, Served by replica: " + replicaName)
+                .remainingTokens(probe.getRemainingTokens())
+                .servedBy(replicaName)
                 .success(true).build();
 
         log.info("[OK] Message processed successfully with result: {}", result);
+        remember(httpRequest.getHeader(IdempotencyFilter.IDEMPOTENCY_KEY), HttpStatus.OK, result);
+
+        return ResponseEntity.ok().headers(headers).body(result);
+    }
+
+    /**
+     * Smoothing mode: the message is accepted now and processed once its client has a token,
+     * unless the queue is already past its high-water mark.
+     */
+    private ResponseEntity<SendMessageResult> enqueueMessage(String key, long tokens, SendMessageRequest request,
+            HttpServletRequest httpRequest, String replicaName) {
+        if (smoothingQueue.offer(messagesPolicy, messagesLimiter, key, tokens, request)) {
+            var accepted = SendMessageResult.builder()
+                    .message(request.getMessage())
+                    .success(true)
+                    .servedBy(replicaName)
+                    .build();
+            remember(httpRequest.getHeader(IdempotencyFilter.IDEMPOTENCY_KEY), HttpStatus.ACCEPTED, accepted);
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(accepted);
+        }
+
+        var probe = smoothingQueue.queueFull(messagesPolicy, messagesLimiter, key);
+        var queueFull = SendMessageResult.builder()
+                .message("Smoothing queue full.")
+                .success(false)
+                .retryAfterMillis(RateLimitHeaders.retryAfterMillis(probe))
+                .servedBy(replicaName)
+                .build();
+        queueFullRejections.record();
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .headers(RateLimitHeaders.from(messagesPolicy, probe))
+                .body(queueFull);
+    }
+
+    @PostMapping("/messages/batch")
+    public ResponseEntity<SendMessageBatchResult> sendMessages(@RequestBody SendMessageBatchRequest request,
+            HttpServletRequest httpRequest) {
+
+        String replicaName = Replica.NAME;
+        List<SendMessageRequest> messages = request.getMessages();
+
+        if (messages == null || messages.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Messages accepted before get their result back and cost nothing
+        int count = messages.size();
+        List<String> idempotencyKeys = idempotencyKeys(request, count);
+        SendMessageResult[] replayed = replay(idempotencyKeys, count);
+
+        // The rest are charged one by one, so a partial batch accepts the ones that fit. A message
+        // that costs more than the limit can never be accepted and is answered as too large.
+        long limit = batchPolicy.getLimit();
+        long[] costs = new long[count];
+        boolean[] oversize = new boolean[count];
+        int charged = 0;
+        int tooLarge = 0;
+        long total = 0;
+        long requested = 0;
+        for (int i = 0; i < count; i++) {
+            if (replayed[i] == null) {
+                long cost = batchCost.tokens(messages.get(i).getMessage());
+                requested += cost;
+                if (cost > limit) {
+                    oversize[i] = true;
+                    tooLarge++;
+                    continue;
+                }
+                costs[charged++] = cost;
+                total += cost;
+            }
+        }
+
+        if (request.getMode() == BatchMode.ALL_OR_NOTHING && requested > limit) {
+            log.error("Batch of {} costing {} tokens can never fit the limit of {}", count, requested, limit);
+            return neverFits(messages, replayed, oversize, replicaName);
+        }
+        if (tooLarge > 0) {
+            log.error("{} messages of a batch cost more than the limit of {}", tooLarge, limit);
+        }
+
+        log.info("Received batch of {} messages, {} replayed, mode: {}", count, count - charged - tooLarge,
+                request.getMode());
+
+        String key = clientKeyResolver.resolve(httpRequest, request.getClientId());
 
-        return ResponseEntity.ok(result);
+        int accepted;
+        ConsumptionProbe probe;
+        try {
+            long startNanos = System.nanoTime();
+            if (charged == 0) {
+                accepted = 0;
+                probe = batchLimiter.peek(key, 0);
+            } else if (request.getMode() == BatchMode.PARTIAL) {
+                long consumed;
+                if (total == charged) {
+                    // One token a message
+                    accepted = (int) batchLimiter.tryConsumeAsMuchAsPossible(key, charged);
+                    consumed = accepted;
+                } else {
+                    accepted = 0;
+                    consumed = 0;
+                    while (accepted < charged && batchLimiter.tryConsume(key, costs[accepted]).isConsumed()) {
+                        consumed += costs[accepted++];
+                    }
+                }
+                // Consumed, with the tokens left, when all fit, otherwise when the rest would. The rest
+                // may be more than the bucket holds, which would never fit, so no more than that.
+                probe = batchLimiter.peek(key, Math.min(total - consumed, limit));
+                batchMeters.record(probe, System.nanoTime() - startNanos);
+            } else {
+                probe = batchLimiter.tryConsume(key, total);
+                accepted = probe.isConsumed() ? charged : 0;
+                batchMeters.record(probe, System.nanoTime() - startNanos);
+            }
+        } catch (Exception e) {
+            log.error("Error processing batch: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        long retryAfterMillis = RateLimitHeaders.retryAfterMillis(probe);
+        List<SendMessageResult> results = new ArrayList<>(count);
+        for (int i = 0, position = 0; i < count; i++) {
+            if (replayed[i] != null) {
+                results.add(replayed[i]);
+                continue;
+            }
+            if (oversize[i]) {
+                results.add(tooLarge());
+                continue;
+            }
+
+            boolean success = position++ < accepted;
+            var result = SendMessageResult.builder()
+                    .message(success ? messages.get(i).getMessage() : "Rate limit exceeded.")
+                    .success(success)
+                    .retryAfterMillis(success ? 0 : retryAfterMillis)
+                    .build();
+            results.add(result);
+            if (success) {
+                remember(idempotencyKeys.get(i), HttpStatus.OK, result);
+            }
+        }
+
+        int succeeded = accepted + count - charged - tooLarge;
+        var result = SendMessageBatchResult.builder()
+                .results(results)
+                .accepted(succeeded)
+                .remainingTokens(probe.getRemainingTokens())
+                .retryAfterMillis(retryAfterMillis)
+                .servedBy(replicaName)
+                .build();
+
+        log.info("Batch processed, messages accepted: {} of {}, Served by replica: {}", succeeded, count, replicaName);
+
+        var status = tooLarge > 0 ? HttpStatus.PAYLOAD_TOO_LARGE
+                : succeeded == 0 ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.OK;
+        return ResponseEntity.status(status).headers(RateLimitHeaders.from(batchPolicy, probe)).body(result);
+    }
+
+    /**
+     * An all or nothing batch that costs more than the limit: nothing is charged and no message is
+     * accepted, the ones that cost more than the limit on their own are answered as too large.
+     */
+    private ResponseEntity<SendMessageBatchResult> neverFits(List<SendMessageRequest> messages,
+            SendMessageResult[] replayed, boolean[] oversize, String replicaName) {
+        List<SendMessageResult> results = new ArrayList<>(messages.size());
+        int succeeded = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            if (replayed[i] != null) {
+                results.add(replayed[i]);
+                succeeded++;
+            } else if (oversize[i]) {
+                results.add(tooLarge());
+            } else {
+                results.add(SendMessageResult.builder()
+                        .message("Batch too large for the rate limit.")
+                        .success(false)
+                        .build());
+            }
+        }
+
+        var result = SendMessageBatchResult.builder()
+                .results(results)
+                .accepted(succeeded)
+                .servedBy(replicaName)
+                .build();
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result);
+    }
+
+    private static SendMessageResult tooLarge() {
+        return SendMessageResult.builder()
+                .message("Message too large for the rate limit.")
+                .success(false)
+                .build();
+    }
+
+    /**
+     * The key of each message, null for every message when there are none or they do not line up
+     * with the messages.
+     */
+    private List<String> idempotencyKeys(SendMessageBatchRequest request, int count) {
+        List<String> keys = request.getIdempotencyKeys();
+        if (idempotencyStore == null || keys == null || keys.size() != count) {
+            return Collections.nCopies(count, null);
+        }
+        return keys;
+    }
+
+    private SendMessageResult[] replay(List<String> idempotencyKeys, int count) {
+        var replayed = new SendMessageResult[count];
+        for (int i = 0; i < count; i++) {
+            String idempotencyKey = idempotencyKeys.get(i);
+            var response = idempotencyKey == null || idempotencyKey.isEmpty()
+                    ? null
+                    : idempotencyStore.find(idempotencyKey);
+            if (response == null) {
+                continue;
+            }
+
+            try {
+                replayed[i] = objectMapper.readValue(response.body(), SendMessageResult.class);
+                batchMeters.replayed();
+            } catch (IOException e) {
+                log.error("Ignoring unreadable response kept for idempotency key {}: {}", idempotencyKey,
+                        e.getMessage());
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Keeps the result of an accepted message for its idempotency key, if it has one, so the
+     * message is answered the same when it comes again.
+     */
+    private void remember(String idempotencyKey, HttpStatus status, SendMessageResult result) {
+        if (idempotencyStore == null || idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return;
+        }
+
+        try {
+            idempotencyStore.save(idempotencyKey,
+                    new IdempotentResponse(status.value(), objectMapper.writeValueAsBytes(result)));
+        } catch (JsonProcessingException e) {
+            log.error("Could not keep the response for idempotency key {}: {}", idempotencyKey, e.getMessage());
+        }
     }
 }
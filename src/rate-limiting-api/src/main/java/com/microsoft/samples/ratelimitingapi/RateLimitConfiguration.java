@@ -1,13 +1,34 @@
 package com.microsoft.samples.ratelimitingapi;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.config.BroadcastConfig;
+import com.microsoft.samples.ratelimitingapi.config.DistributedConfig;
+import com.microsoft.samples.ratelimitingapi.config.IdempotencyConfig;
 import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import com.microsoft.samples.ratelimitingapi.idempotency.IdempotencyStore;
+import com.microsoft.samples.ratelimitingapi.idempotency.LocalIdempotencyStore;
+import com.microsoft.samples.ratelimitingapi.idempotency.RedisIdempotencyStore;
+import com.microsoft.samples.ratelimitingapi.limiter.BucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.DistributedBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RedisProxyManager;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LimitBroadcast;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LocalLimitBroadcast;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.RedisLimitBroadcast;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import java.time.Duration;
 
+@Slf4j
 @Configuration
 public class RateLimitConfiguration {
 
@@ -18,11 +39,77 @@ public class RateLimitConfiguration {
     }
 
     @Bean
-    public Bucket rateLimiter() {
-        int capacity = rateLimitConfig.getRatelimit().getCapacity();
-        int duration = rateLimitConfig.getRatelimit().getDuration();
+    public RoutePolicyTable routePolicyTable() {
+        return RoutePolicyTable.compile(rateLimitConfig.getRatelimit());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ratelimit.mode", havingValue = "distributed")
+    public RedisProxyManager redisProxyManager() {
+        DistributedConfig distributed = rateLimitConfig.getRatelimit().getDistributed();
+        var redis = distributed.getRedis();
+
+        log.info("Building Redis proxy manager for {}:{}", redis.getHost(), redis.getPort());
+
+        return new RedisProxyManager(RedisClient.create(redisUri()), distributed.getKeyPrefix(),
+                rateLimitConfig.getRatelimit().getClient().getIdleTimeout());
+    }
 
-        Bandwidth limit = Bandwidth.classic(capacity, Refill.intervally(capacity, Duration.ofMinutes(duration)));
-        return Bucket.builder().addLimit(limit).build();
+    /**
+     * Limit changes go through Redis when enabled, over the same Redis the distributed mode uses,
+     * and otherwise only reach the replica they were made on.
+     */
+    @Bean
+    public LimitBroadcast limitBroadcast(ObjectMapper objectMapper) {
+        BroadcastConfig broadcast = rateLimitConfig.getRatelimit().getBroadcast();
+        if (!broadcast.isEnabled()) {
+            return new LocalLimitBroadcast();
+        }
+
+        return new RedisLimitBroadcast(RedisClient.create(redisUri()), broadcast.getChannel(), objectMapper);
+    }
+
+    /**
+     * Responses to replay are kept in memory, and shared through the same Redis the distributed
+     * mode uses when enabled.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "ratelimit.idempotency.enabled", havingValue = "true", matchIfMissing = true)
+    public IdempotencyStore idempotencyStore() {
+        IdempotencyConfig idempotency = rateLimitConfig.getRatelimit().getIdempotency();
+        if (!idempotency.isShared()) {
+            return new LocalIdempotencyStore(idempotency);
+        }
+
+        return new RedisIdempotencyStore(RedisClient.create(redisUri()), idempotency);
+    }
+
+    @Bean
+    public BucketFactory bucketFactory(ObjectProvider<ProxyManager<String>> proxyManager) {
+        ProxyManager<String> remote = proxyManager.getIfAvailable();
+        if (remote == null) {
+            return new LocalBucketFactory();
+        }
+
+        return new DistributedBucketFactory(remote, rateLimitConfig.getRatelimit().getDistributed());
+    }
+
+    private RedisURI redisUri() {
+        var redis = rateLimitConfig.getRatelimit().getDistributed().getRedis();
+        var uri = RedisURI.builder()
+                .withHost(redis.getHost())
+                .withPort(Integer.parseInt(redis.getPort()));
+        if (redis.getPassword() != null && !redis.getPassword().isEmpty()) {
+            uri.withPassword(redis.getPassword().toCharArray());
+        }
+        return uri.build();
+    }
+
+    /**
+     * Tags every meter with the replica once, so recordings on the request path carry no extra tags.
+     */
+    @Bean
+    public MeterRegistryCustomizer<MeterRegistry> commonTags(@Value("${HOSTNAME:local}") String replica) {
+        return registry -> registry.config().commonTags("application", "rate-limiting-api", "replica", replica);
     }
 }
@@ -0,0 +1,13 @@
+package com.microsoft.samples.ratelimitingapi;
+
+/**
+ * The replica serving the request, reported back to callers so load distribution can be observed.
+ * Read once, the environment does not change while the process runs.
+ */
+public final class Replica {
+
+    public static final String NAME = System.getenv("HOSTNAME");
+
+    private Replica() {
+    }
+}
@@ -0,0 +1,108 @@
+package com.microsoft.samples.ratelimitingapi.concurrency;
+
+import com.microsoft.samples.ratelimitingapi.config.ConcurrencyConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How many requests this replica works on at once, adapted to the latency it measures in the way
+ * TCP Vegas adapts its window.
+ *
+ * The shortest latency seen stands for the pod without queueing. With a limit of L and a measured
+ * latency of rtt, about {@code L * (1 - minRtt / rtt)} requests are queueing rather than being
+ * worked on. Without a queue the limit grows fast, while the queue is short it grows slowly and
+ * once it is long the limit shrinks, in steps of log10 of the limit so large limits move faster.
+ * The limit only grows while it is actually used, and the latency without queueing is measured
+ * again every {@code probeInterval} so the limit follows a pod that got slower or faster.
+ *
+ * Taking and giving back a slot is a single atomic operation. Latency samples are applied under a
+ * lock, which only guards a few arithmetic operations.
+ */
+public class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long probeIntervalNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private double estimate;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long nextProbeNanos;
+
+    public ConcurrencyLimit(ConcurrencyConfig config, long nowNanos) {
+        if (config.getMinLimit() < 1 || config.getMaxLimit() < config.getMinLimit()) {
+            throw new IllegalStateException("Concurrency limit needs 1 <= minLimit <= maxLimit");
+        }
+
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.probeIntervalNanos = config.getProbeInterval().toNanos();
+        this.estimate = Math.min(maxLimit, Math.max(minLimit, config.getInitialLimit()));
+        this.limit = (int) estimate;
+        this.nextProbeNanos = nowNanos + probeIntervalNanos;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Takes a slot unless every slot is taken. A slot that was taken must be given back with one
+     * of the {@code release} methods.
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a slot without a latency sample, for a request whose latency says nothing about
+     * the load, such as one that failed or was turned away early.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Gives back a slot and adapts the limit to the latency of the request that held it.
+     */
+    public void release(long rttNanos, long nowNanos) {
+        int used = inFlight.getAndDecrement();
+        onSample(Math.max(1, rttNanos), used, nowNanos);
+    }
+
+    private synchronized void onSample(long rttNanos, int used, long nowNanos) {
+        if (nowNanos - nextProbeNanos >= 0) {
+            nextProbeNanos = nowNanos + probeIntervalNanos;
+            minRttNanos = rttNanos;
+            return;
+        }
+
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+
+        // Less than half the slots in use says nothing about whether more would fit
+        if (used * 2 < estimate) {
+            return;
+        }
+
+        double step = Math.max(1, Math.log10(estimate));
+        double queue = Math.ceil(estimate * (1 - (double) minRttNanos / rttNanos));
+        if (queue <= step) {
+            estimate += 6 * step;
+        } else if (queue < 3 * step) {
+            estimate += step;
+        } else if (queue > 6 * step) {
+            estimate -= step;
+        }
+
+        estimate = Math.min(maxLimit, Math.max(minLimit, estimate));
+        limit = (int) estimate;
+    }
+}
@@ -0,0 +1,116 @@
+package com.microsoft.samples.ratelimitingapi.concurrency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.Replica;
+import com.microsoft.samples.ratelimitingapi.config.ConcurrencyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import com.microsoft.samples.ratelimitingapi.limiter.SampledLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Sheds requests to the messages endpoints with a 503 once this replica is working on as many as
+ * its {@link ConcurrencyLimit} allows, before any other filter runs and before a token is taken.
+ * The token bucket caps how fast clients may send; this caps how much the pod takes on when it is
+ * the one falling behind, so latency stays flat instead of requests queueing for a worker thread.
+ *
+ * The 503 carries a Retry-After of a second and a body encoded once at startup. Only requests that
+ * were accepted feed the limit their latency: rejections and failures return too quickly or too
+ * erratically to say anything about the load.
+ */
+@Slf4j
+@Component
+@Order(-1)
+@ConditionalOnProperty(name = "ratelimit.concurrency.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String MESSAGES = "/messages";
+    private static final String BATCH = "/messages/batch";
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final Duration SHED_LOG_INTERVAL = Duration.ofSeconds(10);
+
+    private final ConcurrencyLimit concurrencyLimit;
+    private final Counter shedCounter;
+    private final byte[] overloaded;
+    private final SampledLog sheds = new SampledLog(log, "Concurrency limit reached, request shed", SHED_LOG_INTERVAL);
+
+    public ConcurrencyLimitFilter(RateLimitConfig rateLimitConfig, ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) throws JsonProcessingException {
+        ConcurrencyConfig concurrency = rateLimitConfig.getRatelimit().getConcurrency();
+        this.concurrencyLimit = new ConcurrencyLimit(concurrency, System.nanoTime());
+        this.overloaded = objectMapper.writeValueAsBytes(SendMessageResult.builder()
+                .message("Server busy.")
+                .success(false)
+                .retryAfterMillis(Duration.ofSeconds(Long.parseLong(RETRY_AFTER_SECONDS)).toMillis())
+                .servedBy(Replica.NAME)
+                .build());
+
+        Gauge.builder("ratelimit_concurrency_limit", concurrencyLimit, ConcurrencyLimit::getLimit)
+                .description("Requests this replica currently works on at once before shedding")
+                .register(meterRegistry);
+        Gauge.builder("ratelimit_concurrency_in_flight", concurrencyLimit, ConcurrencyLimit::getInFlight)
+                .description("Requests this replica is working on")
+                .register(meterRegistry);
+        shedCounter = Counter.builder("ratelimit_concurrency_shed")
+                .description("Requests turned away with 503 because the concurrency limit was reached")
+                .register(meterRegistry);
+
+        log.info("Concurrency limit starting at {}, between {} and {}", concurrencyLimit.getLimit(),
+                concurrency.getMinLimit(), concurrency.getMaxLimit());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !HttpMethod.POST.matches(request.getMethod()) || !(MESSAGES.equals(path) || BATCH.equals(path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!concurrencyLimit.tryAcquire()) {
+            shedCounter.increment();
+            sheds.record();
+
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.setContentLength(overloaded.length);
+            response.getOutputStream().write(overloaded);
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (completed && response.getStatus() < 300) {
+                long now = System.nanoTime();
+                concurrencyLimit.release(now - startNanos, now);
+            } else {
+                concurrencyLimit.release();
+            }
+        }
+    }
+}
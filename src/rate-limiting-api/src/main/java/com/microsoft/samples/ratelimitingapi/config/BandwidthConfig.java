@@ -0,0 +1,19 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import com.microsoft.samples.ratelimitingapi.limiter.RefillStrategy;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class BandwidthConfig {
+    // Carries tokens over when limits change, defaults to the position in the policy
+    private String id;
+    private long capacity;
+    private long refillTokens;
+    private Duration refillPeriod;
+    private RefillStrategy refill = RefillStrategy.GREEDY;
+    private Long initialTokens;
+}
@@ -0,0 +1,11 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class BroadcastConfig {
+    private boolean enabled;
+    private String channel = "ratelimit:limits";
+}
@@ -0,0 +1,16 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import com.microsoft.samples.ratelimitingapi.limiter.ClientKeyStrategy;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ClientConfig {
+    private ClientKeyStrategy keyStrategy = ClientKeyStrategy.GLOBAL;
+    private String keyHeader = "X-API-Key";
+    private long maxClients = 500_000;
+    private Duration idleTimeout = Duration.ofMinutes(10);
+}
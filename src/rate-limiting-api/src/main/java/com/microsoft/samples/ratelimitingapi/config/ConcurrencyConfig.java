@@ -0,0 +1,18 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ConcurrencyConfig {
+    private boolean enabled = true;
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    // Keep below the server's worker threads, so requests are shed before they queue for one
+    private int maxLimit = 180;
+    // How often the latency without queueing is measured afresh, so the limit follows a slower or faster pod
+    private Duration probeInterval = Duration.ofSeconds(30);
+}
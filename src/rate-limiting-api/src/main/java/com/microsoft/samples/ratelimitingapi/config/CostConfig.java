@@ -0,0 +1,13 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CostConfig {
+    // Tokens every request or batched message costs whatever its size
+    private long requestTokens = 1;
+    // One more token per this many bytes of payload, 0 leaves the size out
+    private long bytesPerToken;
+}
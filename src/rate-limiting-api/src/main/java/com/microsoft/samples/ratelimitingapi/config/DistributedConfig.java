@@ -0,0 +1,15 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class DistributedConfig {
+    private RedisConfig redis = new RedisConfig();
+    private String keyPrefix = "ratelimit:";
+    private long prefetchTokens = 10;
+    private Duration syncInterval = Duration.ofSeconds(1);
+}
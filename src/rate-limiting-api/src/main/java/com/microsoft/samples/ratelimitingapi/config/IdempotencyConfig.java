@@ -0,0 +1,19 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class IdempotencyConfig {
+    private boolean enabled = true;
+    // How long a response is replayed for, longer than the handler's lock and redelivery delay
+    private Duration ttl = Duration.ofMinutes(10);
+    // Upper bound of the keys and responses kept in memory, oldest are evicted first
+    private long maxBytes = 64L * 1024 * 1024;
+    // Share responses between replicas through Redis, using the distributed Redis settings
+    private boolean shared;
+    private String keyPrefix = "idempotency:";
+}
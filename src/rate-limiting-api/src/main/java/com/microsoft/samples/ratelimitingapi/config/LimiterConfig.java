@@ -0,0 +1,29 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import com.microsoft.samples.ratelimitingapi.limiter.LimiterEngine;
+import com.microsoft.samples.ratelimitingapi.limiter.LimiterMode;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+public class LimiterConfig {
+    private LimiterMode mode = LimiterMode.LOCAL;
+    private LimiterEngine engine = LimiterEngine.BUCKET4J;
+    private ClientConfig client = new ClientConfig();
+    private DistributedConfig distributed = new DistributedConfig();
+    private SmoothingConfig smoothing = new SmoothingConfig();
+    private BroadcastConfig broadcast = new BroadcastConfig();
+    private ReconfigurationConfig reconfiguration = new ReconfigurationConfig();
+    private CostConfig cost = new CostConfig();
+    private IdempotencyConfig idempotency = new IdempotencyConfig();
+    private ConcurrencyConfig concurrency = new ConcurrencyConfig();
+    private String defaultPolicy;
+    private Map<String, PolicyConfig> policies = new LinkedHashMap<>();
+    private List<RouteConfig> routes = new ArrayList<>();
+}
@@ -0,0 +1,13 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+public class PolicyConfig {
+    private List<BandwidthConfig> bandwidths = new ArrayList<>();
+}
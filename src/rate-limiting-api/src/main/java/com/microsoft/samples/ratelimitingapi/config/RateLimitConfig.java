@@ -13,6 +13,6 @@ import org.springframework.context.annotation.Configuration;
 @Setter
 public class RateLimitConfig {
 
-    private EndpointConfig ratelimit;
+    private LimiterConfig ratelimit;
 
 }
@@ -0,0 +1,12 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ReconfigurationConfig {
+    private boolean enabled;
+    private String tokenHeader = "X-Admin-Token";
+    private String token;
+}
@@ -5,7 +5,8 @@ import lombok.Setter;
 
 @Getter
 @Setter
-public class EndpointConfig {
-    private int capacity;
-    private int duration;
+public class RedisConfig {
+    private String host;
+    private String port;
+    private String password;
 }
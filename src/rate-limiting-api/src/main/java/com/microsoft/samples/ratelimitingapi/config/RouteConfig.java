@@ -0,0 +1,14 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class RouteConfig {
+    private String path;
+    private String method;
+    private String policy;
+    // Overrides the default cost for this route
+    private CostConfig cost;
+}
@@ -0,0 +1,12 @@
+package com.microsoft.samples.ratelimitingapi.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class SmoothingConfig {
+    private boolean enabled;
+    private int capacity = 1000;
+    private int highWaterMark = 800;
+}
@@ -0,0 +1,8 @@
+package com.microsoft.samples.ratelimitingapi.contract;
+
+public enum BatchMode {
+    /** Either every message of the batch is accepted or none is. */
+    ALL_OR_NOTHING,
+    /** As many messages as there are tokens for are accepted, in order. */
+    PARTIAL
+}
@@ -0,0 +1,13 @@
+package com.microsoft.samples.ratelimitingapi.contract;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class PolicyLimits {
+    String policy;
+    long revision;
+    long limit;
+    String servedBy;
+}
@@ -0,0 +1,19 @@
+package com.microsoft.samples.ratelimitingapi.contract;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.List;
+
+@Data
+@Jacksonized
+@Builder
+public class SendMessageBatchRequest {
+    List<SendMessageRequest> messages;
+    @Builder.Default
+    BatchMode mode = BatchMode.ALL_OR_NOTHING;
+    String clientId;
+    // Idempotency-Key of each message, in the order of messages, null for a message without one
+    List<String> idempotencyKeys;
+}
@@ -0,0 +1,16 @@
+package com.microsoft.samples.ratelimitingapi.contract;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+@Builder
+public class SendMessageBatchResult {
+    List<SendMessageResult> results;
+    long accepted;
+    long remainingTokens;
+    long retryAfterMillis;
+    String servedBy;
+}
@@ -9,4 +9,5 @@ import lombok.extern.jackson.Jacksonized;
 @Builder
 public class SendMessageRequest {
     String message;
+    String clientId;
 }
@@ -2,11 +2,15 @@ package com.microsoft.samples.ratelimitingapi.contract;
 
 import lombok.Builder;
 import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
 @Value
+@Jacksonized
 @Builder
 public class SendMessageResult {
     String message;
     boolean success;
-    String bucketCapacity;
+    long remainingTokens;
+    long retryAfterMillis;
+    String servedBy;
 }
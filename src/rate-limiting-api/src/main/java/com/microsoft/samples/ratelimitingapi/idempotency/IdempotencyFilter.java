@@ -0,0 +1,68 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitMetrics;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Answers a {@code POST /messages} whose {@link #IDEMPOTENCY_KEY} was accepted before with the
+ * response it was given then, before the request is charged or bound, so a message the handler
+ * sends again after a timeout or a redelivery costs no token and is not processed twice. The
+ * controller saves the response of every accepted request that carries a key.
+ *
+ * Runs ahead of the rate limit filter. Two requests with the same key that are in flight at the
+ * same time are both charged, which a redelivery, coming after the message lock expired, is not.
+ */
+@Component
+@Order(0)
+@ConditionalOnProperty(name = "ratelimit.idempotency.enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+
+    private static final String PATH = "/messages";
+
+    private final IdempotencyStore idempotencyStore;
+    private final RateLimitMetrics.PolicyMeters meters;
+
+    public IdempotencyFilter(IdempotencyStore idempotencyStore, RoutePolicyTable routePolicyTable,
+            RateLimitMetrics rateLimitMetrics) {
+        this.idempotencyStore = idempotencyStore;
+        this.meters = rateLimitMetrics.forPolicy(routePolicyTable.resolve(HttpMethod.POST, PATH));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) || !PATH.equals(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY);
+        var replay = key == null || key.isEmpty() ? null : idempotencyStore.find(key);
+        if (replay == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        meters.replayed();
+        response.setStatus(replay.status());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(REPLAYED, "true");
+        response.setContentLength(replay.body().length);
+        response.getOutputStream().write(replay.body());
+    }
+}
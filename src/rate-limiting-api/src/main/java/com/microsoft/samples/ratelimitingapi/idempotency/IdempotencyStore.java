@@ -0,0 +1,19 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+/**
+ * Responses to accepted requests, by the idempotency key their client sent. Only responses that
+ * took tokens are kept, so a request that was turned away is charged again when it comes back.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * The response first given to the request with this key, null when there was none or it has
+     * expired.
+     */
+    IdempotentResponse find(String key);
+
+    /**
+     * Keeps the response unless one is already kept for the key.
+     */
+    void save(String key, IdempotentResponse response);
+}
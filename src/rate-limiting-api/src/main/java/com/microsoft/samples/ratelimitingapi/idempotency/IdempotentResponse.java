@@ -0,0 +1,8 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+/**
+ * The status and encoded body of the response a request was first given, replayed as it was to
+ * the same request sent again.
+ */
+public record IdempotentResponse(int status, byte[] body) {
+}
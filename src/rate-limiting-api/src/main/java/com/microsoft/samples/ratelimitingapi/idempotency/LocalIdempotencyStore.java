@@ -0,0 +1,42 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microsoft.samples.ratelimitingapi.config.IdempotencyConfig;
+
+/**
+ * Keeps responses in this replica's memory, in a Caffeine cache bounded by the bytes of the keys
+ * and bodies it holds and expiring each response its time to live after it was saved. The cache
+ * sits on a concurrent hash map locked per bin, so lookups never block and saves of different
+ * keys rarely contend.
+ */
+public class LocalIdempotencyStore implements IdempotencyStore {
+
+    // Entry, node and array headers the cache holds per response besides the key and body
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Cache<String, IdempotentResponse> responses;
+
+    public LocalIdempotencyStore(IdempotencyConfig config) {
+        this.responses = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxBytes())
+                .weigher((String key, IdempotentResponse response) -> weight(key, response))
+                .expireAfterWrite(config.getTtl())
+                .executor(Runnable::run)
+                .build();
+    }
+
+    @Override
+    public IdempotentResponse find(String key) {
+        return responses.getIfPresent(key);
+    }
+
+    @Override
+    public void save(String key, IdempotentResponse response) {
+        responses.asMap().putIfAbsent(key, response);
+    }
+
+    private static int weight(String key, IdempotentResponse response) {
+        return ENTRY_OVERHEAD + 2 * key.length() + response.body().length;
+    }
+}
@@ -0,0 +1,92 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+import com.microsoft.samples.ratelimitingapi.config.IdempotencyConfig;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Shares responses between replicas through Redis, so a message redelivered to another replica
+ * than the one that first accepted it is still recognised. Responses are also kept in this
+ * replica's {@link LocalIdempotencyStore}, which answers first, so Redis is only asked about keys
+ * this replica has not seen. Redis expires each response after the same time to live.
+ *
+ * When Redis cannot be reached, requests are treated as new rather than failed: the worst case is
+ * a message charged twice, as it would be without the store.
+ */
+@Slf4j
+public class RedisIdempotencyStore implements IdempotencyStore, AutoCloseable {
+
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, byte[]> connection;
+    private final LocalIdempotencyStore local;
+    private final String keyPrefix;
+    private final SetArgs setArgs;
+
+    public RedisIdempotencyStore(RedisClient redisClient, IdempotencyConfig config) {
+        this.redisClient = redisClient;
+        this.connection = redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+        this.local = new LocalIdempotencyStore(config);
+        this.keyPrefix = config.getKeyPrefix();
+        this.setArgs = SetArgs.Builder.nx().px(config.getTtl());
+
+        log.info("Sharing idempotent responses through Redis under {}", keyPrefix);
+    }
+
+    @Override
+    public IdempotentResponse find(String key) {
+        var response = local.find(key);
+        if (response != null) {
+            return response;
+        }
+
+        try {
+            byte[] stored = connection.sync().get(keyPrefix + key);
+            if (stored == null) {
+                return null;
+            }
+
+            response = decode(stored);
+            local.save(key, response);
+            return response;
+        } catch (RuntimeException e) {
+            log.warn("Could not look up idempotency key in Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void save(String key, IdempotentResponse response) {
+        local.save(key, response);
+        try {
+            connection.sync().set(keyPrefix + key, encode(response), setArgs);
+        } catch (RuntimeException e) {
+            log.warn("Could not save idempotency key to Redis: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    private static byte[] encode(IdempotentResponse response) {
+        return ByteBuffer.allocate(Integer.BYTES + response.body().length)
+                .putInt(response.status())
+                .put(response.body())
+                .array();
+    }
+
+    private static IdempotentResponse decode(byte[] stored) {
+        int status = ByteBuffer.wrap(stored).getInt();
+        return new IdempotentResponse(status, Arrays.copyOfRange(stored, Integer.BYTES, stored.length));
+    }
+}
@@ -0,0 +1,22 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * Creates the bucket backing a client key, either in local memory or as a proxy to shared state.
+ */
+public interface BucketFactory {
+
+    /**
+     * {@code revision} is the {@link RoutePolicy#getRevision() revision} of {@code configuration}.
+     */
+    Bucket create(String key, BucketConfiguration configuration, long revision);
+
+    /**
+     * Moves a bucket this factory created onto new limits, keeping the tokens it has left up to the
+     * new capacity. Returns false if the bucket cannot be changed in place and has to be created
+     * again instead.
+     */
+    boolean reconfigure(Bucket bucket, BucketConfiguration configuration);
+}
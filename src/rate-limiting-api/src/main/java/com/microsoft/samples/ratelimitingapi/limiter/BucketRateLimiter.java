@@ -0,0 +1,179 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bucket4j engine, one bucket per client key.
+ *
+ * Buckets live in a size-bounded Caffeine cache, so lookups of existing keys are lock-free and
+ * memory stays flat no matter how many distinct callers show up. A bucket that has not been
+ * touched for the idle timeout, or for as long as an empty bucket of the policy takes to refill if
+ * that is longer, is evicted; by then it has refilled, so recreating it on the next request hands
+ * the caller the same tokens it would have had anyway. Cache maintenance runs on the
+ * calling thread, amortized over requests, rather than waking a common pool worker from the
+ * request path.
+ *
+ * bucket4j reports a request for more tokens than a bandwidth holds with a wait that never ends.
+ * It is turned away with the time an empty bucket takes to refill instead, as by the GCRA engine.
+ */
+@Slf4j
+public class BucketRateLimiter implements RateLimiter {
+
+    private final RoutePolicy policy;
+    private final BucketFactory bucketFactory;
+    private final Cache<String, Bucket> buckets;
+    private final long idleTimeoutNanos;
+    private volatile long expiryNanos;
+
+    public BucketRateLimiter(RoutePolicy policy, BucketFactory bucketFactory, ClientConfig client) {
+        this(policy, bucketFactory, client, Ticker.systemTicker());
+    }
+
+    BucketRateLimiter(RoutePolicy policy, BucketFactory bucketFactory, ClientConfig client, Ticker ticker) {
+        this.policy = policy;
+        this.bucketFactory = bucketFactory;
+        this.idleTimeoutNanos = client.getIdleTimeout().toNanos();
+        this.expiryNanos = expiry(policy.getConfiguration());
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(client.getMaxClients())
+                .expireAfter(new IdleExpiry())
+                .executor(Runnable::run)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public ConsumptionProbe tryConsume(String key, long tokens) {
+        return bounded(resolve(key).tryConsumeAndReturnRemaining(tokens));
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(String key, long tokens) {
+        return resolve(key).tryConsumeAsMuchAsPossible(tokens);
+    }
+
+    @Override
+    public ConsumptionProbe peek(String key, long tokens) {
+        Bucket bucket = resolve(key);
+        if (tokens == 0) {
+            var available = bucket.asVerbose().getAvailableTokens();
+            return ConsumptionProbe.consumed(available.getValue(),
+                    available.getDiagnostics().calculateFullRefillingTime());
+        }
+
+        var estimate = bucket.asVerbose().estimateAbilityToConsume(tokens);
+        long remaining = estimate.getValue().getRemainingTokens();
+        long nanosToReset = estimate.getDiagnostics().calculateFullRefillingTime();
+
+        return estimate.getValue().canBeConsumed()
+                ? ConsumptionProbe.consumed(remaining, nanosToReset)
+                : bounded(ConsumptionProbe.rejected(remaining, estimate.getValue().getNanosToWaitForRefill(),
+                        nanosToReset));
+    }
+
+    private ConsumptionProbe bounded(ConsumptionProbe probe) {
+        if (probe.isConsumed() || probe.getNanosToWaitForRefill() != Long.MAX_VALUE) {
+            return probe;
+        }
+        return ConsumptionProbe.rejected(probe.getRemainingTokens(), fullRefill(policy.getConfiguration()),
+                probe.getNanosToWaitForReset());
+    }
+
+    /**
+     * How long an empty bucket takes to refill, the longest any request that fits has to wait.
+     */
+    private static long fullRefill(BucketConfiguration configuration) {
+        long nanos = 0;
+        for (Bandwidth bandwidth : configuration.getBandwidths()) {
+            long interval = (bandwidth.getRefillPeriodNanos() + bandwidth.getRefillTokens() - 1)
+                    / bandwidth.getRefillTokens();
+            nanos = Math.max(nanos, Math.multiplyExact(bandwidth.getCapacity(), interval));
+        }
+        return nanos;
+    }
+
+    /**
+     * A bucket is kept idle for as long as an empty one takes to refill, at least.
+     */
+    private long expiry(BucketConfiguration configuration) {
+        return Math.max(idleTimeoutNanos, fullRefill(configuration));
+    }
+
+    /**
+     * Buckets that cannot change in place are dropped and created again on their next request.
+     * If the new limits take longer to refill, the buckets kept are given the longer expiry now
+     * rather than on their next request.
+     */
+    @Override
+    public void reconfigure() {
+        BucketConfiguration configuration = policy.getConfiguration();
+        var policyBuckets = buckets.asMap();
+        int before = policyBuckets.size();
+
+        long previousExpiryNanos = expiryNanos;
+        expiryNanos = expiry(configuration);
+        if (expiryNanos > previousExpiryNanos) {
+            buckets.policy().expireVariably().ifPresent(expiry -> policyBuckets.keySet()
+                    .forEach(key -> expiry.setExpiresAfter(key, expiryNanos, TimeUnit.NANOSECONDS)));
+        }
+
+        policyBuckets.values().removeIf(bucket -> !bucketFactory.reconfigure(bucket, configuration));
+
+        log.info("Rate limit policy {} moved to revision {}, {} buckets reconfigured, {} dropped", policy.getName(),
+                policy.getRevision(), policyBuckets.size(), before - policyBuckets.size());
+    }
+
+    /**
+     * Buckets held once pending evictions have run.
+     */
+    long clients() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+
+    Bucket resolve(String key) {
+        Bucket bucket = buckets.getIfPresent(key);
+        if (bucket != null) {
+            return bucket;
+        }
+
+        long revision = policy.getRevision();
+        BucketConfiguration configuration = policy.getConfiguration();
+        bucket = buckets.get(key, k -> bucketFactory.create(policy.getName() + ":" + k, configuration, revision));
+
+        // New limits arrived while the bucket was created, reconfigure may have run before it was cached
+        if (policy.getRevision() != revision && !bucketFactory.reconfigure(bucket, policy.getConfiguration())) {
+            buckets.invalidate(key);
+        }
+        return bucket;
+    }
+
+    private final class IdleExpiry implements Expiry<String, Bucket> {
+
+        @Override
+        public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+            return expiryNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return expiryNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+            return expiryNanos;
+        }
+    }
+}
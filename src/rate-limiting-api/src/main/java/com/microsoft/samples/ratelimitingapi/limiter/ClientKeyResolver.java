@@ -0,0 +1,42 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the key of the bucket a request is charged against.
+ * Callers that do not present the configured attribute share the anonymous bucket.
+ * {@code clientId} is the field from the request body, used by the FIELD strategy.
+ */
+@Component
+public class ClientKeyResolver {
+
+    public static final String GLOBAL_KEY = "global";
+    public static final String ANONYMOUS_KEY = "anonymous";
+
+    private final ClientKeyStrategy strategy;
+    private final String keyHeader;
+
+    public ClientKeyResolver(RateLimitConfig rateLimitConfig) {
+        ClientConfig client = rateLimitConfig.getRatelimit().getClient();
+        this.strategy = client.getKeyStrategy();
+        this.keyHeader = client.getKeyHeader();
+    }
+
+    public ClientKeyStrategy getStrategy() {
+        return strategy;
+    }
+
+    public String resolve(HttpServletRequest httpRequest, String clientId) {
+        String key = switch (strategy) {
+            case GLOBAL -> GLOBAL_KEY;
+            case HEADER -> httpRequest.getHeader(keyHeader);
+            case IP -> httpRequest.getRemoteAddr();
+            case FIELD -> clientId;
+        };
+
+        return key == null || key.isEmpty() ? ANONYMOUS_KEY : key;
+    }
+}
@@ -0,0 +1,15 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+/**
+ * Decides which caller attribute a bucket is keyed on.
+ */
+public enum ClientKeyStrategy {
+    /** One bucket shared by every caller. */
+    GLOBAL,
+    /** One bucket per value of the configured API key header. */
+    HEADER,
+    /** One bucket per remote address. */
+    IP,
+    /** One bucket per {@code clientId} in the request body. */
+    FIELD
+}
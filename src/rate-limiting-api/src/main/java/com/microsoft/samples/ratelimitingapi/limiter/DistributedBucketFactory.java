@@ -0,0 +1,52 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.DistributedConfig;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.TokensInheritanceStrategy;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimization;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
+
+/**
+ * Builds buckets whose state is shared through a {@link ProxyManager}.
+ *
+ * Each proxy keeps a local copy of the remote state and spends up to {@code prefetchTokens}
+ * from it before writing back, or syncs after {@code syncInterval} at the latest. A normal
+ * request is therefore served from memory, and the limit can be overshot by at most
+ * {@code prefetchTokens} per replica.
+ *
+ * Proxies ask for the revision of the policy they were built with. When the shared state was
+ * written at an older one, the first proxy to reach it replaces its configuration, keeping the
+ * tokens, so new limits cost one write per key rather than one per key and replica.
+ */
+public class DistributedBucketFactory implements BucketFactory {
+
+    private final ProxyManager<String> proxyManager;
+    private final Optimization prefetch;
+
+    public DistributedBucketFactory(ProxyManager<String> proxyManager, DistributedConfig distributedConfig) {
+        this.proxyManager = proxyManager;
+        this.prefetch = Optimizations.delaying(new DelayParameters(distributedConfig.getPrefetchTokens(),
+                distributedConfig.getSyncInterval()));
+    }
+
+    @Override
+    public Bucket create(String key, BucketConfiguration configuration, long revision) {
+        return proxyManager.builder()
+                .withOptimization(prefetch)
+                .withImplicitConfigurationReplacement(revision, TokensInheritanceStrategy.AS_IS)
+                .build(key, configuration);
+    }
+
+    /**
+     * The proxy is dropped instead, and the one built in its place at the new revision moves the
+     * shared state over on its first request. Tokens the dropped proxy had spent locally but not
+     * yet written back are never charged, which errs in favour of the client.
+     */
+    @Override
+    public boolean reconfigure(Bucket bucket, BucketConfiguration configuration) {
+        return false;
+    }
+}
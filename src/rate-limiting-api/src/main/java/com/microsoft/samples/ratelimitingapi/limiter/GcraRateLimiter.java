@@ -0,0 +1,563 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.TimeMeter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * The GCRA engine: instead of a bucket, every key keeps one theoretical arrival time per bandwidth,
+ * the time its bucket would be full again. A request for n tokens is let through if pushing that
+ * time n emission intervals further still leaves it within capacity intervals of now.
+ *
+ * All keys of the policy share one flat {@code long[]}, a slot per key holding a 64-bit fingerprint
+ * of the key followed by its arrival times, 16 bytes with a single bandwidth. The table is sized
+ * for {@code maxKeys} at three quarters full up front and never resized. A key is looked for in a
+ * short window of slots after its hash; when the window is full the slot that would refill first
+ * is taken over, in the spirit of the LRU eviction of the bucket4j engine. Slots are claimed and
+ * arrival times moved with compare-and-swap, so no request waits for another, and a request that
+ * is turned away only reads.
+ *
+ * Changing the limits does not hold requests up either. The table for the new limits is put in
+ * place at once with every slot marked pending, and a slot is moved over by whichever comes first,
+ * the reconfiguration or a request for a key in it. Moving a slot seals its words in the old table
+ * with atomic swaps: a take that landed before the seal is carried over, one that comes after fails
+ * and is made again on the new table, and a result read from sealed words is read again there.
+ *
+ * A request for more tokens than a bandwidth holds can never be let through. It is turned away
+ * with the time an empty key takes to refill as its wait, rather than one that never ends.
+ *
+ * Tokens always refill evenly, an intervally refill is treated as greedy. Two keys with the same
+ * fingerprint share their limit, a request racing the takeover of its slot may be charged to the
+ * new key, and a request over several bandwidths whose slot is sealed halfway through its take
+ * keeps paying for the bandwidths it had taken from; all are rare enough to leave alone.
+ */
+@Slf4j
+public class GcraRateLimiter implements RateLimiter {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Slots searched for a key before one is taken over
+    private static final int WINDOW = 8;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final long EMPTY = 0;
+
+    // Fingerprints of a slot not moved over from the previous table yet, and of a slot moved out
+    private static final long PENDING = 1;
+    private static final long SEALED = 2;
+
+    // Arrival time of a slot moved out
+    private static final long SEALED_ARRIVAL = Long.MIN_VALUE;
+
+    // find and claim ran into a slot moved out, the table was replaced
+    private static final int RETIRED = -2;
+
+    // Arrival time of a key that has not taken anything yet, it starts with the initial tokens
+    private static final long FRESH = 0;
+
+    /**
+     * A bandwidth in nanoseconds: one token refills every {@code interval}, a full bucket is
+     * {@code tolerance} ahead of now.
+     */
+    private record Rate(String id, long capacity, long interval, long tolerance, long initialDebt) {
+    }
+
+    /**
+     * While its slots are moved over, a table keeps the one it replaces and which of its bandwidths
+     * each new bandwidth inherits the tokens of.
+     */
+    private static final class Table {
+        private final Rate[] rates;
+        private final long[] slots;
+        private final int slotCount;
+        private final int stride;
+        private final int[] inherited;
+        private volatile Table previous;
+
+        Table(Rate[] rates, int slotCount, Table previous) {
+            this.rates = rates;
+            this.slotCount = slotCount;
+            this.stride = rates.length + 1;
+            this.slots = new long[slotCount * stride];
+            this.previous = previous;
+            this.inherited = new int[rates.length];
+            if (previous != null) {
+                for (int b = 0; b < rates.length; b++) {
+                    inherited[b] = inherited(previous.rates, rates[b], b);
+                }
+                for (int slot = 0; slot < slotCount; slot++) {
+                    slots[slot * stride] = PENDING;
+                }
+            }
+        }
+
+        Rate[] rates() {
+            return rates;
+        }
+
+        long[] slots() {
+            return slots;
+        }
+
+        int slotCount() {
+            return slotCount;
+        }
+
+        int stride() {
+            return stride;
+        }
+    }
+
+    private final RoutePolicy policy;
+    private final TimeMeter clock;
+    private final long origin;
+    private volatile Table table;
+
+    public GcraRateLimiter(RoutePolicy policy, long maxKeys, TimeMeter clock) {
+        this.policy = policy;
+        this.clock = clock;
+        this.origin = clock.currentTimeNanos() - 1;
+
+        Rate[] rates = rates(policy);
+        long slotCount = Math.max((long) Math.ceil(maxKeys / LOAD_FACTOR), WINDOW);
+        if (slotCount * (rates.length + 1) > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many clients for the GCRA engine: " + maxKeys);
+        }
+        this.table = new Table(rates, (int) slotCount, null);
+
+        log.info("GCRA limiter for policy {} with {} slots, {} MB", policy.getName(), slotCount,
+                table.slots().length * Long.BYTES >> 20);
+    }
+
+    @Override
+    public ConsumptionProbe tryConsume(String key, long tokens) {
+        long fingerprint = fingerprint(key);
+        while (true) {
+            Table current = table;
+            long now = now();
+            int slot = find(current, fingerprint);
+            if (slot == RETIRED) {
+                continue;
+            }
+
+            long nanosToWait = nanosToWait(current, slot, tokens, now);
+            if (nanosToWait > 0) {
+                var rejected = ConsumptionProbe.rejected(available(current, slot, now), nanosToWait,
+                        nanosToReset(current, slot, now));
+                if (table == current) {
+                    return rejected;
+                }
+                continue;
+            }
+
+            if (slot < 0 && (slot = claim(current, fingerprint)) < 0) {
+                continue;
+            }
+            if (take(current, slot, tokens, now)) {
+                return consumed(current, fingerprint, slot, now);
+            }
+        }
+    }
+
+    @Override
+    public long tryConsumeAsMuchAsPossible(String key, long tokens) {
+        long fingerprint = fingerprint(key);
+        while (true) {
+            Table current = table;
+            long now = now();
+            int slot = find(current, fingerprint);
+            if (slot == RETIRED) {
+                continue;
+            }
+
+            long taken = Math.min(tokens, available(current, slot, now));
+            if (taken <= 0) {
+                if (table == current) {
+                    return 0;
+                }
+                continue;
+            }
+
+            if (slot < 0 && (slot = claim(current, fingerprint)) < 0) {
+                continue;
+            }
+            if (take(current, slot, taken, now)) {
+                return taken;
+            }
+        }
+    }
+
+    @Override
+    public ConsumptionProbe peek(String key, long tokens) {
+        long fingerprint = fingerprint(key);
+        while (true) {
+            Table current = table;
+            long now = now();
+            int slot = find(current, fingerprint);
+            if (slot == RETIRED) {
+                continue;
+            }
+
+            long nanosToWait = nanosToWait(current, slot, tokens, now);
+            long available = available(current, slot, now);
+            long nanosToReset = nanosToReset(current, slot, now);
+            if (table == current) {
+                return nanosToWait > 0
+                        ? ConsumptionProbe.rejected(available, nanosToWait, nanosToReset)
+                        : ConsumptionProbe.consumed(available, nanosToReset);
+            }
+        }
+    }
+
+    /**
+     * Puts a table for the new limits in place and moves every key over. Tokens carry over to the
+     * bandwidth with the same id, capped at its capacity. Requests go on meanwhile and move the
+     * slots they need themselves. Changes are applied one at a time, so the table replaced has no
+     * slot left pending.
+     */
+    @Override
+    public synchronized void reconfigure() {
+        Table next = new Table(rates(policy), table.slotCount(), table);
+        table = next;
+
+        int keys = 0;
+        for (int slot = 0; slot < next.slotCount(); slot++) {
+            if (fingerprintAt(next, slot) != EMPTY) {
+                keys++;
+            }
+        }
+        next.previous = null;
+
+        log.info("Rate limit policy {} moved to revision {}, {} keys reconfigured", policy.getName(),
+                policy.getRevision(), keys);
+    }
+
+    /**
+     * The probe for a take that went through. Read again from the latest table if the slot was
+     * moved since, the take itself was carried over with it.
+     */
+    private ConsumptionProbe consumed(Table current, long fingerprint, int slot, long now) {
+        while (true) {
+            var consumed = ConsumptionProbe.consumed(available(current, slot, now), nanosToReset(current, slot, now));
+            Table latest = table;
+            if (latest == current) {
+                return consumed;
+            }
+            current = latest;
+            slot = find(current, fingerprint);
+        }
+    }
+
+    /**
+     * Seals the slot in the previous table and writes its key and carried over arrival times into
+     * {@code next}, unless it was moved already. A slot being moved by another thread is waited for,
+     * which takes a handful of stores.
+     */
+    private void migrate(Table next, int slot) {
+        Table previous = next.previous;
+        if (previous == null) {
+            // Cleared once every slot was moved
+            return;
+        }
+
+        int from = slot * previous.stride();
+        int to = slot * next.stride();
+        long fingerprint = (long) SLOTS.getAndSet(previous.slots(), from, SEALED);
+        if (fingerprint == SEALED) {
+            while ((long) SLOTS.getVolatile(next.slots(), to) == PENDING) {
+                Thread.onSpinWait();
+            }
+            return;
+        }
+        if (fingerprint == EMPTY) {
+            // Sealed before any request claimed it, its arrival times were never written
+            SLOTS.setVolatile(next.slots(), to, EMPTY);
+            return;
+        }
+
+        long[] arrivals = new long[previous.rates().length];
+        for (int b = 0; b < arrivals.length; b++) {
+            arrivals[b] = (long) SLOTS.getAndSet(previous.slots(), from + 1 + b, SEALED_ARRIVAL);
+        }
+
+        long now = now();
+        Rate[] rates = next.rates();
+        for (int b = 0; b < rates.length; b++) {
+            int inherited = next.inherited[b];
+            next.slots()[to + 1 + b] = inherited < 0
+                    ? FRESH
+                    : carryOver(previous.rates()[inherited], rates[b], arrivals[inherited], now);
+        }
+        SLOTS.setVolatile(next.slots(), to, fingerprint);
+    }
+
+    /**
+     * The fingerprint in a slot, moving the slot over first while it is pending.
+     */
+    private long fingerprintAt(Table table, int slot) {
+        int base = slot * table.stride();
+        long fingerprint = (long) SLOTS.getVolatile(table.slots(), base);
+        if (fingerprint == PENDING) {
+            migrate(table, slot);
+            fingerprint = (long) SLOTS.getVolatile(table.slots(), base);
+        }
+        return fingerprint;
+    }
+
+    private long now() {
+        return clock.currentTimeNanos() - origin;
+    }
+
+    /**
+     * The slot of the key, -1 if it has none, or {@link #RETIRED} if the table was replaced.
+     */
+    private int find(Table table, long fingerprint) {
+        int start = index(table, fingerprint);
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = probe(table, start, i);
+            long current = fingerprintAt(table, slot);
+            if (current == fingerprint) {
+                return slot;
+            }
+            if (current == SEALED) {
+                return RETIRED;
+            }
+            // Slots are filled in probe order and never emptied, the key is not further along
+            if (current == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A slot for the key, or {@link #RETIRED} if the table was replaced.
+     */
+    private int claim(Table table, long fingerprint) {
+        int start = index(table, fingerprint);
+        while (true) {
+            int victim = -1;
+            long victimFingerprint = EMPTY;
+            long victimArrival = Long.MAX_VALUE;
+
+            for (int i = 0; i < WINDOW; i++) {
+                int slot = probe(table, start, i);
+                int base = slot * table.stride();
+                long current = fingerprintAt(table, slot);
+                if (current == EMPTY && SLOTS.compareAndSet(table.slots(), base, EMPTY, fingerprint)) {
+                    return slot;
+                }
+
+                current = (long) SLOTS.getVolatile(table.slots(), base);
+                if (current == fingerprint) {
+                    return slot;
+                }
+                if (current == SEALED) {
+                    return RETIRED;
+                }
+
+                long arrival = latestArrival(table, base);
+                if (arrival < victimArrival) {
+                    victim = slot;
+                    victimFingerprint = current;
+                    victimArrival = arrival;
+                }
+            }
+
+            int base = victim * table.stride();
+            if (SLOTS.compareAndSet(table.slots(), base, victimFingerprint, fingerprint)) {
+                for (int b = 1; b < table.stride(); b++) {
+                    reset(table, base + b);
+                }
+                return victim;
+            }
+        }
+    }
+
+    /**
+     * Starts a taken over slot afresh, unless it was sealed meanwhile and moved over as it was.
+     */
+    private static void reset(Table table, int index) {
+        long arrival;
+        do {
+            arrival = (long) SLOTS.getVolatile(table.slots(), index);
+            if (arrival == SEALED_ARRIVAL) {
+                return;
+            }
+        } while (!SLOTS.compareAndSet(table.slots(), index, arrival, FRESH));
+    }
+
+    /**
+     * Moves the arrival time of every bandwidth, giving back what was taken from the earlier ones
+     * if a later one no longer has the tokens or was sealed.
+     */
+    private static boolean take(Table table, int slot, long tokens, long now) {
+        Rate[] rates = table.rates();
+        int base = slot * table.stride() + 1;
+        for (int b = 0; b < rates.length; b++) {
+            while (true) {
+                long arrival = (long) SLOTS.getVolatile(table.slots(), base + b);
+                long next = arrival(rates[b], arrival, now) + tokens * rates[b].interval();
+                if (arrival == SEALED_ARRIVAL || next - now > rates[b].tolerance()) {
+                    giveBack(table, base, b, tokens);
+                    return false;
+                }
+                if (SLOTS.compareAndSet(table.slots(), base + b, arrival, next)) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void giveBack(Table table, int base, int bandwidths, long tokens) {
+        for (int b = 0; b < bandwidths; b++) {
+            long cost = tokens * table.rates()[b].interval();
+            long arrival;
+            do {
+                arrival = (long) SLOTS.getVolatile(table.slots(), base + b);
+                if (arrival == SEALED_ARRIVAL) {
+                    break;
+                }
+            } while (!SLOTS.compareAndSet(table.slots(), base + b, arrival, Math.max(arrival - cost, 1)));
+        }
+    }
+
+    private static long nanosToWait(Table table, int slot, long tokens, long now) {
+        long nanosToWait = 0;
+        Rate[] rates = table.rates();
+        for (int b = 0; b < rates.length; b++) {
+            if (tokens > rates[b].capacity()) {
+                return fullRefill(table);
+            }
+            long next = arrival(table, slot, b, now) + tokens * rates[b].interval();
+            nanosToWait = Math.max(nanosToWait, next - now - rates[b].tolerance());
+        }
+        return nanosToWait;
+    }
+
+    /**
+     * How long an empty key takes to refill, the longest any request that fits has to wait.
+     */
+    private static long fullRefill(Table table) {
+        long nanos = 0;
+        for (Rate rate : table.rates()) {
+            nanos = Math.max(nanos, rate.tolerance());
+        }
+        return nanos;
+    }
+
+    private static long available(Table table, int slot, long now) {
+        long available = Long.MAX_VALUE;
+        Rate[] rates = table.rates();
+        for (int b = 0; b < rates.length; b++) {
+            long debt = arrival(table, slot, b, now) - now;
+            available = Math.min(available, Math.max(rates[b].tolerance() - debt, 0) / rates[b].interval());
+        }
+        return available;
+    }
+
+    private static long nanosToReset(Table table, int slot, long now) {
+        long nanosToReset = 0;
+        for (int b = 0; b < table.rates().length; b++) {
+            nanosToReset = Math.max(nanosToReset, arrival(table, slot, b, now) - now);
+        }
+        return nanosToReset;
+    }
+
+    private static long latestArrival(Table table, int base) {
+        long latest = 0;
+        for (int b = 1; b < table.stride(); b++) {
+            latest = Math.max(latest, (long) SLOTS.getVolatile(table.slots(), base + b));
+        }
+        return latest;
+    }
+
+    private static long arrival(Table table, int slot, int bandwidth, long now) {
+        Rate rate = table.rates()[bandwidth];
+        if (slot < 0) {
+            return now + rate.initialDebt();
+        }
+        return arrival(rate, (long) SLOTS.getVolatile(table.slots(), slot * table.stride() + 1 + bandwidth), now);
+    }
+
+    private static long arrival(Rate rate, long arrival, long now) {
+        return arrival == FRESH ? now + rate.initialDebt() : Math.max(arrival, now);
+    }
+
+    private static long carryOver(Rate from, Rate to, long arrival, long now) {
+        if (arrival == FRESH) {
+            return FRESH;
+        }
+        double available = from.capacity() - Math.max(arrival - now, 0) / (double) from.interval();
+        double debt = to.capacity() - Math.min(available, to.capacity());
+        return now + (long) Math.ceil(debt * to.interval());
+    }
+
+    private static int inherited(Rate[] previous, Rate rate, int position) {
+        for (int b = 0; b < previous.length; b++) {
+            if (rate.id() != null ? rate.id().equals(previous[b].id()) : b == position) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private static Rate[] rates(RoutePolicy policy) {
+        BucketConfiguration configuration = policy.getConfiguration();
+        Bandwidth[] bandwidths = configuration.getBandwidths();
+        Rate[] rates = new Rate[bandwidths.length];
+        for (int b = 0; b < bandwidths.length; b++) {
+            Bandwidth bandwidth = bandwidths[b];
+            if (bandwidth.isRefillIntervally()) {
+                log.warn("GCRA refills evenly, the intervally refill of policy {} is treated as greedy",
+                        policy.getName());
+            }
+
+            long interval = (bandwidth.getRefillPeriodNanos() + bandwidth.getRefillTokens() - 1)
+                    / bandwidth.getRefillTokens();
+            long capacity = bandwidth.getCapacity();
+            long initialDebt = Math.max(capacity - bandwidth.getInitialTokens(), 0) * interval;
+            String id = Objects.equals(bandwidth.getId(), Bandwidth.UNDEFINED_ID) ? null : bandwidth.getId();
+            rates[b] = new Rate(id, capacity, interval, Math.multiplyExact(capacity, interval), initialDebt);
+        }
+        return rates;
+    }
+
+    /**
+     * Maps the high half of the fingerprint onto the slots by multiplying rather than by a modulo,
+     * so the table needs no power-of-two size.
+     */
+    private static int index(Table table, long fingerprint) {
+        return (int) (((fingerprint >>> 32) * table.slotCount()) >>> 32);
+    }
+
+    private static int probe(Table table, int start, int step) {
+        int slot = start + step;
+        return slot < table.slotCount() ? slot : slot - table.slotCount();
+    }
+
+    /**
+     * FNV-1a over the characters, finished with the MurmurHash3 mix so every bit depends on every
+     * character. Never {@link #EMPTY}, {@link #PENDING} or {@link #SEALED}.
+     */
+    static long fingerprint(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash >= EMPTY && hash <= SEALED ? hash + SEALED + 1 : hash;
+    }
+}
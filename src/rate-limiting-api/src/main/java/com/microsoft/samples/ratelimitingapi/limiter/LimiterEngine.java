@@ -0,0 +1,11 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+/**
+ * How the limit of each client key is kept.
+ */
+public enum LimiterEngine {
+    /** A bucket4j bucket per key, in every mode. */
+    BUCKET4J,
+    /** One arrival time per key and bandwidth in a flat array, local mode only. */
+    GCRA
+}
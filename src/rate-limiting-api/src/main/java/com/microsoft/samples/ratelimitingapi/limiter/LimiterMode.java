@@ -0,0 +1,11 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+/**
+ * Where bucket state lives.
+ */
+public enum LimiterMode {
+    /** In the memory of each replica, every replica enforces the full limit on its own. */
+    LOCAL,
+    /** In Redis, the limit is shared by all replicas. */
+    DISTRIBUTED
+}
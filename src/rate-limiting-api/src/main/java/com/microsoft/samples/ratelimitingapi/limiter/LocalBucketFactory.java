@@ -0,0 +1,38 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.TimeMeter;
+import io.github.bucket4j.TokensInheritanceStrategy;
+
+public class LocalBucketFactory implements BucketFactory {
+
+    private final TimeMeter clock;
+
+    public LocalBucketFactory() {
+        this(TimeMeter.SYSTEM_MILLISECONDS);
+    }
+
+    public LocalBucketFactory(TimeMeter clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public Bucket create(String key, BucketConfiguration configuration, long revision) {
+        var builder = Bucket.builder().withCustomTimePrecision(clock);
+        for (var bandwidth : configuration.getBandwidths()) {
+            builder.addLimit(bandwidth);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Swaps the configuration with the same compare-and-swap as a consumption, so requests to the
+     * bucket neither wait for the swap nor lose the tokens they had.
+     */
+    @Override
+    public boolean reconfigure(Bucket bucket, BucketConfiguration configuration) {
+        bucket.replaceConfiguration(configuration, TokensInheritanceStrategy.AS_IS);
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+
+/**
+ * Measures the payload of requests whose cost depends on their size but that come without a
+ * Content-Length, chunked ones for example, by counting the bytes as the body is read. Nothing is
+ * buffered: once the body has been bound, {@link #payloadBytes} tells how much of it there was.
+ */
+@Component
+public class PayloadSizeFilter extends OncePerRequestFilter {
+
+    private final RoutePolicyTable routePolicyTable;
+
+    public PayloadSizeFilter(RoutePolicyTable routePolicyTable) {
+        this.routePolicyTable = routePolicyTable;
+    }
+
+    /**
+     * The Content-Length of the request, otherwise the bytes of the body read so far.
+     */
+    public static long payloadBytes(HttpServletRequest request) {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength >= 0) {
+            return contentLength;
+        }
+
+        var counting = WebUtils.getNativeRequest(request, CountingRequest.class);
+        return counting == null || counting.inputStream == null ? 0 : counting.inputStream.count;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getContentLengthLong() >= 0
+                || !routePolicyTable.cost(HttpMethod.valueOf(request.getMethod()), request.getRequestURI())
+                        .dependsOnSize();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        chain.doFilter(new CountingRequest(request), response);
+    }
+
+    private static final class CountingRequest extends HttpServletRequestWrapper {
+        private CountingInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingInputStream(super.getInputStream());
+            }
+            return inputStream;
+        }
+    }
+
+    private static final class CountingInputStream extends ServletInputStream {
+        private final ServletInputStream delegate;
+        private long count;
+
+        CountingInputStream(ServletInputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = delegate.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+}
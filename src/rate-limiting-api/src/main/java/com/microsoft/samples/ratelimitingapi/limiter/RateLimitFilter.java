@@ -0,0 +1,97 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Takes the token for {@code POST /messages} before the request reaches Spring MVC, so a request
+ * that is turned away is never bound, logged or serialized: it gets the pre-encoded
+ * {@link RejectionResponse} and nothing else. An accepted request carries its probe to the
+ * controller in the {@link #PROBE_ATTRIBUTE} request attribute.
+ *
+ * The request is charged its {@link RequestCost} by its Content-Length. One whose size is not known
+ * up front, or that costs more than the limit, is left to the controller, which charges it once the
+ * body has been read or turns it away as too large.
+ *
+ * Only applies when the client key is known without the body, so not with the FIELD key strategy,
+ * and not with smoothing, which queues requests over the limit instead of rejecting them.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ratelimit.smoothing.enabled", havingValue = "false", matchIfMissing = true)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    public static final String PROBE_ATTRIBUTE = RateLimitFilter.class.getName() + ".probe";
+
+    private static final String PATH = "/messages";
+    private static final Duration REJECTION_LOG_INTERVAL = Duration.ofSeconds(10);
+
+    private final RateLimiter rateLimiter;
+    private final ClientKeyResolver clientKeyResolver;
+    private final RoutePolicy policy;
+    private final RequestCost cost;
+    private final RateLimitMetrics.PolicyMeters meters;
+    private final RejectionResponse rejectionResponse;
+    private final boolean enabled;
+    private final SampledLog rejections = new SampledLog(log, "Rate limit exceeded", REJECTION_LOG_INTERVAL);
+
+    public RateLimitFilter(RateLimiterRegistry rateLimiterRegistry, ClientKeyResolver clientKeyResolver,
+            RoutePolicyTable routePolicyTable, RateLimitMetrics rateLimitMetrics, RejectionResponse rejectionResponse) {
+        this.clientKeyResolver = clientKeyResolver;
+        this.policy = routePolicyTable.resolve(HttpMethod.POST, PATH);
+        this.cost = routePolicyTable.cost(HttpMethod.POST, PATH);
+        this.rateLimiter = rateLimiterRegistry.forPolicy(policy);
+        this.meters = rateLimitMetrics.forPolicy(policy);
+        this.rejectionResponse = rejectionResponse;
+        this.enabled = clientKeyResolver.getStrategy() != ClientKeyStrategy.FIELD;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !HttpMethod.POST.matches(request.getMethod()) || !PATH.equals(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        long tokens = cost.tokens(Math.max(contentLength, 0));
+        if (contentLength < 0 && cost.dependsOnSize() || tokens > policy.getLimit()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = clientKeyResolver.resolve(request, null);
+
+        ConsumptionProbe probe;
+        try {
+            long startNanos = System.nanoTime();
+            probe = rateLimiter.tryConsume(key, tokens);
+            meters.record(probe, System.nanoTime() - startNanos);
+        } catch (Exception e) {
+            // The controller tries again and reports the failure in its own response
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (!probe.isConsumed()) {
+            rejections.record();
+            rejectionResponse.write(response, policy, probe);
+            return;
+        }
+
+        request.setAttribute(PROBE_ATTRIBUTE, probe);
+        chain.doFilter(request, response);
+    }
+}
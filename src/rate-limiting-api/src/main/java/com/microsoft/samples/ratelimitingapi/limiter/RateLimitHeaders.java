@@ -0,0 +1,76 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translates a consumption probe into the RateLimit header fields and, when rejected, Retry-After.
+ * Waits are rounded up so a client that honours them never comes back too early, and saturate
+ * instead of overflowing. The wait for a rejection is capped at the time to a full bucket, since a
+ * probe for more tokens than the bucket holds waits forever, and is never under a second or a
+ * millisecond, so a client always backs off.
+ */
+public final class RateLimitHeaders {
+
+    public static final String LIMIT = "RateLimit-Limit";
+    public static final String REMAINING = "RateLimit-Remaining";
+    public static final String RESET = "RateLimit-Reset";
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private RateLimitHeaders() {
+    }
+
+    public static HttpHeaders from(RoutePolicy policy, ConsumptionProbe probe) {
+        var headers = new HttpHeaders();
+        headers.set(LIMIT, Long.toString(policy.getLimit()));
+        headers.set(REMAINING, Long.toString(probe.getRemainingTokens()));
+        headers.set(RESET, Long.toString(toSeconds(probe.getNanosToWaitForReset())));
+
+        if (!probe.isConsumed()) {
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds(probe)));
+        }
+
+        return headers;
+    }
+
+    /**
+     * Same fields as {@link #from}, set directly on the response.
+     */
+    public static void apply(HttpServletResponse response, RoutePolicy policy, ConsumptionProbe probe) {
+        response.setHeader(LIMIT, Long.toString(policy.getLimit()));
+        response.setHeader(REMAINING, Long.toString(probe.getRemainingTokens()));
+        response.setHeader(RESET, Long.toString(toSeconds(probe.getNanosToWaitForReset())));
+
+        if (!probe.isConsumed()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds(probe)));
+        }
+    }
+
+    public static long retryAfterMillis(ConsumptionProbe probe) {
+        return probe.isConsumed() ? 0 : Math.max(1, roundUp(retryWaitNanos(probe), MILLI));
+    }
+
+    private static long retryAfterSeconds(ConsumptionProbe probe) {
+        return Math.max(1, toSeconds(retryWaitNanos(probe)));
+    }
+
+    private static long retryWaitNanos(ConsumptionProbe probe) {
+        return Math.min(probe.getNanosToWaitForRefill(), probe.getNanosToWaitForReset());
+    }
+
+    private static long toSeconds(long nanos) {
+        return roundUp(nanos, SECOND);
+    }
+
+    private static long roundUp(long nanos, long unitNanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return nanos / unitNanos + (nanos % unitNanos == 0 ? 0 : 1);
+    }
+}
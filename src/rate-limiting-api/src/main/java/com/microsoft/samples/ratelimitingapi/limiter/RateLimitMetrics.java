@@ -0,0 +1,83 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token consumption metrics, registered once per policy at startup. Callers look up their
+ * policy's {@link PolicyMeters} once and record on it directly, so the request path builds no
+ * tags and does no registry lookups.
+ */
+@Component
+public class RateLimitMetrics {
+
+    private final Map<String, PolicyMeters> meters = new HashMap<>();
+
+    public RateLimitMetrics(RoutePolicyTable routePolicyTable, MeterRegistry meterRegistry) {
+        routePolicyTable.policies().forEach(policy -> meters.put(policy.getName(), new PolicyMeters(policy, meterRegistry)));
+    }
+
+    public PolicyMeters forPolicy(RoutePolicy policy) {
+        return meters.get(policy.getName());
+    }
+
+    public static class PolicyMeters {
+        private final Timer consumed;
+        private final Timer rejected;
+        private final DistributionSummary remaining;
+        private final Counter replayed;
+
+        PolicyMeters(RoutePolicy policy, MeterRegistry meterRegistry) {
+            consumed = acquireTimer(policy, "consumed", meterRegistry);
+            rejected = acquireTimer(policy, "rejected", meterRegistry);
+            remaining = DistributionSummary.builder("ratelimit_bucket_remaining")
+                    .description("Tokens left in the bucket after each consumption attempt")
+                    .baseUnit("tokens")
+                    .tag("policy", policy.getName())
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue((double) policy.getLimit())
+                    .register(meterRegistry);
+            replayed = Counter.builder("ratelimit_idempotent_replays")
+                    .description("Messages answered with the response they were given before, taking no token")
+                    .tag("policy", policy.getName())
+                    .register(meterRegistry);
+
+            // Shows which limits each replica is on while a change spreads
+            Gauge.builder("ratelimit_policy_revision", policy, RoutePolicy::getRevision)
+                    .description("Revision of the limits in place, 0 for the configured ones")
+                    .tag("policy", policy.getName())
+                    .register(meterRegistry);
+            Gauge.builder("ratelimit_policy_limit", policy, RoutePolicy::getLimit)
+                    .description("Capacity of the tightest bandwidth in place")
+                    .baseUnit("tokens")
+                    .tag("policy", policy.getName())
+                    .register(meterRegistry);
+        }
+
+        private static Timer acquireTimer(RoutePolicy policy, String outcome, MeterRegistry meterRegistry) {
+            return Timer.builder("ratelimit_acquire")
+                    .description("Time taken to consume tokens from the bucket")
+                    .tags("policy", policy.getName(), "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        public void record(ConsumptionProbe probe, long elapsedNanos) {
+            (probe.isConsumed() ? consumed : rejected).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            remaining.record(probe.getRemainingTokens());
+        }
+
+        public void replayed() {
+            replayed.increment();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.ConsumptionProbe;
+
+/**
+ * The limit of one policy, kept separately for every client key. Results are reported as bucket4j
+ * probes whatever the engine, so headers and metrics do not depend on which one is configured.
+ */
+public interface RateLimiter {
+
+    /**
+     * Takes all {@code tokens} or none.
+     */
+    ConsumptionProbe tryConsume(String key, long tokens);
+
+    /**
+     * Takes as many of {@code tokens} as are available and returns how many that was.
+     */
+    long tryConsumeAsMuchAsPossible(String key, long tokens);
+
+    /**
+     * The probe {@link #tryConsume} would return right now, without taking anything: consumed if
+     * {@code tokens} are available, with the tokens available before rather than after. Always
+     * consumed for no tokens.
+     */
+    ConsumptionProbe peek(String key, long tokens);
+
+    /**
+     * Moves every key onto the limits now in place in the policy, keeping the tokens it had.
+     */
+    void reconfigure();
+}
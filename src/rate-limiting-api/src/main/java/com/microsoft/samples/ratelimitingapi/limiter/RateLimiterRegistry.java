@@ -0,0 +1,47 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import io.github.bucket4j.TimeMeter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds one {@link RateLimiter} per policy, built by the configured {@link LimiterEngine}.
+ */
+@Slf4j
+@Component
+public class RateLimiterRegistry {
+
+    private final Map<String, RateLimiter> limiters;
+
+    public RateLimiterRegistry(BucketFactory bucketFactory, RoutePolicyTable routePolicyTable,
+            RateLimitConfig rateLimitConfig) {
+        LimiterConfig limiter = rateLimitConfig.getRatelimit();
+        ClientConfig client = limiter.getClient();
+        if (limiter.getEngine() == LimiterEngine.GCRA && limiter.getMode() != LimiterMode.LOCAL) {
+            throw new IllegalStateException("The GCRA engine keeps its state in memory and only runs in local mode");
+        }
+
+        Map<String, RateLimiter> policyLimiters = new HashMap<>();
+        for (RoutePolicy policy : routePolicyTable.policies()) {
+            policyLimiters.put(policy.getName(), switch (limiter.getEngine()) {
+                case BUCKET4J -> new BucketRateLimiter(policy, bucketFactory, client);
+                case GCRA -> new GcraRateLimiter(policy, client.getMaxClients(), TimeMeter.SYSTEM_NANOTIME);
+            });
+        }
+        this.limiters = Map.copyOf(policyLimiters);
+
+        log.info("Rate limiters in {} mode with the {} engine keyed by {}, max clients: {}, idle timeout: {}",
+                limiter.getMode(), limiter.getEngine(), client.getKeyStrategy(), client.getMaxClients(),
+                client.getIdleTimeout());
+    }
+
+    public RateLimiter forPolicy(RoutePolicy policy) {
+        return limiters.get(policy.getName());
+    }
+}
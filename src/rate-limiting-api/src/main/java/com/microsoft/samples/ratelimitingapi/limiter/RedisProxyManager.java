@@ -0,0 +1,110 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AbstractCompareAndSwapBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.AsyncCompareAndSwapOperation;
+import io.github.bucket4j.distributed.proxy.generic.compare_and_swap.CompareAndSwapOperation;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Stores bucket state in Redis and updates it with compare-and-swap Lua scripts, so every
+ * replica sees and spends from the same bucket.
+ */
+public class RedisProxyManager extends AbstractCompareAndSwapBasedProxyManager<String> implements AutoCloseable {
+
+    private static final String CREATE_SCRIPT = "return redis.call('set', KEYS[1], ARGV[1], 'nx', 'px', ARGV[2]) and 1 or 0";
+    private static final String SWAP_SCRIPT = "if redis.call('get', KEYS[1]) == ARGV[1] then "
+            + "redis.call('psetex', KEYS[1], ARGV[3], ARGV[2]); return 1; else return 0; end";
+
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<byte[], byte[]> connection;
+    private final String keyPrefix;
+    private final byte[] ttlMillis;
+
+    public RedisProxyManager(RedisClient redisClient, String keyPrefix, Duration ttl) {
+        super(ClientSideConfig.getDefault());
+        this.redisClient = redisClient;
+        this.connection = redisClient.connect(ByteArrayCodec.INSTANCE);
+        this.keyPrefix = keyPrefix;
+        this.ttlMillis = encode(Long.toString(ttl.toMillis()));
+    }
+
+    @Override
+    protected CompareAndSwapOperation beginCompareAndSwapOperation(String key) {
+        byte[][] keys = { encode(keyPrefix + key) };
+
+        return new CompareAndSwapOperation() {
+            @Override
+            public Optional<byte[]> getStateData() {
+                return Optional.ofNullable(connection.sync().get(keys[0]));
+            }
+
+            @Override
+            public boolean compareAndSwap(byte[] originalData, byte[] newData, RemoteBucketState newState) {
+                Long swapped = originalData == null
+                        ? connection.sync().eval(CREATE_SCRIPT, ScriptOutputType.INTEGER, keys, newData, ttlMillis)
+                        : connection.sync().eval(SWAP_SCRIPT, ScriptOutputType.INTEGER, keys, originalData, newData,
+                                ttlMillis);
+                return swapped != null && swapped == 1;
+            }
+        };
+    }
+
+    @Override
+    protected AsyncCompareAndSwapOperation beginAsyncCompareAndSwapOperation(String key) {
+        byte[][] keys = { encode(keyPrefix + key) };
+
+        return new AsyncCompareAndSwapOperation() {
+            @Override
+            public CompletableFuture<Optional<byte[]>> getStateData() {
+                return connection.async().get(keys[0]).thenApply(Optional::ofNullable).toCompletableFuture();
+            }
+
+            @Override
+            public CompletableFuture<Boolean> compareAndSwap(byte[] originalData, byte[] newData,
+                    RemoteBucketState newState) {
+                var swapped = originalData == null
+                        ? connection.async().<Long>eval(CREATE_SCRIPT, ScriptOutputType.INTEGER, keys, newData,
+                                ttlMillis)
+                        : connection.async().<Long>eval(SWAP_SCRIPT, ScriptOutputType.INTEGER, keys, originalData,
+                                newData, ttlMillis);
+                return swapped.thenApply(result -> result != null && result == 1).toCompletableFuture();
+            }
+        };
+    }
+
+    @Override
+    public void removeProxy(String key) {
+        connection.sync().del(encode(keyPrefix + key));
+    }
+
+    @Override
+    protected CompletableFuture<Void> removeAsync(String key) {
+        return connection.async().del(encode(keyPrefix + key)).thenAccept(deleted -> {
+        }).toCompletableFuture();
+    }
+
+    @Override
+    public boolean isAsyncModeSupported() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,11 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+/**
+ * How a bandwidth gives tokens back.
+ */
+public enum RefillStrategy {
+    /** Tokens trickle back as soon as possible, spreading the refill over the period. */
+    GREEDY,
+    /** All tokens come back at once at the end of each period. */
+    INTERVALLY
+}
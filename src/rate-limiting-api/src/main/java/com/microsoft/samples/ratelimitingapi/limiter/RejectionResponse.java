@@ -0,0 +1,83 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.Replica;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import io.github.bucket4j.ConsumptionProbe;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the 429 for a single message straight to the servlet response. The body is the same JSON
+ * the controller would write, encoded once at startup around the only value that changes,
+ * {@code retryAfterMillis}, so a rejection costs no result object and no serialization.
+ */
+@Component
+public class RejectionResponse {
+
+    private static final long PLACEHOLDER = Long.MIN_VALUE;
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    public RejectionResponse(ObjectMapper objectMapper) throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(SendMessageResult.builder()
+                .message("Rate limit exceeded.")
+                .success(false)
+                .retryAfterMillis(PLACEHOLDER)
+                .servedBy(Replica.NAME)
+                .build());
+
+        byte[] placeholder = Long.toString(PLACEHOLDER).getBytes(StandardCharsets.US_ASCII);
+        int at = indexOf(json, placeholder);
+        this.prefix = Arrays.copyOfRange(json, 0, at);
+        this.suffix = Arrays.copyOfRange(json, at + placeholder.length, json.length);
+    }
+
+    public void write(HttpServletResponse response, RoutePolicy policy, ConsumptionProbe probe) throws IOException {
+        long retryAfterMillis = RateLimitHeaders.retryAfterMillis(probe);
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        RateLimitHeaders.apply(response, policy, probe);
+
+        byte[] body = body(retryAfterMillis);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * The prefix, the digits of {@code retryAfterMillis} and the suffix in one array, so the body
+     * is a single write.
+     */
+    private byte[] body(long retryAfterMillis) {
+        int digits = 1;
+        for (long rest = retryAfterMillis; rest >= 10; rest /= 10) {
+            digits++;
+        }
+
+        byte[] body = Arrays.copyOf(prefix, prefix.length + digits + suffix.length);
+        for (int i = prefix.length + digits - 1; i >= prefix.length; i--) {
+            body[i] = (byte) ('0' + retryAfterMillis % 10);
+            retryAfterMillis /= 10;
+        }
+        System.arraycopy(suffix, 0, body, prefix.length + digits, suffix.length);
+        return body;
+    }
+
+    private static int indexOf(byte[] json, byte[] value) {
+        for (int i = 0; i <= json.length - value.length; i++) {
+            if (Arrays.equals(json, i, i + value.length, value, 0, value.length)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("retryAfterMillis not found in the encoded rejection");
+    }
+}
@@ -0,0 +1,66 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.CostConfig;
+
+/**
+ * Tokens a request costs: a fixed number per request plus one per started {@code bytesPerToken}
+ * bytes of payload, and never less than one. With {@code bytesPerToken} 0 every request costs the
+ * same, which is the one token per request the service started out with.
+ */
+public final class RequestCost {
+
+    private final long requestTokens;
+    private final long bytesPerToken;
+
+    private RequestCost(long requestTokens, long bytesPerToken) {
+        this.requestTokens = requestTokens;
+        this.bytesPerToken = bytesPerToken;
+    }
+
+    static RequestCost compile(CostConfig cost) {
+        if (cost.getRequestTokens() < 0 || cost.getBytesPerToken() < 0) {
+            throw new IllegalStateException("Rate limit cost cannot be negative");
+        }
+
+        return new RequestCost(cost.getRequestTokens(), cost.getBytesPerToken());
+    }
+
+    public boolean dependsOnSize() {
+        return bytesPerToken > 0;
+    }
+
+    public long tokens(long bytes) {
+        long sizeTokens = dependsOnSize() ? (bytes + bytesPerToken - 1) / bytesPerToken : 0;
+        return Math.max(1, requestTokens + sizeTokens);
+    }
+
+    /**
+     * Cost of a message that has already been read, by the length of its UTF-8 encoding.
+     */
+    public long tokens(String message) {
+        return dependsOnSize() ? tokens(utf8Length(message)) : tokens(0);
+    }
+
+    private static long utf8Length(String message) {
+        if (message == null) {
+            return 0;
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < message.length()
+                    && Character.isLowSurrogate(message.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
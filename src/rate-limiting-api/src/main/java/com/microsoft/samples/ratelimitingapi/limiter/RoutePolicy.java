@@ -0,0 +1,57 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.BucketConfiguration;
+
+/**
+ * A named limit compiled into the bucket configuration every bucket of the policy shares.
+ * {@code limit} is the capacity of the tightest bandwidth, the most a client can send back to back.
+ *
+ * The limits can be replaced while the service runs. Each replacement carries a revision, and one
+ * that is not newer than the limits in place is ignored, so replicas that hear about the same
+ * changes in a different order or more than once still end up on the latest.
+ */
+public class RoutePolicy {
+
+    private record Limits(BucketConfiguration configuration, long limit, long revision) {
+    }
+
+    private final String name;
+    private volatile Limits limits;
+
+    public RoutePolicy(String name, BucketConfiguration configuration, long limit) {
+        this.name = name;
+        this.limits = new Limits(configuration, limit, 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BucketConfiguration getConfiguration() {
+        return limits.configuration();
+    }
+
+    public long getLimit() {
+        return limits.limit();
+    }
+
+    /**
+     * 0 for the limits the service started with.
+     */
+    public long getRevision() {
+        return limits.revision();
+    }
+
+    /**
+     * Replaces the limits unless {@code revision} is not newer than the current one, and returns
+     * whether they were replaced.
+     */
+    synchronized boolean update(BucketConfiguration configuration, long limit, long revision) {
+        if (revision <= limits.revision()) {
+            return false;
+        }
+
+        limits = new Limits(configuration, limit, revision);
+        return true;
+    }
+}
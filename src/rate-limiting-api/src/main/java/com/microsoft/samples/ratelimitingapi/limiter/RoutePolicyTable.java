@@ -0,0 +1,150 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RouteConfig;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable route to policy and cost lookup, compiled once from configuration at startup.
+ * Routes that are not listed fall back to the default policy and cost. The routes and policies are fixed,
+ * the limits of a policy can be replaced with {@link #reconfigure}.
+ */
+@Slf4j
+public class RoutePolicyTable {
+
+    private final Map<String, RoutePolicy> routes;
+    private final RoutePolicy defaultPolicy;
+    private final Map<String, RoutePolicy> policies;
+    private final Map<String, RequestCost> costs;
+    private final RequestCost defaultCost;
+
+    private RoutePolicyTable(Map<String, RoutePolicy> routes, RoutePolicy defaultPolicy,
+            Map<String, RoutePolicy> policies, Map<String, RequestCost> costs, RequestCost defaultCost) {
+        this.routes = routes;
+        this.defaultPolicy = defaultPolicy;
+        this.policies = policies;
+        this.costs = costs;
+        this.defaultCost = defaultCost;
+    }
+
+    public static RoutePolicyTable compile(LimiterConfig limiterConfig) {
+        Map<String, RoutePolicy> policies = new HashMap<>();
+        limiterConfig.getPolicies().forEach((name, policy) -> policies.put(name, compilePolicy(name, policy)));
+
+        RoutePolicy defaultPolicy = lookupPolicy(policies, limiterConfig.getDefaultPolicy());
+        RequestCost defaultCost = RequestCost.compile(limiterConfig.getCost());
+
+        Map<String, RoutePolicy> routes = new HashMap<>();
+        Map<String, RequestCost> costs = new HashMap<>();
+        for (RouteConfig route : limiterConfig.getRoutes()) {
+            var policy = lookupPolicy(policies, route.getPolicy());
+            var routeKey = routeKey(HttpMethod.valueOf(route.getMethod().toUpperCase()), route.getPath());
+            if (routes.putIfAbsent(routeKey, policy) != null) {
+                throw new IllegalStateException("Duplicate rate limit route: " + routeKey);
+            }
+            if (route.getCost() != null) {
+                costs.put(routeKey, RequestCost.compile(route.getCost()));
+            }
+
+            log.info("Rate limit policy {} applied to {}", policy.getName(), routeKey);
+        }
+
+        return new RoutePolicyTable(Map.copyOf(routes), defaultPolicy, Map.copyOf(policies), Map.copyOf(costs),
+                defaultCost);
+    }
+
+    public RoutePolicy resolve(HttpMethod method, String path) {
+        return routes.getOrDefault(routeKey(method, path), defaultPolicy);
+    }
+
+    public RequestCost cost(HttpMethod method, String path) {
+        return costs.getOrDefault(routeKey(method, path), defaultCost);
+    }
+
+    public Collection<RoutePolicy> policies() {
+        return policies.values();
+    }
+
+    public RoutePolicy policy(String name) {
+        return lookupPolicy(policies, name);
+    }
+
+    /**
+     * Throws if {@code policyConfig} could not replace the limits of the named policy, so a bad
+     * change is refused before it reaches any replica.
+     */
+    public void validate(String name, PolicyConfig policyConfig) {
+        compilePolicy(lookupPolicy(policies, name).getName(), policyConfig);
+    }
+
+    /**
+     * Replaces the limits of the named policy unless limits of a newer revision are already in
+     * place. Returns whether they were replaced; keys limited before keep their old limits until
+     * they are moved over with {@link RateLimiter#reconfigure}.
+     */
+    public boolean reconfigure(String name, PolicyConfig policyConfig, long revision) {
+        var policy = lookupPolicy(policies, name);
+        var compiled = compilePolicy(name, policyConfig);
+        return policy.update(compiled.getConfiguration(), compiled.getLimit(), revision);
+    }
+
+    private static RoutePolicy lookupPolicy(Map<String, RoutePolicy> policies, String name) {
+        var policy = policies.get(name);
+        if (policy == null) {
+            throw new IllegalStateException("Unknown rate limit policy: " + name);
+        }
+        return policy;
+    }
+
+    private static RoutePolicy compilePolicy(String name, PolicyConfig policy) {
+        if (policy.getBandwidths().isEmpty()) {
+            throw new IllegalStateException("Rate limit policy " + name + " has no bandwidths");
+        }
+
+        var builder = BucketConfiguration.builder();
+        long limit = Long.MAX_VALUE;
+        var bandwidths = policy.getBandwidths();
+        for (int i = 0; i < bandwidths.size(); i++) {
+            var bandwidth = bandwidths.get(i);
+            builder.addLimit(compileBandwidth(bandwidth, i));
+            limit = Math.min(limit, bandwidth.getCapacity());
+        }
+
+        return new RoutePolicy(name, builder.build(), limit);
+    }
+
+    /**
+     * When limits change, the tokens of a bandwidth carry over to the new bandwidth with the same
+     * id, which is its position unless configured.
+     */
+    private static Bandwidth compileBandwidth(BandwidthConfig bandwidth, int position) {
+        if (bandwidth.getRefillPeriod() == null) {
+            throw new IllegalStateException("Rate limit bandwidth has no refill period");
+        }
+
+        var refill = Bandwidth.builder().capacity(bandwidth.getCapacity());
+        var limit = switch (bandwidth.getRefill()) {
+            case GREEDY -> refill.refillGreedy(bandwidth.getRefillTokens(), bandwidth.getRefillPeriod());
+            case INTERVALLY -> refill.refillIntervally(bandwidth.getRefillTokens(), bandwidth.getRefillPeriod());
+        };
+
+        limit = limit.id(bandwidth.getId() != null ? bandwidth.getId() : Integer.toString(position));
+        if (bandwidth.getInitialTokens() != null) {
+            limit = limit.initialTokens(bandwidth.getInitialTokens());
+        }
+        return limit.build();
+    }
+
+    private static String routeKey(HttpMethod method, String path) {
+        return method.name() + " " + path;
+    }
+}
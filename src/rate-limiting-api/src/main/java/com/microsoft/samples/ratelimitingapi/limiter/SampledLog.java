@@ -0,0 +1,37 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs an event that can happen on every request at most once per interval, together with how
+ * often it happened since the last line, so an overload does not also flood the logs.
+ */
+public class SampledLog {
+
+    private final Logger log;
+    private final String message;
+    private final long intervalNanos;
+    private final LongAdder occurrences = new LongAdder();
+    private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+
+    public SampledLog(Logger log, String message, Duration interval) {
+        this.log = log;
+        this.message = message;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    public void record() {
+        occurrences.increment();
+
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            log.warn("{} {} times in the last {} s", message, occurrences.sumThenReset(),
+                    Duration.ofNanos(intervalNanos).toSeconds());
+        }
+    }
+}
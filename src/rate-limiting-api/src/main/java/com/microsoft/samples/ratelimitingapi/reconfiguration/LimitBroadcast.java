@@ -0,0 +1,23 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries limit changes to every replica of the service, the one they were made on included.
+ */
+public interface LimitBroadcast {
+
+    /**
+     * Gives the change the next revision and sends it to all subscribers.
+     */
+    LimitUpdate publish(String policy, PolicyConfig limits);
+
+    /**
+     * Delivers the latest update of each policy published so far, then every update published
+     * from now on. An update can arrive more than once and out of order, subscribers go by its
+     * revision.
+     */
+    void subscribe(Consumer<LimitUpdate> listener);
+}
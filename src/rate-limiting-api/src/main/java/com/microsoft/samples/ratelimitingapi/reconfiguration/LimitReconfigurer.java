@@ -0,0 +1,52 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiterRegistry;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Changes rate limits while the service runs, without a restart that would empty every bucket.
+ *
+ * A change is checked on the replica it was made on, then broadcast, and every replica applies
+ * it on its own: the policy's limits are replaced and its live keys moved onto them with the
+ * tokens they had. Requests keep flowing throughout.
+ */
+@Slf4j
+@Component
+public class LimitReconfigurer {
+
+    private final RoutePolicyTable routePolicyTable;
+    private final RateLimiterRegistry rateLimiterRegistry;
+    private final LimitBroadcast limitBroadcast;
+
+    public LimitReconfigurer(RoutePolicyTable routePolicyTable, RateLimiterRegistry rateLimiterRegistry,
+            LimitBroadcast limitBroadcast) {
+        this.routePolicyTable = routePolicyTable;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.limitBroadcast = limitBroadcast;
+
+        limitBroadcast.subscribe(this::apply);
+    }
+
+    /**
+     * Throws {@link IllegalStateException} or {@link IllegalArgumentException} if the policy does
+     * not exist or the limits are not valid, before anything is broadcast.
+     */
+    public LimitUpdate change(String policy, PolicyConfig limits) {
+        routePolicyTable.validate(policy, limits);
+        return limitBroadcast.publish(policy, limits);
+    }
+
+    void apply(LimitUpdate update) {
+        try {
+            if (routePolicyTable.reconfigure(update.getPolicy(), update.getLimits(), update.getRevision())) {
+                rateLimiterRegistry.forPolicy(routePolicyTable.policy(update.getPolicy())).reconfigure();
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not apply limits of revision {} to policy {}: {}", update.getRevision(),
+                    update.getPolicy(), e.getMessage());
+        }
+    }
+}
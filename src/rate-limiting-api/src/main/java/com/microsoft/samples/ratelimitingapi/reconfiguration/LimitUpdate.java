@@ -0,0 +1,19 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * New limits for one policy as they travel between replicas. Revisions are handed out by the
+ * {@link LimitBroadcast} and only ever grow.
+ */
+@Value
+@Jacksonized
+@Builder
+public class LimitUpdate {
+    String policy;
+    long revision;
+    PolicyConfig limits;
+}
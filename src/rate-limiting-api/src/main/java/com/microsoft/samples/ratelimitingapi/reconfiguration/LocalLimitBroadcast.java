@@ -0,0 +1,40 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Broadcast within one process. Changes reach only the replica they were made on, which is all
+ * there is to reach with a single replica; tests subscribe several replicas to one instance.
+ * Subscribers are called on the publishing thread, in revision order.
+ */
+public class LocalLimitBroadcast implements LimitBroadcast {
+
+    private final List<Consumer<LimitUpdate>> listeners = new ArrayList<>();
+    private final Map<String, LimitUpdate> latest = new HashMap<>();
+    private long revision;
+
+    @Override
+    public synchronized LimitUpdate publish(String policy, PolicyConfig limits) {
+        var update = LimitUpdate.builder()
+                .policy(policy)
+                .revision(++revision)
+                .limits(limits)
+                .build();
+
+        latest.put(policy, update);
+        listeners.forEach(listener -> listener.accept(update));
+        return update;
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<LimitUpdate> listener) {
+        latest.values().forEach(listener);
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,128 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Broadcast over Redis pub/sub. Revisions come from a Redis counter, so they are ordered across
+ * all replicas, and the latest update of each policy is kept in a hash that replicas read when
+ * they subscribe, so one that was down or starting while limits changed still picks them up.
+ *
+ * Updates are handed to subscribers on one thread of their own, never on Lettuce's event loop,
+ * since applying them may call Redis again.
+ */
+@Slf4j
+public class RedisLimitBroadcast implements LimitBroadcast, AutoCloseable {
+
+    // Stores and publishes the update unless a newer one of the same policy was stored in the meantime
+    private static final String PUBLISH_SCRIPT = "local latest = redis.call('hget', KEYS[1], ARGV[1]) "
+            + "if latest and cjson.decode(latest)['revision'] >= tonumber(ARGV[2]) then return 0 end "
+            + "redis.call('hset', KEYS[1], ARGV[1], ARGV[3]); redis.call('publish', ARGV[4], ARGV[3]); return 1";
+
+    private final RedisClient redisClient;
+    private final StatefulRedisConnection<String, String> connection;
+    private final StatefulRedisPubSubConnection<String, String> subscription;
+    private final ObjectMapper objectMapper;
+    private final String channel;
+    private final String[] latestKey;
+    private final String revisionKey;
+    private final List<Consumer<LimitUpdate>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService deliveries = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "limit-updates");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisLimitBroadcast(RedisClient redisClient, String channel, ObjectMapper objectMapper) {
+        this.redisClient = redisClient;
+        this.connection = redisClient.connect();
+        this.subscription = redisClient.connectPubSub();
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+        this.latestKey = new String[] { channel + ":latest" };
+        this.revisionKey = channel + ":revision";
+
+        subscription.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                deliver(message);
+            }
+        });
+        subscription.sync().subscribe(channel);
+
+        log.info("Broadcasting limit changes on Redis channel {}", channel);
+    }
+
+    @Override
+    public LimitUpdate publish(String policy, PolicyConfig limits) {
+        var update = LimitUpdate.builder()
+                .policy(policy)
+                .revision(connection.sync().incr(revisionKey))
+                .limits(limits)
+                .build();
+
+        Long published = connection.sync().eval(PUBLISH_SCRIPT, ScriptOutputType.INTEGER, latestKey, policy,
+                Long.toString(update.getRevision()), encode(update), channel);
+        if (published == null || published == 0) {
+            log.warn("Limits of revision {} for policy {} were superseded before they were published",
+                    update.getRevision(), policy);
+        }
+        return update;
+    }
+
+    /**
+     * Subscribed before the latest updates are read, so a change published in between is seen at
+     * least once.
+     */
+    @Override
+    public void subscribe(Consumer<LimitUpdate> listener) {
+        listeners.add(listener);
+        for (String message : connection.sync().hvals(latestKey[0])) {
+            deliveries.execute(() -> decode(message, listener));
+        }
+    }
+
+    @Override
+    public void close() {
+        deliveries.shutdownNow();
+        subscription.close();
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    private void deliver(String message) {
+        deliveries.execute(() -> listeners.forEach(listener -> decode(message, listener)));
+    }
+
+    private void decode(String message, Consumer<LimitUpdate> listener) {
+        LimitUpdate update;
+        try {
+            update = objectMapper.readValue(message, LimitUpdate.class);
+        } catch (JsonProcessingException e) {
+            log.error("Ignoring unreadable limit update on {}: {}", channel, e.getMessage());
+            return;
+        }
+        listener.accept(update);
+    }
+
+    private String encode(LimitUpdate update) {
+        try {
+            return objectMapper.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode limit update", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.microsoft.samples.ratelimitingapi.smoothing;
+
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import lombok.Value;
+
+@Value
+class QueuedMessage {
+    RoutePolicy policy;
+    RateLimiter rateLimiter;
+    String key;
+    long tokens;
+    SendMessageRequest request;
+    long enqueuedAtNanos;
+}
@@ -0,0 +1,229 @@
+package com.microsoft.samples.ratelimitingapi.smoothing;
+
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.config.SmoothingConfig;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accept-and-delay alternative to rejecting requests over the limit.
+ *
+ * Accepted messages wait in line behind the earlier ones of their client, and a single drainer
+ * takes turns between the clients. It hands on a client's next message once its tokens are there,
+ * and otherwise comes back to that client when the next token is due rather than polling for it,
+ * so a client that is out of tokens only holds back its own messages.
+ * Once the messages waiting reach the high-water mark new ones are refused so callers get a 429
+ * instead of an ever-growing delay.
+ *
+ * The drainer sleeps for at most {@link #MAX_SLEEP} at a time and checks a message against the
+ * limit in place before every attempt. A message that costs more than the limit, because the
+ * limit was lowered while it waited, would never get its tokens; it is dropped and counted rather
+ * than holding up its client's messages behind it forever.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "ratelimit.smoothing.enabled", havingValue = "true")
+public class SmoothingQueue implements AutoCloseable {
+
+    private static final Duration MAX_SLEEP = Duration.ofSeconds(1);
+
+    /**
+     * The messages of one client under one limiter.
+     */
+    private record Lane(RateLimiter rateLimiter, String key) {
+    }
+
+    private record Turn(Lane lane, long dueAtNanos, long sequence) {
+    }
+
+    private final Map<Lane, Deque<QueuedMessage>> lanes = new HashMap<>();
+    // One turn for every lane with messages, except the one being drained
+    private final PriorityQueue<Turn> turns = new PriorityQueue<>(
+            Comparator.comparingLong(Turn::dueAtNanos).thenComparingLong(Turn::sequence));
+    private final int capacity;
+    private final int highWaterMark;
+    private final Thread drainer;
+    private final Timer waitTimer;
+    private final Counter drainedCounter;
+    private final Counter rejectedCounter;
+    private final Counter droppedCounter;
+    private int depth;
+    private long sequence;
+
+    public SmoothingQueue(RateLimitConfig rateLimitConfig, MeterRegistry meterRegistry) {
+        SmoothingConfig smoothing = rateLimitConfig.getRatelimit().getSmoothing();
+        this.capacity = smoothing.getCapacity();
+        this.highWaterMark = Math.min(smoothing.getHighWaterMark(), smoothing.getCapacity());
+
+        Gauge.builder("smoothing_queue_depth", this, SmoothingQueue::depth)
+                .description("Messages waiting for a token")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("smoothing_queue_wait")
+                .description("Time a message waited in the queue before it was processed")
+                .register(meterRegistry);
+        drainedCounter = meterRegistry.counter("smoothing_queue_drained");
+        rejectedCounter = meterRegistry.counter("smoothing_queue_rejected");
+        droppedCounter = meterRegistry.counter("smoothing_queue_dropped");
+
+        drainer = new Thread(this::drain, "smoothing-queue-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+
+        log.info("Smoothing queue enabled, capacity: {}, high-water mark: {}", smoothing.getCapacity(),
+                highWaterMark);
+    }
+
+    public synchronized boolean offer(RoutePolicy policy, RateLimiter rateLimiter, String key, long tokens,
+            SendMessageRequest request) {
+        if (depth >= highWaterMark || depth >= capacity) {
+            rejectedCounter.increment();
+            return false;
+        }
+
+        var lane = new Lane(rateLimiter, key);
+        var messages = lanes.get(lane);
+        if (messages == null) {
+            messages = new ArrayDeque<>();
+            lanes.put(lane, messages);
+            schedule(lane, System.nanoTime());
+        }
+        messages.add(new QueuedMessage(policy, rateLimiter, key, tokens, request, System.nanoTime()));
+        depth++;
+        return true;
+    }
+
+    /**
+     * A rejection for a message refused because the queue is full. Its wait is how long until the
+     * queue has drained below the high-water mark, assuming it drains at the pace of the given
+     * client's limit and every message costs one token. An excess beyond what the bucket holds is
+     * estimated as a full bucket.
+     */
+    public ConsumptionProbe queueFull(RoutePolicy policy, RateLimiter rateLimiter, String key) {
+        long excess = Math.min(depth() - highWaterMark + 1, policy.getLimit());
+        ConsumptionProbe peek = rateLimiter.peek(key, Math.max(excess, 0));
+        return ConsumptionProbe.rejected(peek.getRemainingTokens(), excess <= 0 ? 0 : peek.getNanosToWaitForRefill(),
+                peek.getNanosToWaitForReset());
+    }
+
+    public synchronized int depth() {
+        return depth;
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                drain(nextLane());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Smoothing queue drain failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits for the turn of the client whose next message is due first.
+     */
+    private synchronized Lane nextLane() throws InterruptedException {
+        while (true) {
+            var turn = turns.peek();
+            if (turn == null) {
+                wait();
+                continue;
+            }
+
+            long nanosToWait = turn.dueAtNanos() - System.nanoTime();
+            if (nanosToWait <= 0) {
+                return turns.poll().lane();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, Math.min(nanosToWait, MAX_SLEEP.toNanos()));
+        }
+    }
+
+    /**
+     * Hands on the client's next message if its tokens are there, drops it if it costs more than
+     * the limit in place, and otherwise schedules the client's next turn for when they are due.
+     */
+    private void drain(Lane lane) {
+        var queued = head(lane);
+        if (queued.getTokens() > queued.getPolicy().getLimit()) {
+            log.error("Dropped message from smoothing queue, it costs {} tokens and the limit is now {}",
+                    queued.getTokens(), queued.getPolicy().getLimit());
+            droppedCounter.increment();
+            advance(lane, true, 0);
+            return;
+        }
+
+        ConsumptionProbe probe;
+        try {
+            probe = queued.getRateLimiter().tryConsume(queued.getKey(), queued.getTokens());
+        } catch (RuntimeException e) {
+            advance(lane, false, MAX_SLEEP.toNanos());
+            throw e;
+        }
+        if (!probe.isConsumed()) {
+            advance(lane, false, Math.min(probe.getNanosToWaitForRefill(), MAX_SLEEP.toNanos()));
+            return;
+        }
+        advance(lane, true, 0);
+
+        log.info("Message Processed from smoothing queue: {}", queued.getRequest().getMessage());
+
+        waitTimer.record(System.nanoTime() - queued.getEnqueuedAtNanos(), TimeUnit.NANOSECONDS);
+        drainedCounter.increment();
+    }
+
+    private synchronized QueuedMessage head(Lane lane) {
+        return lanes.get(lane).peek();
+    }
+
+    /**
+     * Removes the client's head message if it was handed on or dropped, and gives the client its
+     * next turn if it has messages left. A client whose message went through goes behind the
+     * others already due.
+     */
+    private synchronized void advance(Lane lane, boolean removeHead, long nanosToWait) {
+        var messages = lanes.get(lane);
+        if (removeHead) {
+            messages.poll();
+            depth--;
+        }
+        if (messages.isEmpty()) {
+            lanes.remove(lane);
+        } else {
+            schedule(lane, System.nanoTime() + nanosToWait);
+        }
+    }
+
+    private void schedule(Lane lane, long dueAtNanos) {
+        turns.add(new Turn(lane, dueAtNanos, sequence++));
+        notifyAll();
+    }
+
+    @Override
+    public void close() {
+        drainer.interrupt();
+        int waiting = depth();
+        if (waiting > 0) {
+            log.warn("Smoothing queue stopped with {} messages still waiting", waiting);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.microsoft.samples.ratelimitingapi;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiterRegistry;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LimitReconfigurer;
+import com.microsoft.samples.ratelimitingapi.reconfiguration.LocalLimitBroadcast;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LimitsControllerTests {
+
+    private static final String TOKEN = "operator-token";
+
+    private RoutePolicyTable routePolicyTable;
+
+    private LimitsController controller(boolean enabled, String token) {
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", limits(10));
+        limiterConfig.setDefaultPolicy("messages");
+        limiterConfig.getReconfiguration().setEnabled(enabled);
+        limiterConfig.getReconfiguration().setToken(token);
+
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+
+        routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+        var registry = new RateLimiterRegistry(new LocalBucketFactory(), routePolicyTable, rateLimitConfig);
+        return new LimitsController(routePolicyTable,
+                new LimitReconfigurer(routePolicyTable, registry, new LocalLimitBroadcast()), rateLimitConfig);
+    }
+
+    private static PolicyConfig limits(long capacity) {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(capacity);
+        bandwidth.setRefillTokens(capacity);
+        bandwidth.setRefillPeriod(Duration.ofMinutes(1));
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+        return policy;
+    }
+
+    private static HttpHeaders token(String token) {
+        var headers = new HttpHeaders();
+        if (token != null) {
+            headers.add("X-Admin-Token", token);
+        }
+        return headers;
+    }
+
+    @Test
+    void changesAreNotFoundWhileReconfigurationIsOff() {
+        var controller = controller(false, TOKEN);
+
+        var response = controller.changeLimits("messages", limits(20), token(TOKEN));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(routePolicyTable.policy("messages").getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void changesNeedTheOperatorToken() {
+        var controller = controller(true, TOKEN);
+
+        for (var presented : new String[] {null, "", "operator-tokem", TOKEN + "x"}) {
+            assertThat(controller.changeLimits("messages", limits(20), token(presented)).getStatusCode())
+                    .isEqualTo(HttpStatus.UNAUTHORIZED);
+        }
+        assertThat(routePolicyTable.policy("messages").getLimit()).isEqualTo(10);
+
+        var response = controller.changeLimits("messages", limits(20), token(TOKEN));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(routePolicyTable.policy("messages").getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void reconfigurationDoesNotStartWithoutAToken() {
+        assertThatThrownBy(() -> controller(true, " ")).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> controller(true, null)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,185 @@
+package com.microsoft.samples.ratelimitingapi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.CostConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.contract.BatchMode;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageBatchRequest;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import com.microsoft.samples.ratelimitingapi.idempotency.IdempotencyStore;
+import com.microsoft.samples.ratelimitingapi.limiter.ClientKeyResolver;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitHeaders;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitMetrics;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiterRegistry;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import com.microsoft.samples.ratelimitingapi.smoothing.SmoothingQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessagesControllerTests {
+
+    private static final int BURST = 25;
+
+    private static MessagesController controller(CostConfig cost) {
+        return controller(cost, null);
+    }
+
+    private static MessagesController controller(CostConfig cost, SmoothingQueue smoothingQueue) {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(BURST);
+        bandwidth.setRefillTokens(5);
+        bandwidth.setRefillPeriod(Duration.ofSeconds(1));
+
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", policy);
+        limiterConfig.setDefaultPolicy("messages");
+        limiterConfig.setCost(cost);
+
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+
+        var routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+        var beanFactory = new StaticListableBeanFactory();
+        if (smoothingQueue != null) {
+            beanFactory.addBean("smoothingQueue", smoothingQueue);
+        }
+        return new MessagesController(
+                new RateLimiterRegistry(new LocalBucketFactory(), routePolicyTable, rateLimitConfig),
+                new ClientKeyResolver(rateLimitConfig), routePolicyTable,
+                new RateLimitMetrics(routePolicyTable, new SimpleMeterRegistry()),
+                beanFactory.getBeanProvider(SmoothingQueue.class), beanFactory.getBeanProvider(IdempotencyStore.class),
+                new ObjectMapper());
+    }
+
+    private static SendMessageBatchRequest batch(BatchMode mode, String... messages) {
+        var requests = new ArrayList<SendMessageRequest>();
+        for (var message : messages) {
+            requests.add(SendMessageRequest.builder().message(message).build());
+        }
+        return SendMessageBatchRequest.builder().mode(mode).messages(requests).build();
+    }
+
+    private static String[] messages(int count) {
+        var messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = "message " + i;
+        }
+        return messages;
+    }
+
+    @Test
+    void batchThatFitsIsAcceptedWhole() {
+        var response = controller(new CostConfig())
+                .sendMessages(batch(BatchMode.ALL_OR_NOTHING, messages(3)), new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getAccepted()).isEqualTo(3);
+        assertThat(response.getBody().getResults()).allMatch(SendMessageResult::isSuccess);
+        assertThat(response.getHeaders().getFirst(RateLimitHeaders.REMAINING)).isEqualTo(String.valueOf(BURST - 3));
+        assertThat(response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)).isFalse();
+    }
+
+    @Test
+    void partialBatchBeyondTheBurstAcceptsWhatFitsWithPositiveWaits() {
+        var response = controller(new CostConfig())
+                .sendMessages(batch(BatchMode.PARTIAL, messages(100)), new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        var result = response.getBody();
+        assertThat(result.getAccepted()).isEqualTo(BURST);
+        assertThat(result.getResults().subList(0, BURST)).allMatch(SendMessageResult::isSuccess);
+        assertThat(result.getResults().subList(BURST, 100))
+                .allSatisfy(rejected -> {
+                    assertThat(rejected.isSuccess()).isFalse();
+                    assertThat(rejected.getRetryAfterMillis()).isPositive();
+                });
+        assertThat(result.getRetryAfterMillis()).isBetween(1L, 5_000L);
+        assertThat(Long.parseLong(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 5L);
+        assertThat(Long.parseLong(response.getHeaders().getFirst(RateLimitHeaders.RESET))).isNotNegative();
+    }
+
+    @Test
+    void messageThatCanNeverFitFailsAloneWith413() {
+        var cost = new CostConfig();
+        cost.setRequestTokens(0);
+        cost.setBytesPerToken(1);
+        var oversize = "x".repeat(BURST + 1);
+
+        var response = controller(cost)
+                .sendMessages(batch(BatchMode.PARTIAL, "a", oversize, "b"), new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        var results = response.getBody().getResults();
+        assertThat(results).extracting(SendMessageResult::isSuccess).containsExactly(true, false, true);
+        assertThat(results.get(1).getRetryAfterMillis()).isZero();
+        assertThat(response.getBody().getAccepted()).isEqualTo(2);
+    }
+
+    @Test
+    void atomicBatchBeyondTheLimitIsRefusedWithResults() {
+        var response = controller(new CostConfig())
+                .sendMessages(batch(BatchMode.ALL_OR_NOTHING, messages(BURST + 1)), new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+        assertThat(response.getBody().getResults()).hasSize(BURST + 1).noneMatch(SendMessageResult::isSuccess);
+        assertThat(response.getBody().getAccepted()).isZero();
+    }
+
+    @Test
+    void smoothingAcceptsMessagesOverTheLimitUntilTheHighWaterMark() {
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getSmoothing().setHighWaterMark(5);
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+
+        try (var smoothingQueue = new SmoothingQueue(rateLimitConfig, new SimpleMeterRegistry())) {
+            var controller = controller(new CostConfig(), smoothingQueue);
+            var message = SendMessageRequest.builder().message("hello").build();
+
+            var statuses = new ArrayList<HttpStatus>();
+            ResponseEntity<SendMessageResult> response;
+            do {
+                response = controller.sendMessage(message, new MockHttpServletRequest());
+                statuses.add((HttpStatus) response.getStatusCode());
+            } while (response.getStatusCode() == HttpStatus.ACCEPTED && statuses.size() < 100);
+
+            // However much of the burst the drainer took meanwhile, five more wait in the queue
+            assertThat(statuses).hasSizeGreaterThan(5).hasSizeLessThan(100);
+            assertThat(statuses.subList(0, statuses.size() - 1)).containsOnly(HttpStatus.ACCEPTED);
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            assertThat(response.getBody().getRetryAfterMillis()).isPositive();
+            assertThat(Long.parseLong(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isPositive();
+            assertThat(response.getHeaders().getFirst(RateLimitHeaders.LIMIT)).isEqualTo(String.valueOf(BURST));
+            assertThat(response.getHeaders().getFirst(RateLimitHeaders.REMAINING)).isNotNull();
+            assertThat(Long.parseLong(response.getHeaders().getFirst(RateLimitHeaders.RESET))).isNotNegative();
+        }
+    }
+
+    @Test
+    void emptyBatchesAreRefused() {
+        var response = controller(new CostConfig())
+                .sendMessages(SendMessageBatchRequest.builder().messages(List.of()).build(),
+                        new MockHttpServletRequest());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+}
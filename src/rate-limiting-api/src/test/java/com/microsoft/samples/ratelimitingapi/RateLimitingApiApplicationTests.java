@@ -1,3 +1,5 @@
+package com.microsoft.samples.ratelimitingapi;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
@@ -0,0 +1,106 @@
+package com.microsoft.samples.ratelimitingapi.concurrency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.config.ConcurrencyConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitTests {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static ConcurrencyConfig config(int initial, int min, int max) {
+        var config = new ConcurrencyConfig();
+        config.setInitialLimit(initial);
+        config.setMinLimit(min);
+        config.setMaxLimit(max);
+        return config;
+    }
+
+    /**
+     * Takes every slot and gives them all back with the same latency.
+     */
+    private static void fullLoad(ConcurrencyLimit limit, long rttNanos, long now) {
+        int slots = limit.getLimit();
+        for (int i = 0; i < slots; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+        for (int i = 0; i < slots; i++) {
+            limit.release(rttNanos, now);
+        }
+    }
+
+    @Test
+    void requestsOverTheLimitAreTurnedAway() {
+        var limit = new ConcurrencyLimit(config(2, 1, 10), 0);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(2);
+
+        limit.release();
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void limitGrowsWhileLatencyHoldsAndShrinksOnceRequestsQueue() {
+        var limit = new ConcurrencyLimit(config(10, 1, 100), 0);
+
+        for (int i = 0; i < 5; i++) {
+            fullLoad(limit, MILLIS, i);
+        }
+        int grown = limit.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        for (int i = 0; i < 5; i++) {
+            fullLoad(limit, 10 * MILLIS, i);
+        }
+        assertThat(limit.getLimit()).isLessThan(grown);
+    }
+
+    @Test
+    void limitDoesNotGrowWhileMostSlotsAreIdle() {
+        var limit = new ConcurrencyLimit(config(10, 1, 100), 0);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+            limit.release(MILLIS, i);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void filterShedsWithServiceUnavailableBeforeTheRequestGoesOn() throws Exception {
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.setConcurrency(config(1, 1, 1));
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+        var meterRegistry = new SimpleMeterRegistry();
+        var filter = new ConcurrencyLimitFilter(rateLimitConfig, new ObjectMapper(), meterRegistry);
+
+        var shed = new MockHttpServletResponse();
+        var shedChain = new MockFilterChain();
+        // The second request arrives while the first still holds the only slot
+        filter.doFilter(new MockHttpServletRequest("POST", "/messages"), new MockHttpServletResponse(),
+                (request, response) -> filter.doFilter(new MockHttpServletRequest("POST", "/messages/batch"), shed,
+                        shedChain));
+
+        assertThat(shedChain.getRequest()).isNull();
+        assertThat(shed.getStatus()).isEqualTo(503);
+        assertThat(shed.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(meterRegistry.get("ratelimit_concurrency_shed").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ratelimit_concurrency_in_flight").gauge().value()).isZero();
+    }
+}
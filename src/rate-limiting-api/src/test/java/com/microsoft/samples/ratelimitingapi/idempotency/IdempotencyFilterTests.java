@@ -0,0 +1,96 @@
+package com.microsoft.samples.ratelimitingapi.idempotency;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.IdempotencyConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimitMetrics;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyFilterTests {
+
+    private final IdempotencyConfig config = new IdempotencyConfig();
+    private final LocalIdempotencyStore store = new LocalIdempotencyStore(config);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IdempotencyFilter filter;
+
+    IdempotencyFilterTests() {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(10);
+        bandwidth.setRefillTokens(10);
+        bandwidth.setRefillPeriod(Duration.ofMinutes(1));
+
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", policy);
+        limiterConfig.setDefaultPolicy("messages");
+
+        var routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+        filter = new IdempotencyFilter(store, routePolicyTable, new RateLimitMetrics(routePolicyTable, meterRegistry));
+    }
+
+    private static MockHttpServletRequest request(String idempotencyKey) {
+        var request = new MockHttpServletRequest("POST", "/messages");
+        if (idempotencyKey != null) {
+            request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, idempotencyKey);
+        }
+        return request;
+    }
+
+    @Test
+    void acceptedMessagesAreAnsweredAgainWithoutReachingTheLimiter() throws Exception {
+        byte[] body = "{\"message\":\"a\",\"success\":true}".getBytes(StandardCharsets.UTF_8);
+        store.save("message-1", new IdempotentResponse(200, body));
+
+        var response = new MockHttpServletResponse();
+        var chain = new MockFilterChain();
+        filter.doFilter(request("message-1"), response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(IdempotencyFilter.REPLAYED)).isEqualTo("true");
+        assertThat(response.getContentAsByteArray()).isEqualTo(body);
+        assertThat(meterRegistry.get("ratelimit_idempotent_replays").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void newAndUnkeyedMessagesGoOn() throws Exception {
+        for (var request : new MockHttpServletRequest[] { request("message-2"), request(null) }) {
+            var chain = new MockFilterChain();
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+            assertThat(chain.getRequest()).isSameAs(request);
+        }
+    }
+
+    @Test
+    void firstResponseIsKeptAndMemoryIsBounded() {
+        config.setMaxBytes(10_000);
+        var bounded = new LocalIdempotencyStore(config);
+
+        bounded.save("message-1", new IdempotentResponse(200, new byte[100]));
+        bounded.save("message-1", new IdempotentResponse(202, new byte[100]));
+        assertThat(bounded.find("message-1").status()).isEqualTo(200);
+
+        for (int i = 0; i < 1_000; i++) {
+            bounded.save("message-" + i, new IdempotentResponse(200, new byte[100]));
+        }
+        long kept = 0;
+        for (int i = 0; i < 1_000; i++) {
+            kept += bounded.find("message-" + i) == null ? 0 : 1;
+        }
+        assertThat(kept).isBetween(1L, 10_000L / 200);
+    }
+}
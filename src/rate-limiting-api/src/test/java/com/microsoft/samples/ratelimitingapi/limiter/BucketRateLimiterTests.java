@@ -0,0 +1,61 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import io.github.bucket4j.TimeMeter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BucketRateLimiterTests extends RateLimiterConformanceTests {
+
+    private final ClientConfig client = new ClientConfig();
+
+    @Override
+    protected RateLimiter create(RoutePolicy policy, TimeMeter clock) {
+        return new BucketRateLimiter(policy, new LocalBucketFactory(clock), client, clock::currentTimeNanos);
+    }
+
+    @Test
+    void bucketsAreBoundedByMaxClients() {
+        client.setMaxClients(100);
+        var limiter = (BucketRateLimiter) limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryConsume("client-" + i, 1);
+        }
+
+        assertThat(limiter.clients()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void idleBucketsAreEvictedAndComeBackFull() {
+        client.setIdleTimeout(Duration.ofMinutes(10));
+        var limiter = (BucketRateLimiter) limiter(bandwidth(10, 1, Duration.ofMinutes(1)));
+        assertThat(limiter.tryConsume("idle", 10).isConsumed()).isTrue();
+        assertThat(limiter.tryConsume("busy", 10).isConsumed()).isTrue();
+
+        clock.advance(Duration.ofMinutes(6).toNanos());
+        limiter.peek("busy", 0);
+        clock.advance(Duration.ofMinutes(6).toNanos());
+
+        assertThat(limiter.clients()).isEqualTo(1);
+        assertThat(limiter.peek("idle", 0).getRemainingTokens()).isEqualTo(10);
+        assertThat(limiter.peek("busy", 0).getRemainingTokens()).isEqualTo(10);
+    }
+
+    @Test
+    void idleBucketsAreKeptUntilTheyHaveRefilled() {
+        client.setIdleTimeout(Duration.ofMinutes(1));
+        var limiter = (BucketRateLimiter) limiter(bandwidth(10, 1, Duration.ofMinutes(1)));
+        assertThat(limiter.tryConsume("idle", 10).isConsumed()).isTrue();
+
+        clock.advance(Duration.ofMinutes(2).toNanos());
+        assertThat(limiter.clients()).isEqualTo(1);
+        assertThat(limiter.peek("idle", 0).getRemainingTokens()).isEqualTo(2);
+
+        clock.advance(Duration.ofMinutes(11).toNanos());
+        assertThat(limiter.clients()).isZero();
+    }
+}
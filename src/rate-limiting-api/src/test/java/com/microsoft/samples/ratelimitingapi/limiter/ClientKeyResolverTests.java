@@ -0,0 +1,46 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientKeyResolverTests {
+
+    private static ClientKeyResolver resolver(ClientKeyStrategy strategy) {
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getClient().setKeyStrategy(strategy);
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+        return new ClientKeyResolver(rateLimitConfig);
+    }
+
+    private static MockHttpServletRequest request() {
+        var request = new MockHttpServletRequest("POST", "/messages");
+        request.addHeader("X-API-Key", "key-1");
+        request.setRemoteAddr("10.0.0.7");
+        return request;
+    }
+
+    @Test
+    void eachStrategyKeysOnItsOwnAttribute() {
+        assertThat(resolver(ClientKeyStrategy.GLOBAL).resolve(request(), "client-1"))
+                .isEqualTo(ClientKeyResolver.GLOBAL_KEY);
+        assertThat(resolver(ClientKeyStrategy.HEADER).resolve(request(), "client-1")).isEqualTo("key-1");
+        assertThat(resolver(ClientKeyStrategy.IP).resolve(request(), "client-1")).isEqualTo("10.0.0.7");
+        assertThat(resolver(ClientKeyStrategy.FIELD).resolve(request(), "client-1")).isEqualTo("client-1");
+    }
+
+    @Test
+    void callersWithoutTheAttributeShareTheAnonymousKey() {
+        var request = new MockHttpServletRequest("POST", "/messages");
+        request.addHeader("X-API-Key", "");
+
+        assertThat(resolver(ClientKeyStrategy.HEADER).resolve(request, null)).isEqualTo(ClientKeyResolver.ANONYMOUS_KEY);
+        assertThat(resolver(ClientKeyStrategy.HEADER).resolve(new MockHttpServletRequest(), null))
+                .isEqualTo(ClientKeyResolver.ANONYMOUS_KEY);
+        assertThat(resolver(ClientKeyStrategy.FIELD).resolve(request, "")).isEqualTo(ClientKeyResolver.ANONYMOUS_KEY);
+    }
+}
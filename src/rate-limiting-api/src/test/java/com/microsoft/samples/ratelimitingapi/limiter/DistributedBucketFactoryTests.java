@@ -0,0 +1,75 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.DistributedConfig;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DistributedBucketFactoryTests {
+
+    private static final int CAPACITY = 300;
+
+    private final BucketConfiguration configuration = BucketConfiguration.builder()
+            .addLimit(Bandwidth.builder().capacity(CAPACITY).refillIntervally(CAPACITY, Duration.ofMinutes(1)).build())
+            .build();
+
+    @Test
+    void replicasShareOneLimit() {
+        var proxyManager = new InMemoryProxyManager();
+        var distributedConfig = new DistributedConfig();
+        distributedConfig.setPrefetchTokens(10);
+        distributedConfig.setSyncInterval(Duration.ofMillis(50));
+
+        List<Bucket> replicas = List.of(
+                new DistributedBucketFactory(proxyManager, distributedConfig).create("client", configuration, 0),
+                new DistributedBucketFactory(proxyManager, distributedConfig).create("client", configuration, 0),
+                new DistributedBucketFactory(proxyManager, distributedConfig).create("client", configuration, 0));
+
+        int consumed = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            for (var replica : replicas) {
+                if (replica.tryConsume(1)) {
+                    consumed++;
+                }
+            }
+        }
+
+        long overshootBound = replicas.size() * distributedConfig.getPrefetchTokens();
+        assertThat(consumed).isBetween(CAPACITY, (int) (CAPACITY + overshootBound));
+    }
+
+    @Test
+    void newRevisionsReplaceTheSharedConfigurationKeepingTokens() {
+        var proxyManager = new InMemoryProxyManager();
+        var factory = new DistributedBucketFactory(proxyManager, new DistributedConfig());
+        var raised = BucketConfiguration.builder()
+                .addLimit(Bandwidth.builder().capacity(2 * CAPACITY)
+                        .refillIntervally(2 * CAPACITY, Duration.ofMinutes(1)).build())
+                .build();
+
+        assertThat(factory.create("client", configuration, 0).tryConsume(100)).isTrue();
+
+        assertThat(factory.create("client", raised, 1).getAvailableTokens()).isEqualTo(CAPACITY - 100);
+
+        // A proxy still on the old revision does not move the state back
+        factory.create("client", configuration, 0).addTokens(CAPACITY);
+        assertThat(factory.create("client", raised, 1).getAvailableTokens()).isEqualTo(2 * CAPACITY - 100);
+    }
+
+    @Test
+    void keysAreIndependent() {
+        var factory = new DistributedBucketFactory(new InMemoryProxyManager(), new DistributedConfig());
+
+        var first = factory.create("first", configuration, 0);
+        var second = factory.create("second", configuration, 0);
+
+        assertThat(first.tryConsume(CAPACITY)).isTrue();
+        assertThat(second.tryConsume(CAPACITY)).isTrue();
+    }
+}
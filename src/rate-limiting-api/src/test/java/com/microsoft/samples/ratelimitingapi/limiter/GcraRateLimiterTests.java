@@ -0,0 +1,28 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.TimeMeter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GcraRateLimiterTests extends RateLimiterConformanceTests {
+
+    private static final int MAX_KEYS = 1000;
+
+    @Override
+    protected RateLimiter create(RoutePolicy policy, TimeMeter clock) {
+        return new GcraRateLimiter(policy, MAX_KEYS, clock);
+    }
+
+    @Test
+    void keysBeyondTheTableTakeOverTheSlotsOfOthers() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+
+        for (int i = 0; i < 20 * MAX_KEYS; i++) {
+            assertThat(limiter.tryConsume("client-" + i, 10).isConsumed()).isTrue();
+            assertThat(limiter.tryConsume("client-" + i, 1).isConsumed()).isFalse();
+        }
+    }
+}
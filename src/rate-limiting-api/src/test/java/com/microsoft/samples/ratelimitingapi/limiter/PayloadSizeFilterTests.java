@@ -0,0 +1,71 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.CostConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PayloadSizeFilterTests {
+
+    private final PayloadSizeFilter filter;
+
+    PayloadSizeFilterTests() {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(10);
+        bandwidth.setRefillTokens(10);
+        bandwidth.setRefillPeriod(Duration.ofMinutes(1));
+
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+
+        var cost = new CostConfig();
+        cost.setBytesPerToken(100);
+
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", policy);
+        limiterConfig.setDefaultPolicy("messages");
+        limiterConfig.setCost(cost);
+
+        filter = new PayloadSizeFilter(RoutePolicyTable.compile(limiterConfig));
+    }
+
+    @Test
+    void bodiesSentWithoutContentLengthAreCountedAsTheyAreRead() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/messages") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        request.setContent(new byte[250]);
+        var chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        var wrapped = (HttpServletRequest) chain.getRequest();
+        assertThat(PayloadSizeFilter.payloadBytes(wrapped)).isZero();
+        assertThat(wrapped.getInputStream().readAllBytes()).hasSize(250);
+        assertThat(PayloadSizeFilter.payloadBytes(wrapped)).isEqualTo(250);
+    }
+
+    @Test
+    void contentLengthIsUsedWhenSent() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/messages");
+        request.setContent(new byte[250]);
+        var chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(PayloadSizeFilter.payloadBytes(request)).isEqualTo(250);
+    }
+}
@@ -0,0 +1,146 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.samples.ratelimitingapi.Replica;
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.CostConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageResult;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTests {
+
+    private static final int CAPACITY = 2;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RateLimitFilter filter;
+
+    RateLimitFilterTests() throws Exception {
+        filter = filter(new CostConfig());
+    }
+
+    private RateLimitFilter filter(CostConfig cost) throws Exception {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(CAPACITY);
+        bandwidth.setRefillTokens(CAPACITY);
+        bandwidth.setRefillPeriod(Duration.ofMinutes(1));
+
+        var policy = new PolicyConfig();
+        policy.getBandwidths().add(bandwidth);
+
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", policy);
+        limiterConfig.setDefaultPolicy("messages");
+        limiterConfig.setCost(cost);
+
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+
+        var routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+        return new RateLimitFilter(
+                new RateLimiterRegistry(new LocalBucketFactory(), routePolicyTable, rateLimitConfig),
+                new ClientKeyResolver(rateLimitConfig), routePolicyTable,
+                new RateLimitMetrics(routePolicyTable, new SimpleMeterRegistry()),
+                new RejectionResponse(objectMapper));
+    }
+
+    @Test
+    void acceptedRequestsReachTheControllerWithTheirProbe() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/messages");
+        var chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+        var probe = (ConsumptionProbe) request.getAttribute(RateLimitFilter.PROBE_ATTRIBUTE);
+        assertThat(probe.isConsumed()).isTrue();
+        assertThat(probe.getRemainingTokens()).isEqualTo(CAPACITY - 1);
+    }
+
+    @Test
+    void rejectionsAreWrittenWithoutReachingTheController() throws Exception {
+        for (int i = 0; i < CAPACITY; i++) {
+            filter.doFilter(new MockHttpServletRequest("POST", "/messages"), new MockHttpServletResponse(),
+                    new MockFilterChain());
+        }
+
+        var response = new MockHttpServletResponse();
+        var chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("POST", "/messages"), response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(RateLimitHeaders.REMAINING)).isEqualTo("0");
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+
+        // Same body the controller writes for a rejection
+        var body = objectMapper.readTree(response.getContentAsByteArray());
+        long retryAfterMillis = body.get("retryAfterMillis").asLong();
+        assertThat(retryAfterMillis).isBetween(29_000L, 30_000L);
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+        assertThat(response.getContentAsString()).isEqualTo(objectMapper.writeValueAsString(SendMessageResult.builder()
+                .message("Rate limit exceeded.")
+                .success(false)
+                .retryAfterMillis(retryAfterMillis)
+                .servedBy(Replica.NAME)
+                .build()));
+    }
+
+    @Test
+    void otherRoutesAreLeftToTheController() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/messages/batch");
+        var chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+        assertThat(request.getAttribute(RateLimitFilter.PROBE_ATTRIBUTE)).isNull();
+    }
+
+    @Test
+    void requestsAreChargedByTheirContentLength() throws Exception {
+        var cost = new CostConfig();
+        cost.setBytesPerToken(100);
+        var sized = filter(cost);
+
+        var request = new MockHttpServletRequest("POST", "/messages");
+        request.setContent(new byte[50]);
+        sized.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        // One for the request and one for the started 100 bytes
+        var probe = (ConsumptionProbe) request.getAttribute(RateLimitFilter.PROBE_ATTRIBUTE);
+        assertThat(probe.isConsumed()).isTrue();
+        assertThat(probe.getRemainingTokens()).isZero();
+    }
+
+    @Test
+    void requestsOfUnknownSizeOrOverTheLimitAreLeftToTheController() throws Exception {
+        var cost = new CostConfig();
+        cost.setBytesPerToken(100);
+        var sized = filter(cost);
+
+        var unknownSize = new MockHttpServletRequest("POST", "/messages");
+        var tooLarge = new MockHttpServletRequest("POST", "/messages");
+        tooLarge.setContent(new byte[500]);
+
+        for (var request : new MockHttpServletRequest[] { unknownSize, tooLarge }) {
+            var chain = new MockFilterChain();
+            sized.doFilter(request, new MockHttpServletResponse(), chain);
+
+            assertThat(chain.getRequest()).isSameAs(request);
+            assertThat(request.getAttribute(RateLimitFilter.PROBE_ATTRIBUTE)).isNull();
+        }
+    }
+}
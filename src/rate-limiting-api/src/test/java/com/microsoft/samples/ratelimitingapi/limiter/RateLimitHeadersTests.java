@@ -0,0 +1,61 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.ConsumptionProbe;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitHeadersTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RoutePolicy policy = new RoutePolicy("messages", BucketConfiguration.builder()
+            .addLimit(Bandwidth.builder().capacity(25).refillGreedy(5, Duration.ofSeconds(1)).build())
+            .build(), 25);
+
+    @Test
+    void consumedProbesCarryNoRetryAfter() {
+        var headers = RateLimitHeaders.from(policy, ConsumptionProbe.consumed(20, 5 * SECOND / 4));
+
+        assertThat(headers.getFirst(RateLimitHeaders.LIMIT)).isEqualTo("25");
+        assertThat(headers.getFirst(RateLimitHeaders.REMAINING)).isEqualTo("20");
+        assertThat(headers.getFirst(RateLimitHeaders.RESET)).isEqualTo("2");
+        assertThat(headers.containsKey(HttpHeaders.RETRY_AFTER)).isFalse();
+        assertThat(RateLimitHeaders.retryAfterMillis(ConsumptionProbe.consumed(20, SECOND))).isZero();
+    }
+
+    @Test
+    void rejectedProbesRoundTheirWaitUp() {
+        var probe = ConsumptionProbe.rejected(0, SECOND / 5 + 1, 5 * SECOND);
+        var headers = RateLimitHeaders.from(policy, probe);
+        var response = new MockHttpServletResponse();
+        RateLimitHeaders.apply(response, policy, probe);
+
+        assertThat(headers.getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(headers.getFirst(RateLimitHeaders.RESET)).isEqualTo("5");
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(response.getHeader(RateLimitHeaders.RESET)).isEqualTo("5");
+        assertThat(RateLimitHeaders.retryAfterMillis(probe)).isEqualTo(201);
+    }
+
+    @Test
+    void probesThatWaitForeverStayBoundedAndPositive() {
+        var oversize = ConsumptionProbe.rejected(25, Long.MAX_VALUE, 0);
+        var drained = ConsumptionProbe.rejected(0, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        assertThat(RateLimitHeaders.from(policy, oversize).getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(RateLimitHeaders.retryAfterMillis(oversize)).isEqualTo(1);
+
+        var headers = RateLimitHeaders.from(policy, drained);
+        assertThat(Long.parseLong(headers.getFirst(HttpHeaders.RETRY_AFTER))).isPositive();
+        assertThat(Long.parseLong(headers.getFirst(RateLimitHeaders.RESET))).isPositive();
+        assertThat(RateLimitHeaders.retryAfterMillis(drained)).isPositive();
+    }
+}
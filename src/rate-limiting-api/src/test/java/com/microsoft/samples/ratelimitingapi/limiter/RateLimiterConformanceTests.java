@@ -0,0 +1,269 @@
+package com.microsoft.samples.ratelimitingapi.limiter;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import io.github.bucket4j.TimeMeter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link RateLimiter} engine has to share, run against each of them.
+ */
+abstract class RateLimiterConformanceTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    protected final ManualClock clock = new ManualClock();
+
+    private RoutePolicyTable routePolicyTable;
+
+    protected abstract RateLimiter create(RoutePolicy policy, TimeMeter clock);
+
+    @Test
+    void burstsUpToCapacityThenRejectsUntilTheNextToken() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+
+        for (int i = 0; i < 10; i++) {
+            var probe = limiter.tryConsume("client", 1);
+            assertThat(probe.isConsumed()).isTrue();
+            assertThat(probe.getRemainingTokens()).isEqualTo(9 - i);
+        }
+
+        var rejected = limiter.tryConsume("client", 1);
+        assertThat(rejected.isConsumed()).isFalse();
+        assertThat(rejected.getRemainingTokens()).isZero();
+        assertThat(rejected.getNanosToWaitForRefill()).isEqualTo(SECOND);
+        assertThat(rejected.getNanosToWaitForReset()).isEqualTo(10 * SECOND);
+    }
+
+    @Test
+    void refillsEvenlyOverThePeriod() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+        assertThat(limiter.tryConsume("client", 10).isConsumed()).isTrue();
+
+        clock.advance(3 * SECOND + SECOND / 2);
+
+        assertThat(limiter.tryConsume("client", 3).isConsumed()).isTrue();
+        var rejected = limiter.tryConsume("client", 1);
+        assertThat(rejected.isConsumed()).isFalse();
+        assertThat(rejected.getNanosToWaitForRefill()).isEqualTo(SECOND / 2);
+    }
+
+    @Test
+    void takesAllTokensOrNone() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+        assertThat(limiter.tryConsume("client", 8).isConsumed()).isTrue();
+
+        var rejected = limiter.tryConsume("client", 3);
+
+        assertThat(rejected.isConsumed()).isFalse();
+        assertThat(rejected.getRemainingTokens()).isEqualTo(2);
+        assertThat(rejected.getNanosToWaitForRefill()).isEqualTo(SECOND);
+        assertThat(limiter.tryConsumeAsMuchAsPossible("client", 5)).isEqualTo(2);
+        assertThat(limiter.tryConsumeAsMuchAsPossible("client", 5)).isZero();
+    }
+
+    @Test
+    void peekingTakesNothing() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+
+        var probe = limiter.peek("client", 5);
+        assertThat(probe.isConsumed()).isTrue();
+        assertThat(probe.getRemainingTokens()).isEqualTo(10);
+        assertThat(limiter.peek("client", 0).getRemainingTokens()).isEqualTo(10);
+
+        assertThat(limiter.tryConsume("client", 10).isConsumed()).isTrue();
+        var empty = limiter.peek("client", 2);
+        assertThat(empty.isConsumed()).isFalse();
+        assertThat(empty.getNanosToWaitForRefill()).isEqualTo(2 * SECOND);
+        assertThat(empty.getNanosToWaitForReset()).isEqualTo(10 * SECOND);
+        assertThat(limiter.peek("client", 0).isConsumed()).isTrue();
+    }
+
+    @Test
+    void everyBandwidthHasToAllowTheRequest() {
+        var limiter = limiter(bandwidth(5, 5, Duration.ofSeconds(5)), bandwidth(8, 8, Duration.ofSeconds(80)));
+        assertThat(limiter.tryConsume("client", 5).isConsumed()).isTrue();
+        assertThat(limiter.tryConsume("client", 1).isConsumed()).isFalse();
+
+        clock.advance(5 * SECOND);
+
+        assertThat(limiter.tryConsumeAsMuchAsPossible("client", 5)).isEqualTo(3);
+        var rejected = limiter.tryConsume("client", 1);
+        assertThat(rejected.isConsumed()).isFalse();
+        assertThat(rejected.getRemainingTokens()).isZero();
+        assertThat(rejected.getNanosToWaitForRefill()).isEqualTo(5 * SECOND);
+    }
+
+    @Test
+    void keysAreIndependent() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+
+        assertThat(limiter.tryConsume("first", 10).isConsumed()).isTrue();
+        assertThat(limiter.tryConsume("second", 10).isConsumed()).isTrue();
+        assertThat(limiter.tryConsume("first", 1).isConsumed()).isFalse();
+    }
+
+    @Test
+    void newKeysStartWithTheInitialTokens() {
+        var bandwidth = bandwidth(10, 10, Duration.ofSeconds(10));
+        bandwidth.setInitialTokens(2L);
+        var limiter = limiter(bandwidth);
+
+        assertThat(limiter.peek("client", 0).getRemainingTokens()).isEqualTo(2);
+        assertThat(limiter.tryConsume("client", 3).isConsumed()).isFalse();
+        assertThat(limiter.tryConsume("client", 2).isConsumed()).isTrue();
+    }
+
+    @Test
+    void reconfiguredKeysKeepTheirTokensUpToTheNewCapacity() {
+        var limiter = limiter(bandwidth(10, 10, Duration.ofSeconds(10)));
+        assertThat(limiter.tryConsume("client", 4).isConsumed()).isTrue();
+
+        reconfigure(limiter, 1, bandwidth(20, 20, Duration.ofSeconds(20)));
+        assertThat(limiter.peek("client", 0).getRemainingTokens()).isEqualTo(6);
+        assertThat(limiter.peek("new client", 0).getRemainingTokens()).isEqualTo(20);
+
+        reconfigure(limiter, 2, bandwidth(2, 2, Duration.ofSeconds(2)));
+        assertThat(limiter.peek("client", 0).getRemainingTokens()).isEqualTo(2);
+        assertThat(limiter.tryConsume("client", 3).isConsumed()).isFalse();
+    }
+
+    @Test
+    void requestsOverTheCapacityAreRejectedWithAFiniteWait() {
+        var limiter = limiter(bandwidth(5, 5, Duration.ofSeconds(5)), bandwidth(8, 8, Duration.ofSeconds(80)));
+
+        for (var probe : List.of(limiter.tryConsume("client", 6), limiter.peek("client", 6))) {
+            assertThat(probe.isConsumed()).isFalse();
+            assertThat(probe.getRemainingTokens()).isEqualTo(5);
+            assertThat(probe.getNanosToWaitForRefill()).isEqualTo(80 * SECOND);
+        }
+        assertThat(limiter.tryConsume("client", 5).isConsumed()).isTrue();
+    }
+
+    @Test
+    void tokensTakenWhileReconfiguringAreKept() throws Exception {
+        int capacity = 2000;
+        var limiter = limiter(bandwidth(capacity, capacity, Duration.ofHours(1)));
+
+        var executor = Executors.newFixedThreadPool(8);
+        var tasks = new ArrayList<Callable<Integer>>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(() -> {
+                int consumed = 0;
+                for (int i = 0; i < capacity; i++) {
+                    if (limiter.tryConsume("client-" + i % 4, 1).isConsumed()) {
+                        consumed++;
+                    }
+                }
+                return consumed;
+            });
+        }
+
+        var results = new ArrayList<Future<Integer>>();
+        for (var task : tasks) {
+            results.add(executor.submit(task));
+        }
+        for (int revision = 1; revision <= 20; revision++) {
+            reconfigure(limiter, revision, bandwidth(capacity, capacity, Duration.ofHours(1)));
+        }
+
+        int consumed = 0;
+        for (var result : results) {
+            consumed += result.get();
+        }
+        executor.shutdown();
+
+        for (int key = 0; key < 4; key++) {
+            consumed += limiter.peek("client-" + key, 0).getRemainingTokens();
+        }
+        assertThat(consumed).isEqualTo(4 * capacity);
+    }
+
+    @Test
+    void concurrentRequestsNeverTakeMoreThanTheCapacity() throws Exception {
+        int capacity = 1000;
+        var limiter = limiter(bandwidth(capacity, capacity, Duration.ofHours(1)));
+
+        var executor = Executors.newFixedThreadPool(8);
+        var tasks = new ArrayList<Callable<Integer>>();
+        for (int t = 0; t < 8; t++) {
+            tasks.add(() -> {
+                int consumed = 0;
+                for (int i = 0; i < capacity; i++) {
+                    if (limiter.tryConsume("client", 1).isConsumed()) {
+                        consumed++;
+                    }
+                }
+                return consumed;
+            });
+        }
+
+        int consumed = 0;
+        for (var result : executor.invokeAll(tasks)) {
+            consumed += result.get();
+        }
+        executor.shutdown();
+
+        assertThat(consumed).isEqualTo(capacity);
+    }
+
+    protected RateLimiter limiter(BandwidthConfig... bandwidths) {
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", policyConfig(bandwidths));
+        limiterConfig.setDefaultPolicy("messages");
+
+        routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+        return create(routePolicyTable.policy("messages"), clock);
+    }
+
+    protected static BandwidthConfig bandwidth(long capacity, long refillTokens, Duration refillPeriod) {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(capacity);
+        bandwidth.setRefillTokens(refillTokens);
+        bandwidth.setRefillPeriod(refillPeriod);
+        return bandwidth;
+    }
+
+    private void reconfigure(RateLimiter limiter, long revision, BandwidthConfig... bandwidths) {
+        assertThat(routePolicyTable.reconfigure("messages", policyConfig(bandwidths), revision)).isTrue();
+        limiter.reconfigure();
+    }
+
+    private static PolicyConfig policyConfig(BandwidthConfig... bandwidths) {
+        var policy = new PolicyConfig();
+        for (var bandwidth : bandwidths) {
+            policy.getBandwidths().add(bandwidth);
+        }
+        return policy;
+    }
+
+    protected static class ManualClock implements TimeMeter {
+        private final AtomicLong nanos = new AtomicLong(SECOND);
+
+        void advance(long delta) {
+            nanos.addAndGet(delta);
+        }
+
+        @Override
+        public long currentTimeNanos() {
+            return nanos.get();
+        }
+
+        @Override
+        public boolean isWallClockBased() {
+            return false;
+        }
+    }
+}
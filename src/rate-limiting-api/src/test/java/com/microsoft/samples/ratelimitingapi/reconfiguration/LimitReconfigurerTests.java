@@ -0,0 +1,143 @@
+package com.microsoft.samples.ratelimitingapi.reconfiguration;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.limiter.LimiterEngine;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiterRegistry;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LimitReconfigurerTests {
+
+    private final LimitBroadcast broadcast = new LocalLimitBroadcast();
+    private final Replica first = new Replica(broadcast);
+    private final Replica second = new Replica(broadcast);
+
+    @Test
+    void changesReachLiveKeysOfEveryReplicaWithTheirTokens() {
+        assertThat(first.tryConsume(4)).isTrue();
+        assertThat(second.tryConsume(7)).isTrue();
+
+        first.reconfigurer.change("messages", limits(20));
+
+        for (var replica : new Replica[] { first, second }) {
+            assertThat(replica.policy().getLimit()).isEqualTo(20);
+            assertThat(replica.policy().getRevision()).isEqualTo(1);
+        }
+        assertThat(first.available("client")).isEqualTo(6);
+        assertThat(second.available("client")).isEqualTo(3);
+        assertThat(first.available("new client")).isEqualTo(20);
+    }
+
+    @Test
+    void lowerLimitsCapTheTokensLeft() {
+        first.reconfigurer.change("messages", limits(2));
+
+        assertThat(second.available("client")).isEqualTo(2);
+        assertThat(second.tryConsume(3)).isFalse();
+    }
+
+    @Test
+    void replicasStartingLaterCatchUpAndOlderRevisionsAreIgnored() {
+        first.reconfigurer.change("messages", limits(20));
+        first.reconfigurer.change("messages", limits(30));
+
+        var late = new Replica(broadcast);
+        assertThat(late.policy().getLimit()).isEqualTo(30);
+        assertThat(late.policy().getRevision()).isEqualTo(2);
+
+        late.reconfigurer.apply(LimitUpdate.builder().policy("messages").revision(1).limits(limits(20)).build());
+        assertThat(late.policy().getLimit()).isEqualTo(30);
+    }
+
+    @Test
+    void invalidChangesAreNotBroadcast() {
+        assertThatThrownBy(() -> first.reconfigurer.change("unknown", limits(20)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> first.reconfigurer.change("messages", new PolicyConfig()))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(second.policy().getRevision()).isZero();
+    }
+
+    @Test
+    void requestsAreServedWhileAChangeIsApplied() {
+        // Enough slots for the GCRA engine to take a while moving them all, no request waits that long
+        var replica = new Replica(new LocalLimitBroadcast(), LimiterEngine.GCRA, 2_000_000);
+        assertThat(replica.tryConsume(1)).isTrue();
+
+        long start = System.nanoTime();
+        var change = CompletableFuture.runAsync(() -> replica.reconfigurer.change("messages", limits(20)));
+        long longestRequest = 0;
+        while (!change.isDone()) {
+            long requested = System.nanoTime();
+            replica.tryConsume(0);
+            longestRequest = Math.max(longestRequest, System.nanoTime() - requested);
+        }
+        change.join();
+        long changeTook = System.nanoTime() - start;
+
+        assertThat(longestRequest).isLessThan(changeTook / 2);
+        assertThat(replica.available("client")).isEqualTo(9);
+    }
+
+    private static PolicyConfig limits(long... capacities) {
+        var policy = new PolicyConfig();
+        for (long capacity : capacities) {
+            var bandwidth = new BandwidthConfig();
+            bandwidth.setCapacity(capacity);
+            bandwidth.setRefillTokens(capacity);
+            bandwidth.setRefillPeriod(Duration.ofHours(1));
+            policy.getBandwidths().add(bandwidth);
+        }
+        return policy;
+    }
+
+    private static class Replica {
+        private final RoutePolicyTable routePolicyTable;
+        private final RateLimiterRegistry rateLimiterRegistry;
+        private final LimitReconfigurer reconfigurer;
+
+        Replica(LimitBroadcast broadcast) {
+            this(broadcast, LimiterEngine.BUCKET4J, 1_000);
+        }
+
+        Replica(LimitBroadcast broadcast, LimiterEngine engine, long maxClients) {
+            var limiterConfig = new LimiterConfig();
+            limiterConfig.setEngine(engine);
+            limiterConfig.getClient().setMaxClients(maxClients);
+            // Tokens follow the first bandwidth into every change below
+            limiterConfig.getPolicies().put("messages", limits(10, 100));
+            limiterConfig.setDefaultPolicy("messages");
+
+            var rateLimitConfig = new RateLimitConfig();
+            rateLimitConfig.setRatelimit(limiterConfig);
+
+            routePolicyTable = RoutePolicyTable.compile(limiterConfig);
+            rateLimiterRegistry = new RateLimiterRegistry(new LocalBucketFactory(), routePolicyTable, rateLimitConfig);
+            reconfigurer = new LimitReconfigurer(routePolicyTable, rateLimiterRegistry, broadcast);
+        }
+
+        RoutePolicy policy() {
+            return routePolicyTable.policy("messages");
+        }
+
+        boolean tryConsume(long tokens) {
+            return rateLimiterRegistry.forPolicy(policy()).tryConsume("client", tokens).isConsumed();
+        }
+
+        long available(String key) {
+            return rateLimiterRegistry.forPolicy(policy()).peek(key, 0).getRemainingTokens();
+        }
+    }
+}
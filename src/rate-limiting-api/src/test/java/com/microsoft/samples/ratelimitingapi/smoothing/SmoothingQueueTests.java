@@ -0,0 +1,122 @@
+package com.microsoft.samples.ratelimitingapi.smoothing;
+
+import com.microsoft.samples.ratelimitingapi.config.BandwidthConfig;
+import com.microsoft.samples.ratelimitingapi.config.ClientConfig;
+import com.microsoft.samples.ratelimitingapi.config.LimiterConfig;
+import com.microsoft.samples.ratelimitingapi.config.PolicyConfig;
+import com.microsoft.samples.ratelimitingapi.config.RateLimitConfig;
+import com.microsoft.samples.ratelimitingapi.contract.SendMessageRequest;
+import com.microsoft.samples.ratelimitingapi.limiter.BucketRateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.LocalBucketFactory;
+import com.microsoft.samples.ratelimitingapi.limiter.RateLimiter;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicy;
+import com.microsoft.samples.ratelimitingapi.limiter.RoutePolicyTable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SmoothingQueueTests {
+
+    private static final SendMessageRequest MESSAGE = SendMessageRequest.builder().message("hello").build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SmoothingQueue smoothingQueue;
+    private RoutePolicy policy;
+    private RateLimiter limiter;
+
+    @AfterEach
+    void closeQueue() {
+        smoothingQueue.close();
+    }
+
+    private void start(int highWaterMark, long capacity, Duration refillPeriod, long initialTokens) {
+        var bandwidth = new BandwidthConfig();
+        bandwidth.setCapacity(capacity);
+        bandwidth.setRefillTokens(capacity);
+        bandwidth.setRefillPeriod(refillPeriod);
+        bandwidth.setInitialTokens(initialTokens);
+
+        var limiterConfig = new LimiterConfig();
+        limiterConfig.getPolicies().put("messages", new PolicyConfig());
+        limiterConfig.getPolicies().get("messages").getBandwidths().add(bandwidth);
+        limiterConfig.setDefaultPolicy("messages");
+        limiterConfig.getSmoothing().setHighWaterMark(highWaterMark);
+
+        var rateLimitConfig = new RateLimitConfig();
+        rateLimitConfig.setRatelimit(limiterConfig);
+
+        policy = RoutePolicyTable.compile(limiterConfig).policy("messages");
+        limiter = new BucketRateLimiter(policy, new LocalBucketFactory(), new ClientConfig());
+        smoothingQueue = new SmoothingQueue(rateLimitConfig, meterRegistry);
+    }
+
+    private double drained() {
+        return meterRegistry.counter("smoothing_queue_drained").count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void messagesAreRefusedOnceTheQueueReachesTheHighWaterMark() throws InterruptedException {
+        start(3, 1, Duration.ofHours(1), 0);
+
+        int accepted = 0;
+        while (accepted < 10 && smoothingQueue.offer(policy, limiter, "client", 1, MESSAGE)) {
+            accepted++;
+        }
+
+        assertThat(accepted).isEqualTo(3);
+        assertThat(smoothingQueue.depth()).isEqualTo(3);
+        assertThat(smoothingQueue.queueFull(policy, limiter, "client").getNanosToWaitForRefill()).isPositive();
+        assertThat(meterRegistry.counter("smoothing_queue_rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void messagesDrainAtTheRefillRate() throws InterruptedException {
+        start(100, 1, Duration.ofMillis(100), 0);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertThat(smoothingQueue.offer(policy, limiter, "client", 1, MESSAGE)).isTrue();
+        }
+        await(() -> drained() == 5);
+
+        assertThat(drained()).isEqualTo(5);
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isGreaterThanOrEqualTo(Duration.ofMillis(400));
+    }
+
+    @Test
+    void messagesThatCostMoreThanTheLimitAreDroppedInsteadOfStallingTheQueue() throws InterruptedException {
+        start(100, 2, Duration.ofSeconds(1), 2);
+
+        assertThat(smoothingQueue.offer(policy, limiter, "client", 3, MESSAGE)).isTrue();
+        assertThat(smoothingQueue.offer(policy, limiter, "client", 1, MESSAGE)).isTrue();
+        await(() -> drained() == 1);
+
+        assertThat(meterRegistry.counter("smoothing_queue_dropped").count()).isEqualTo(1);
+        assertThat(drained()).isEqualTo(1);
+    }
+
+    @Test
+    void aClientOutOfTokensDoesNotHoldBackTheOthers() throws InterruptedException {
+        start(100, 1, Duration.ofHours(1), 1);
+
+        assertThat(smoothingQueue.offer(policy, limiter, "busy", 1, MESSAGE)).isTrue();
+        assertThat(smoothingQueue.offer(policy, limiter, "busy", 1, MESSAGE)).isTrue();
+        assertThat(smoothingQueue.offer(policy, limiter, "quiet", 1, MESSAGE)).isTrue();
+        await(() -> drained() == 2);
+
+        assertThat(drained()).isEqualTo(2);
+        assertThat(smoothingQueue.depth()).isEqualTo(1);
+    }
+}